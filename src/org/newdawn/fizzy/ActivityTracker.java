@@ -0,0 +1,663 @@
+package org.newdawn.fizzy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.broadphase.DynamicTree;
+import org.jbox2d.collision.broadphase.DynamicTreeNode;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * Deactivates the bodies of a world that are far from all of its observers
+ * and activates them again as an observer comes near. Bodies are put to
+ * rest once they're further than the sleep margin from every observer and
+ * woken once they're within the smaller wake margin of one, so a body
+ * sitting between the two keeps whatever state it has and doesn't flip
+ * every step.
+ *
+ * The bodies put to rest are kept in a JBox2D dynamic tree of their own, so
+ * finding the ones to wake as observers move only looks at the bodies near
+ * them. The active bodies are checked after each step, skipping the ones
+ * that can't have moved unless an observer has.
+ *
+ * With a level of detail set, bodies beyond the far margin of every
+ * observer drop into a far tier that is only stepped every few ticks, with
+ * a longer time step and fewer iterations, and they come back to the full
+ * rate once they're within the near margin of an observer. Far bodies are
+ * parked during the normal step by clearing JBox2D's awake flag directly,
+ * which unlike putting them to sleep keeps their velocities and the time
+ * they've spent resting, and are unparked again the same way before the
+ * update returns, so outside of the update every body looks as JBox2D left
+ * it. Forces are cleared by the tracker rather than JBox2D, so forces
+ * applied to far bodies between their steps build up and are averaged over
+ * the longer step. JBox2D limits how far a body can move and turn in one
+ * step, so bodies too fast to cover their distance in the longer step stay
+ * at the full rate.
+ *
+ * @see World#addObserver(Observer)
+ */
+class ActivityTracker implements TreeCallback {
+	/** The default distance from an observer within which bodies are woken */
+	static final float DEFAULT_WAKE_MARGIN = 100;
+	/** The default distance from every observer beyond which bodies are put to rest */
+	static final float DEFAULT_SLEEP_MARGIN = 200;
+	/** The default number of iterations of each solver used for the far tier */
+	static final int DEFAULT_FAR_ITERATIONS = 3;
+
+	/** The world whose bodies are managed */
+	private final World world;
+
+	/** The observers of the world */
+	private final List<Observer> observers = new ArrayList<Observer>();
+	/** A read only view of the observers */
+	private final List<Observer> observersView = Collections.unmodifiableList(observers);
+	/** The tree holding the bodies put to rest, in pixels */
+	private final DynamicTree tree = new DynamicTree();
+	/** The box used to add and query the tree */
+	private final AABB aabb = new AABB();
+	/** The bounding box of the body being checked, as lower x, lower y, upper x and upper y */
+	private final float[] bounds = new float[4];
+	/** The bodies found to wake or put to rest, changed once the search is done */
+	private final List<Body<?>> found = new ArrayList<Body<?>>();
+	/** The distance from an observer within which bodies are woken */
+	private float wakeMargin = DEFAULT_WAKE_MARGIN;
+	/** The distance from every observer beyond which bodies are put to rest */
+	private float sleepMargin = DEFAULT_SLEEP_MARGIN;
+	/** The number of bodies put to rest */
+	private int dormantCount;
+	/** The number of ticks between steps of the far tier, 1 if every body runs at the full rate */
+	private int farInterval = 1;
+	/** The distance from an observer within which far bodies return to the full rate */
+	private float nearMargin;
+	/** The distance from every observer beyond which bodies drop to the far tier */
+	private float farMargin;
+	/** The number of iterations of the velocity solver used for the far tier */
+	private int farVelocityIterations = DEFAULT_FAR_ITERATIONS;
+	/** The number of iterations of the position solver used for the far tier */
+	private int farPositionIterations = DEFAULT_FAR_ITERATIONS;
+	/** The bodies in the far tier */
+	private Body<?>[] far = new Body<?>[16];
+	/** True for each far body that was awake when it was parked */
+	private boolean[] farAwake = new boolean[16];
+	/** The time each far body had spent resting when it was parked */
+	private float[] farSleepTime = new float[16];
+	/** The number of bodies in the far tier */
+	private int farCount;
+	/** The number of ticks since the far tier last stepped */
+	private int tick;
+	/** True if the far tier stepped in the last update */
+	private boolean farStepped;
+	/** The full rate bodies parked while the far tier steps */
+	private Body<?>[] parkedNear = new Body<?>[16];
+	/** The time each parked full rate body had spent resting when it was parked */
+	private float[] parkedNearSleepTime = new float[16];
+	/** The number of full rate bodies parked */
+	private int parkedNearCount;
+	/** The time step of the last update, 0 until the world is first updated */
+	private float timeStep;
+
+	/**
+	 * Create a new tracker
+	 *
+	 * @param world The world whose bodies are managed
+	 */
+	ActivityTracker(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Add an observer
+	 *
+	 * @param observer The observer to add
+	 */
+	void addObserver(Observer observer) {
+		if (observers.contains(observer)) {
+			throw new IllegalArgumentException("Observer already added");
+		}
+		observers.add(observer);
+		observer.markChanged();
+	}
+
+	/**
+	 * Remove an observer. Once the last one is gone every body put to rest is
+	 * woken.
+	 *
+	 * @param observer The observer to remove
+	 */
+	void removeObserver(Observer observer) {
+		if (!observers.remove(observer)) {
+			throw new IllegalArgumentException("Observer isn't in this world");
+		}
+		if (observers.isEmpty()) {
+			wakeAll();
+			clearFar();
+		} else {
+			// bodies only it could see may now need to rest
+			observers.get(0).markChanged();
+		}
+	}
+
+	/**
+	 * Get the observers
+	 *
+	 * @return A read only list of the observers
+	 */
+	List<Observer> getObservers() {
+		return observersView;
+	}
+
+	/**
+	 * Set the margins around the observers
+	 *
+	 * @param wake The distance from an observer within which bodies are woken
+	 * @param sleep The distance from every observer beyond which bodies are put to rest
+	 */
+	void setMargins(float wake, float sleep) {
+		if ((wake < 0) || (sleep < wake)) {
+			throw new IllegalArgumentException("Margins must satisfy 0 <= wake <= sleep: " + wake + ", " + sleep);
+		}
+		wakeMargin = wake;
+		sleepMargin = sleep;
+		for (int i = 0; i < observers.size(); i++) {
+			observers.get(i).markChanged();
+		}
+	}
+
+	/**
+	 * Get the distance from an observer within which bodies are woken
+	 *
+	 * @return The wake margin
+	 */
+	float getWakeMargin() {
+		return wakeMargin;
+	}
+
+	/**
+	 * Get the distance from every observer beyond which bodies are put to rest
+	 *
+	 * @return The sleep margin
+	 */
+	float getSleepMargin() {
+		return sleepMargin;
+	}
+
+	/**
+	 * Get the number of bodies put to rest
+	 *
+	 * @return The number of dormant bodies
+	 */
+	int getDormantCount() {
+		return dormantCount;
+	}
+
+	/**
+	 * Set the level of detail used for bodies far from the observers
+	 *
+	 * @param near The distance from an observer within which bodies run at the full rate
+	 * @param far The distance from every observer beyond which bodies drop to the far tier
+	 * @param interval The number of ticks between steps of the far tier, 1 to run every body at the full rate
+	 */
+	void setLevelOfDetail(float near, float far, int interval) {
+		if ((near < 0) || (far < near)) {
+			throw new IllegalArgumentException("Margins must satisfy 0 <= near <= far: " + near + ", " + far);
+		}
+		if (interval < 1) {
+			throw new IllegalArgumentException("Far tier must step at least every tick: " + interval);
+		}
+		nearMargin = near;
+		farMargin = far;
+		farInterval = interval;
+		tick = 0;
+		if (interval == 1) {
+			clearFar();
+		}
+		world.getJBoxWorld().setAutoClearForces(interval == 1);
+		for (int i = 0; i < observers.size(); i++) {
+			observers.get(i).markChanged();
+		}
+	}
+
+	/**
+	 * Set the number of iterations used to step the far tier
+	 *
+	 * @param velocityIterations The number of iterations of the velocity solver
+	 * @param positionIterations The number of iterations of the position solver
+	 */
+	void setFarIterations(int velocityIterations, int positionIterations) {
+		farVelocityIterations = velocityIterations;
+		farPositionIterations = positionIterations;
+	}
+
+	/**
+	 * Get the number of ticks between steps of the far tier
+	 *
+	 * @return The far tier's interval, 1 if every body runs at the full rate
+	 */
+	int getFarInterval() {
+		return farInterval;
+	}
+
+	/**
+	 * Get the distance from an observer within which bodies run at the full rate
+	 *
+	 * @return The near margin
+	 */
+	float getNearMargin() {
+		return nearMargin;
+	}
+
+	/**
+	 * Get the distance from every observer beyond which bodies drop to the far tier
+	 *
+	 * @return The far margin
+	 */
+	float getFarMargin() {
+		return farMargin;
+	}
+
+	/**
+	 * Get the number of iterations of the velocity solver used for the far tier
+	 *
+	 * @return The number of velocity iterations
+	 */
+	int getFarVelocityIterations() {
+		return farVelocityIterations;
+	}
+
+	/**
+	 * Get the number of iterations of the position solver used for the far tier
+	 *
+	 * @return The number of position iterations
+	 */
+	int getFarPositionIterations() {
+		return farPositionIterations;
+	}
+
+	/**
+	 * Get the number of bodies in the far tier
+	 *
+	 * @return The number of far bodies
+	 */
+	int getFarCount() {
+		return farCount;
+	}
+
+	/**
+	 * Park the far bodies before the normal step, so it leaves them alone
+	 */
+	void beforeStep() {
+		for (int i = 0; i < farCount; i++) {
+			org.jbox2d.dynamics.Body jboxBody = far[i].getJBoxBody();
+			farAwake[i] = jboxBody.isAwake();
+			farSleepTime[i] = jboxBody.m_sleepTime;
+			// setAwake(false) would throw away the velocity
+			jboxBody.m_flags &= ~org.jbox2d.dynamics.Body.e_awakeFlag;
+		}
+	}
+
+	/**
+	 * Unpark a body parked by clearing its awake flag. setAwake(true) would
+	 * reset the time it has spent resting, so a body that never stops being
+	 * nudged awake by the parking would never fall asleep.
+	 *
+	 * @param jboxBody The body to unpark
+	 * @param sleepTime The time the body had spent resting when it was parked
+	 */
+	private static void unpark(org.jbox2d.dynamics.Body jboxBody, float sleepTime) {
+		jboxBody.m_flags |= org.jbox2d.dynamics.Body.e_awakeFlag;
+		jboxBody.m_sleepTime = sleepTime;
+	}
+
+	/**
+	 * Clear the forces of the bodies that were stepped, unpark the far
+	 * bodies and step them if it's their tick
+	 *
+	 * @param timeStep The time step of the normal step
+	 * @param bodies The bodies in the world
+	 * @param count The number of bodies in the world
+	 */
+	void afterStep(float timeStep, Body<?>[] bodies, int count) {
+		this.timeStep = timeStep;
+		if (farInterval == 1) {
+			// JBox2D clears the forces itself
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			if (bodies[i].getFarIndex() < 0) {
+				clearForces(bodies[i].getJBoxBody());
+			}
+		}
+		for (int i = 0; i < farCount; i++) {
+			if (farAwake[i]) {
+				unpark(far[i].getJBoxBody(), farSleepTime[i]);
+			}
+		}
+
+		farStepped = false;
+		if (++tick < farInterval) {
+			return;
+		}
+		tick = 0;
+		farStepped = true;
+		if (farCount == 0) {
+			return;
+		}
+
+		// the forces have built up over the ticks the far tier waited
+		float scale = 1f / farInterval;
+		for (int i = 0; i < farCount; i++) {
+			org.jbox2d.dynamics.Body jboxBody = far[i].getJBoxBody();
+			jboxBody.m_force.mulLocal(scale);
+			jboxBody.m_torque *= scale;
+		}
+		parkedNearCount = 0;
+		for (int i = 0; i < count; i++) {
+			Body<?> body = bodies[i];
+			org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+			if ((body.getFarIndex() >= 0) || body.isStatic() || !jboxBody.isAwake()) {
+				continue;
+			}
+			if (parkedNearCount == parkedNear.length) {
+				Body<?>[] grown = new Body<?>[parkedNearCount * 2];
+				System.arraycopy(parkedNear, 0, grown, 0, parkedNearCount);
+				parkedNear = grown;
+				float[] grownSleepTime = new float[parkedNearCount * 2];
+				System.arraycopy(parkedNearSleepTime, 0, grownSleepTime, 0, parkedNearCount);
+				parkedNearSleepTime = grownSleepTime;
+			}
+			parkedNearSleepTime[parkedNearCount] = jboxBody.m_sleepTime;
+			parkedNear[parkedNearCount++] = body;
+			jboxBody.m_flags &= ~org.jbox2d.dynamics.Body.e_awakeFlag;
+		}
+
+		world.getJBoxWorld().step(timeStep * farInterval, farVelocityIterations, farPositionIterations);
+
+		for (int i = 0; i < farCount; i++) {
+			clearForces(far[i].getJBoxBody());
+		}
+		for (int i = 0; i < parkedNearCount; i++) {
+			unpark(parkedNear[i].getJBoxBody(), parkedNearSleepTime[i]);
+			parkedNear[i] = null;
+		}
+		parkedNearCount = 0;
+	}
+
+	/**
+	 * Wake the bodies observers have come near and put to rest the active
+	 * bodies that are now far from all of them
+	 *
+	 * @param bodies The bodies in the world
+	 * @param count The number of bodies in the world
+	 */
+	void update(Body<?>[] bodies, int count) {
+		if (observers.isEmpty()) {
+			return;
+		}
+		boolean moved = false;
+		for (int i = 0; i < observers.size(); i++) {
+			moved |= observers.get(i).checkChanged();
+		}
+
+		if (moved && (dormantCount > 0)) {
+			for (int i = 0; i < observers.size(); i++) {
+				Observer observer = observers.get(i);
+				float halfWidth = (observer.getWidth() * 0.5f) + wakeMargin;
+				float halfHeight = (observer.getHeight() * 0.5f) + wakeMargin;
+				aabb.lowerBound.set(observer.getX() - halfWidth, observer.getY() - halfHeight);
+				aabb.upperBound.set(observer.getX() + halfWidth, observer.getY() + halfHeight);
+				tree.query(this, aabb);
+			}
+			for (int i = 0; i < found.size(); i++) {
+				Body<?> body = found.get(i);
+				// found once per observer it's near, and woken bodies may remove others
+				if (body.isDormant()) {
+					wake(body);
+				}
+			}
+			found.clear();
+		}
+
+		for (int i = 0; i < count; i++) {
+			Body<?> body = bodies[i];
+			org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+			if (!jboxBody.isActive()) {
+				continue;
+			}
+			if (!moved && (body.isStatic() || !jboxBody.isAwake())) {
+				continue;
+			}
+			if (!moved && !farStepped && (body.getFarIndex() >= 0)) {
+				// far bodies only move when their tier steps
+				continue;
+			}
+			body.getBoundingBox(bounds);
+			if (!isNear(sleepMargin)) {
+				found.add(body);
+			} else {
+				updateTier(body);
+			}
+		}
+		for (int i = 0; i < found.size(); i++) {
+			Body<?> body = found.get(i);
+			// resting a body ends its contacts, and listeners may remove bodies
+			if (body.isAttached()) {
+				rest(body);
+			}
+		}
+		found.clear();
+	}
+
+	/**
+	 * Check a body just added to the world, putting it to rest straight away
+	 * if it's far from every observer
+	 *
+	 * @param body The body added
+	 */
+	void bodyAdded(Body<?> body) {
+		if (observers.isEmpty() || !body.getJBoxBody().isActive()) {
+			return;
+		}
+		body.getBoundingBox(bounds);
+		if (!isNear(sleepMargin)) {
+			rest(body);
+		} else {
+			updateTier(body);
+		}
+	}
+
+	/**
+	 * Stop managing a body as it leaves the world, taking it out of the far
+	 * tier and forgetting it if it was put to rest
+	 *
+	 * @param body The body leaving the world
+	 */
+	void bodyRemoved(Body<?> body) {
+		if (body.getFarIndex() >= 0) {
+			removeFar(body);
+		}
+		forget(body);
+	}
+
+	/**
+	 * Stop managing a body put to rest, as it leaves the world or is
+	 * activated by hand. The body is left inactive.
+	 *
+	 * @param body The body to forget
+	 */
+	void forget(Body<?> body) {
+		DynamicTreeNode proxy = body.getDormantProxy();
+		if (proxy != null) {
+			tree.destroyProxy(proxy);
+			body.setDormantProxy(null);
+			dormantCount--;
+		}
+	}
+
+	@Override
+	public boolean treeCallback(DynamicTreeNode node) {
+		found.add((Body<?>) node.userData);
+		return true;
+	}
+
+	/**
+	 * Check if the bounds found come within a margin of any observer
+	 *
+	 * @param margin The distance around each observer that counts as near
+	 * @return True if the bounds are near an observer
+	 */
+	private boolean isNear(float margin) {
+		for (int i = 0; i < observers.size(); i++) {
+			if (observers.get(i).isNear(bounds, margin)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deactivate a body and keep it in the tree
+	 *
+	 * @param body The body to put to rest
+	 */
+	private void rest(Body<?> body) {
+		if (body.getFarIndex() >= 0) {
+			removeFar(body);
+		}
+		body.getBoundingBox(bounds);
+		aabb.lowerBound.set(bounds[0], bounds[1]);
+		aabb.upperBound.set(bounds[2], bounds[3]);
+		body.setDormantProxy(tree.createProxy(aabb, body));
+		dormantCount++;
+		body.getJBoxBody().setActive(false);
+		world.bodyDeactivated(body);
+	}
+
+	/**
+	 * Activate a body put to rest
+	 *
+	 * @param body The body to wake
+	 */
+	private void wake(Body<?> body) {
+		forget(body);
+		body.getJBoxBody().setActive(true);
+	}
+
+	/**
+	 * Activate every body put to rest, once there are no observers left
+	 */
+	private void wakeAll() {
+		if (dormantCount == 0) {
+			return;
+		}
+		aabb.lowerBound.set(-Float.MAX_VALUE, -Float.MAX_VALUE);
+		aabb.upperBound.set(Float.MAX_VALUE, Float.MAX_VALUE);
+		tree.query(this, aabb);
+		for (int i = 0; i < found.size(); i++) {
+			Body<?> body = found.get(i);
+			if (body.isDormant()) {
+				wake(body);
+			}
+		}
+		found.clear();
+	}
+
+	/**
+	 * Move a body whose bounds have been found between the full rate and the
+	 * far tier, if a level of detail is set
+	 *
+	 * @param body The body to check
+	 */
+	private void updateTier(Body<?> body) {
+		if ((farInterval == 1) || body.isStatic()) {
+			return;
+		}
+		if (body.getFarIndex() >= 0) {
+			if (isNear(nearMargin) || isTooFast(body)) {
+				removeFar(body);
+			}
+		} else if (!isNear(farMargin) && !isTooFast(body)) {
+			addFar(body);
+		}
+	}
+
+	/**
+	 * Check if a body is moving or turning too fast for the far tier. JBox2D
+	 * limits how far a body moves and turns in a single step, and the far
+	 * tier's step is the interval times longer, so a body that would go
+	 * beyond the limit in it would be slowed down.
+	 *
+	 * @param body The body to check
+	 * @return True if the body has to stay at the full rate
+	 */
+	private boolean isTooFast(Body<?> body) {
+		org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+		float farStep = timeStep * farInterval;
+		Vec2 velocity = jboxBody.m_linearVelocity;
+		float translation = (velocity.x * velocity.x + velocity.y * velocity.y) * farStep * farStep;
+		return (translation > Settings.maxTranslationSquared)
+				|| (Math.abs(jboxBody.m_angularVelocity) * farStep > Settings.maxRotation);
+	}
+
+	/**
+	 * Add a body to the far tier
+	 *
+	 * @param body The body to add
+	 */
+	private void addFar(Body<?> body) {
+		if (farCount == far.length) {
+			Body<?>[] grown = new Body<?>[farCount * 2];
+			System.arraycopy(far, 0, grown, 0, farCount);
+			far = grown;
+			boolean[] grownAwake = new boolean[farCount * 2];
+			System.arraycopy(farAwake, 0, grownAwake, 0, farCount);
+			farAwake = grownAwake;
+			float[] grownSleepTime = new float[farCount * 2];
+			System.arraycopy(farSleepTime, 0, grownSleepTime, 0, farCount);
+			farSleepTime = grownSleepTime;
+		}
+		body.setFarIndex(farCount);
+		far[farCount++] = body;
+	}
+
+	/**
+	 * Take a body out of the far tier. The last far body is moved into its
+	 * place.
+	 *
+	 * @param body The body to take out
+	 */
+	private void removeFar(Body<?> body) {
+		int index = body.getFarIndex();
+		Body<?> last = far[--farCount];
+		far[index] = last;
+		farAwake[index] = farAwake[farCount];
+		farSleepTime[index] = farSleepTime[farCount];
+		last.setFarIndex(index);
+		far[farCount] = null;
+		body.setFarIndex(-1);
+	}
+
+	/**
+	 * Put every far body back to the full rate
+	 */
+	private void clearFar() {
+		for (int i = 0; i < farCount; i++) {
+			far[i].setFarIndex(-1);
+			far[i] = null;
+		}
+		farCount = 0;
+	}
+
+	/**
+	 * Clear the forces built up on a JBox2D body
+	 *
+	 * @param jboxBody The body to clear
+	 */
+	private static void clearForces(org.jbox2d.dynamics.Body jboxBody) {
+		jboxBody.m_force.setZero();
+		jboxBody.m_torque = 0;
+	}
+}
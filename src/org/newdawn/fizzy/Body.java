@@ -1,9 +1,12 @@
 package org.newdawn.fizzy;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.broadphase.DynamicTreeNode;
 import org.jbox2d.common.Transform;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.BodyDef;
@@ -25,14 +28,76 @@ abstract public class Body<T> {
 	protected org.jbox2d.dynamics.Body jboxBody;
 	/** The body definition held by JBox2D */
 	protected BodyDef jboxBodyDef;
-	/** The list of bodies this body is touching */
-	private List<Body<?>> touching = new ArrayList<Body<?>>();
+	/** The number of contact points this body has with each body it is touching */
+	private Map<Body<?>, TouchCount> touching = new IdentityHashMap<Body<?>, TouchCount>();
+	/** 
+	 * The number of fixtures overlapping this body's sensors for each body 
+	 * they overlap, or null until this body's sensors first overlap something 
+	 */
+	private Map<Body<?>, TouchCount> overlapping;
+	/** 
+	 * The sensors overlapping this body, sharing the counts held by the 
+	 * sensors, or null until this body first overlaps a sensor 
+	 */
+	private Map<Body<?>, TouchCount> overlappedBy;
 	/** The shape used to represent this body */
 	private Shape shape;
 	/** The userdata assigned to this body if any */
 	private T userData;
 	/** Whether the body has been attached to a world */
 	private boolean attached;
+	/** The world this body is attached to, if any */
+	private World world;
+	/** The id assigned to this body by the world it's attached to, or -1 */
+	private int id = -1;
+	/** The index of this body in its world's list of bodies, or -1 */
+	private int index = -1;
+	/** The stamp of the last query that reported this body, so it's only reported once per query */
+	private int queryStamp;
+	/** The x position in meters at the start of the last fixed step */
+	private float previousX;
+	/** The y position in meters at the start of the last fixed step */
+	private float previousY;
+	/** The angle at the start of the last fixed step */
+	private float previousAngle;
+	/** The pool this body was created by, if any */
+	private BodyPool<T> pool;
+	/** True if the body is parked in a pool, inactive and out of its world's list of bodies */
+	private boolean parked;
+	/** The watched regions this body is inside, or null until it first enters one */
+	private Region[] regions;
+	/** The number of watched regions this body is inside */
+	private int regionCount;
+	/** The static sensors kept out of the step that this body overlaps, or null until it first meets one */
+	private Body<?>[] staticSensors;
+	/** The number of static sensors kept out of the step that this body overlaps */
+	private int staticSensorCount;
+	/** The body's node in the world's tree of bodies put to rest away from its observers, or null if not resting */
+	private DynamicTreeNode dormantProxy;
+	/** The body's index in the world's far tier, or -1 if it runs at the full rate */
+	private int farIndex = -1;
+	/** True if the body should be checked against the world bounds at the next step */
+	private boolean boundsCheckPending;
+	/** True if the body has been added or moved by hand since its transform was last exported */
+	private boolean exportPending;
+	/** Scratch box the bounds of each shape are computed into, created on first use */
+	private AABB shapeAABB;
+	/** True if the cached bounds have been computed for the body's current fixtures */
+	private boolean boundsValid;
+	/** The x position in meters the cached bounds were computed at */
+	private float boundsX;
+	/** The y position in meters the cached bounds were computed at */
+	private float boundsY;
+	/** The angle the cached bounds were computed at */
+	private float boundsAngle;
+	/** The cached lower x bound in meters */
+	private float boundsLowerX;
+	/** The cached lower y bound in meters */
+	private float boundsLowerY;
+	/** The cached upper x bound in meters */
+	private float boundsUpperX;
+	/** The cached upper y bound in meters */
+	private float boundsUpperY;
 	
 	/**
 	 * Create a new body
@@ -47,6 +112,103 @@ abstract public class Body<T> {
 		this.shape = shape;
 	}
 	
+	/**
+	 * Get the id the world has assigned to this body. Ids are unique among the
+	 * bodies currently in a world and are reused once a body has been removed.
+	 * 
+	 * @return The id of this body or -1 if it isn't attached to a world
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Set the id the world has assigned to this body
+	 * 
+	 * @param id The id of this body or -1 if it isn't attached to a world
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+	
+	/**
+	 * Get the index of this body in its world's list of bodies
+	 * 
+	 * @see World#getBody(int)
+	 * @return The index of this body or -1 if it isn't attached to a world
+	 */
+	int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Set the index of this body in its world's list of bodies
+	 * 
+	 * @param index The index of this body or -1 if it isn't attached to a world
+	 */
+	void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Check if the body should be checked against the world bounds at the
+	 * next step whether or not it's moving
+	 * 
+	 * @return True if the body is waiting to be checked
+	 */
+	boolean isBoundsCheckPending() {
+		return boundsCheckPending;
+	}
+
+	/**
+	 * Indicate whether the body should be checked against the world bounds
+	 * at the next step whether or not it's moving
+	 * 
+	 * @param pending True if the body is waiting to be checked
+	 */
+	void setBoundsCheckPending(boolean pending) {
+		boundsCheckPending = pending;
+	}
+	
+	/**
+	 * Check if the body has been added or moved by hand since its transform
+	 * was last exported, so it needs exporting even if it's static or asleep
+	 * 
+	 * @see World#exportMovingTransforms(int[], float[], float[], float[])
+	 * @return True if the body is waiting to be exported
+	 */
+	boolean isExportPending() {
+		return exportPending;
+	}
+	
+	/**
+	 * Indicate whether the body has been added or moved by hand since its
+	 * transform was last exported
+	 * 
+	 * @param pending True if the body is waiting to be exported
+	 */
+	void setExportPending(boolean pending) {
+		exportPending = pending;
+	}
+	
+	/**
+	 * Get the stamp of the last query that reported this body
+	 * 
+	 * @return The stamp of the last query that reported this body
+	 */
+	int getQueryStamp() {
+		return queryStamp;
+	}
+	
+	/**
+	 * Record that a query has reported this body
+	 * 
+	 * @param stamp The stamp of the query
+	 */
+	void setQueryStamp(int stamp) {
+		queryStamp = stamp;
+	}
+	
 	/**
 	 * Check if this body was declared as static
 	 * 
@@ -81,7 +243,7 @@ abstract public class Body<T> {
 	 * @return True if the bodies are touching
 	 */
 	public boolean isTouching(Body<?> other) {
-		return touching.contains(other);
+		return touching.containsKey(other);
 	}
 	
 	/**
@@ -91,15 +253,8 @@ abstract public class Body<T> {
 	 * @return The number of contact points
 	 */
 	public int touchCount(Body<?> other) {
-		int count = 0;
-		
-		for(Body<?> touched : touching){
-			if(touched == other){
-				count++;
-			}
-		}
-		
-		return count;
+		TouchCount count = touching.get(other);
+		return count == null ? 0 : count.value;
 	}
 	
 	/**
@@ -107,9 +262,15 @@ abstract public class Body<T> {
 	 * point.
 	 * 
 	 * @param other The other body that is touched
+	 * @return The number of contact points between the bodies after this one was added
 	 */
-	void touch(Body<?> other) {
-		touching.add(other);
+	int touch(Body<?> other) {
+		TouchCount count = touching.get(other);
+		if (count == null) {
+			count = new TouchCount();
+			touching.put(other, count);
+		}
+		return ++count.value;
 	}
 	
 	/**
@@ -117,19 +278,234 @@ abstract public class Body<T> {
 	 * 
 	 * @param other The other body that is no longer touched by a particular 
 	 * contact point.
+	 * @return The number of contact points between the bodies after this one was removed
 	 */
-	void untouch(Body<?> other) {
-		touching.remove(other);
+	int untouch(Body<?> other) {
+		TouchCount count = touching.get(other);
+		if (count == null) {
+			return 0;
+		}
+		if (--count.value <= 0) {
+			touching.remove(other);
+			return 0;
+		}
+		return count.value;
 	}
 	
 	/**
 	 * Reset all touch-related data -- disappear from other objects' touch information.
+	 * Sensor overlaps in both directions are forgotten too.
 	 */
 	void resetTouching(){
-		for(Body<?> touched : touching){
-			touched.untouch(this);
+		for(Body<?> touched : touching.keySet()){
+			touched.touching.remove(this);
 		}
 		touching.clear();
+		if (overlapping != null) {
+			for (Body<?> overlapped : overlapping.keySet()) {
+				overlapped.overlappedBy.remove(this);
+				overlapped.forgetStaticSensor(this);
+			}
+			overlapping.clear();
+		}
+		if (overlappedBy != null) {
+			for (Body<?> sensor : overlappedBy.keySet()) {
+				sensor.overlapping.remove(this);
+			}
+			overlappedBy.clear();
+		}
+		if (staticSensors != null) {
+			Arrays.fill(staticSensors, 0, staticSensorCount, null);
+			staticSensorCount = 0;
+		}
+	}
+	
+	/**
+	 * Check if this body's sensors overlap another body
+	 * 
+	 * @param other The other body to check against
+	 * @return True if a sensor of this body overlaps the other body
+	 */
+	public boolean isOverlapping(Body<?> other) {
+		return (overlapping != null) && overlapping.containsKey(other);
+	}
+	
+	/**
+	 * Check if this body's sensors overlap anything
+	 * 
+	 * @return True if a sensor of this body overlaps another body
+	 */
+	public boolean isOverlappingAnything() {
+		return (overlapping != null) && !overlapping.isEmpty();
+	}
+	
+	/**
+	 * Indicate that one of this body's sensors has started overlapping a 
+	 * fixture of another body
+	 * 
+	 * @param other The other body
+	 * @return The number of overlapping fixture pairs between the bodies after this one was added
+	 */
+	int overlap(Body<?> other) {
+		if (overlapping == null) {
+			overlapping = new IdentityHashMap<Body<?>, TouchCount>();
+		}
+		TouchCount count = overlapping.get(other);
+		if (count == null) {
+			count = new TouchCount();
+			overlapping.put(other, count);
+			if (other.overlappedBy == null) {
+				other.overlappedBy = new IdentityHashMap<Body<?>, TouchCount>();
+			}
+			other.overlappedBy.put(this, count);
+		}
+		return ++count.value;
+	}
+	
+	/**
+	 * Indicate that one of this body's sensors has stopped overlapping a 
+	 * fixture of another body
+	 * 
+	 * @param other The other body
+	 * @return The number of overlapping fixture pairs between the bodies after this one was removed
+	 */
+	int unoverlap(Body<?> other) {
+		TouchCount count = (overlapping == null) ? null : overlapping.get(other);
+		if (count == null) {
+			return 0;
+		}
+		if (--count.value <= 0) {
+			overlapping.remove(other);
+			other.overlappedBy.remove(this);
+			return 0;
+		}
+		return count.value;
+	}
+	
+	/**
+	 * Get the number of watched regions this body is inside
+	 * 
+	 * @return The number of regions this body is inside
+	 */
+	int getRegionCount() {
+		return regionCount;
+	}
+	
+	/**
+	 * Get one of the watched regions this body is inside
+	 * 
+	 * @param index The index of the region, from 0 to the region count
+	 * @return The region at the index
+	 */
+	Region getRegion(int index) {
+		return regions[index];
+	}
+	
+	/**
+	 * Indicate that this body has entered a watched region
+	 * 
+	 * @param region The region entered
+	 */
+	void addRegion(Region region) {
+		if (regions == null) {
+			regions = new Region[4];
+		} else if (regionCount == regions.length) {
+			Region[] grown = new Region[regionCount * 2];
+			System.arraycopy(regions, 0, grown, 0, regionCount);
+			regions = grown;
+		}
+		regions[regionCount++] = region;
+	}
+	
+	/**
+	 * Indicate that this body has left a watched region. The last region is
+	 * moved into the index of the removed one.
+	 * 
+	 * @param index The index of the region left
+	 */
+	void removeRegion(int index) {
+		regions[index] = regions[--regionCount];
+		regions[regionCount] = null;
+	}
+	
+	/**
+	 * Get the number of static sensors kept out of the step that this body
+	 * overlaps
+	 * 
+	 * @see SensorTracker
+	 * @return The number of static sensors this body overlaps
+	 */
+	int getStaticSensorCount() {
+		return staticSensorCount;
+	}
+	
+	/**
+	 * Get one of the static sensors kept out of the step that this body
+	 * overlaps
+	 * 
+	 * @param index The index of the sensor, from 0 to the static sensor count
+	 * @return The sensor at the index
+	 */
+	Body<?> getStaticSensor(int index) {
+		return staticSensors[index];
+	}
+	
+	/**
+	 * Check if this body overlaps a static sensor kept out of the step
+	 * 
+	 * @param sensor The sensor to check for
+	 * @return True if the sensor is one this body overlaps
+	 */
+	boolean hasStaticSensor(Body<?> sensor) {
+		for (int i = 0; i < staticSensorCount; i++) {
+			if (staticSensors[i] == sensor) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Indicate that this body has started overlapping a static sensor kept
+	 * out of the step
+	 * 
+	 * @param sensor The sensor overlapped
+	 */
+	void addStaticSensor(Body<?> sensor) {
+		if (staticSensors == null) {
+			staticSensors = new Body<?>[4];
+		} else if (staticSensorCount == staticSensors.length) {
+			Body<?>[] grown = new Body<?>[staticSensorCount * 2];
+			System.arraycopy(staticSensors, 0, grown, 0, staticSensorCount);
+			staticSensors = grown;
+		}
+		staticSensors[staticSensorCount++] = sensor;
+	}
+	
+	/**
+	 * Indicate that this body has stopped overlapping a static sensor kept
+	 * out of the step. The last sensor is moved into the index of the
+	 * removed one.
+	 * 
+	 * @param index The index of the sensor no longer overlapped
+	 */
+	void removeStaticSensor(int index) {
+		staticSensors[index] = staticSensors[--staticSensorCount];
+		staticSensors[staticSensorCount] = null;
+	}
+	
+	/**
+	 * Forget a static sensor this body overlaps, if it's one, as the sensor
+	 * leaves the world
+	 * 
+	 * @param sensor The sensor to forget
+	 */
+	private void forgetStaticSensor(Body<?> sensor) {
+		for (int i = staticSensorCount - 1; i >= 0; i--) {
+			if (staticSensors[i] == sensor) {
+				removeStaticSensor(i);
+			}
+		}
 	}
 	
 	/**
@@ -148,7 +524,7 @@ abstract public class Body<T> {
 	 */
 	public void applyForce(float x, float y) {
 		assertBodyAttached();
-		jboxBody.applyForce(new Vec2(x,y), jboxBody.getWorldCenter());
+		jboxBody.applyForce(world.getScratchVector().set(x,y), jboxBody.getWorldCenter());
 	}
 	
 	/**
@@ -162,10 +538,26 @@ abstract public class Body<T> {
 	 */
 	public void applyForce(float xMagnitude, float yMagnitude, float xAt, float yAt, boolean isLocalPoint){
 		assertBodyAttached();
-		Vec2 position = new Vec2(xAt*METERS_PER_PIXEL, yAt*METERS_PER_PIXEL);
-		if(isLocalPoint)
-			position = jboxBody.getWorldPoint(position);
-		jboxBody.applyForce(new Vec2(xMagnitude, yMagnitude), position);
+		jboxBody.applyForce(world.getScratchVector().set(xMagnitude, yMagnitude), toWorldPoint(xAt, yAt, isLocalPoint));
+	}
+	
+	/**
+	 * Convert a point given in pixels to a point in the world in meters, 
+	 * without allocating. The result is the world's scratch point, so it's 
+	 * only valid until the next call.
+	 * 
+	 * @param x The x coordinate of the point
+	 * @param y The y coordinate of the point
+	 * @param isLocalPoint True if the point is local to the body, false if it's in world coordinates
+	 * @return The point in world coordinates in meters
+	 */
+	private Vec2 toWorldPoint(float x, float y, boolean isLocalPoint) {
+		Vec2 point = world.getScratchPoint().set(x*METERS_PER_PIXEL, y*METERS_PER_PIXEL);
+		if (isLocalPoint) {
+			// JBox2D reads the whole point before writing the result, so it can be its own output
+			jboxBody.getWorldPointToOut(point, point);
+		}
+		return point;
 	}
 
 	/**
@@ -184,7 +576,7 @@ abstract public class Body<T> {
 	/**apply an impulse to the body at it's center*/
 	public void applyImpulse(float xMagnitude, float yMagnitude){
 		assertBodyAttached();
-		jboxBody.applyLinearImpulse(new Vec2(xMagnitude,yMagnitude), jboxBody.getWorldCenter());
+		jboxBody.applyLinearImpulse(world.getScratchVector().set(xMagnitude,yMagnitude), jboxBody.getWorldCenter());
 	}
 	
 	/**apply an impulse to the body at an arbitrary location 
@@ -197,10 +589,7 @@ abstract public class Body<T> {
 	 */
 	public void applyImpulse(float xMagnitude, float yMagnitude, float xAt, float yAt, boolean isLocalPoint){
 		assertBodyAttached();
-		Vec2 position = new Vec2(xAt*METERS_PER_PIXEL, yAt*METERS_PER_PIXEL);
-		if(isLocalPoint)
-			position = jboxBody.getWorldPoint(position);
-		jboxBody.applyLinearImpulse(new Vec2(xMagnitude, yMagnitude), position);
+		jboxBody.applyLinearImpulse(world.getScratchVector().set(xMagnitude, yMagnitude), toWorldPoint(xAt, yAt, isLocalPoint));
 	}
 	
 	/**
@@ -234,6 +623,89 @@ abstract public class Body<T> {
 		return attached ? jboxBody.getPosition().y*PIXELS_PER_METER : jboxBodyDef.position.y*PIXELS_PER_METER;
 	}
 	
+	/**
+	 * Record the current transform as the previous one, before the world takes
+	 * a fixed step
+	 */
+	void storePreviousTransform() {
+		if (attached) {
+			Vec2 position = jboxBody.getPosition();
+			previousX = position.x;
+			previousY = position.y;
+			previousAngle = jboxBody.getAngle();
+		} else {
+			previousX = jboxBodyDef.position.x;
+			previousY = jboxBodyDef.position.y;
+			previousAngle = jboxBodyDef.angle;
+		}
+	}
+	
+	/**
+	 * Get the X position of the body before the world's last fixed step
+	 * 
+	 * @see World#advance(float)
+	 * @return The previous x position of the body
+	 */
+	public float getPreviousX() {
+		return previousX*PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get the Y position of the body before the world's last fixed step
+	 * 
+	 * @see World#advance(float)
+	 * @return The previous y position of the body
+	 */
+	public float getPreviousY() {
+		return previousY*PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get the rotation of the body before the world's last fixed step
+	 * 
+	 * @see World#advance(float)
+	 * @return The previous rotation of the body
+	 */
+	public float getPreviousRotation() {
+		return previousAngle;
+	}
+	
+	/**
+	 * Get the X position of the body interpolated between the previous and 
+	 * current fixed steps, for smooth rendering.
+	 * 
+	 * @see World#getInterpolationAlpha()
+	 * @param alpha The fraction of the way from the previous to the current step
+	 * @return The interpolated x position of the body
+	 */
+	public float getInterpolatedX(float alpha) {
+		return (previousX + (((attached ? jboxBody.getPosition().x : jboxBodyDef.position.x) - previousX) * alpha))*PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get the Y position of the body interpolated between the previous and 
+	 * current fixed steps, for smooth rendering.
+	 * 
+	 * @see World#getInterpolationAlpha()
+	 * @param alpha The fraction of the way from the previous to the current step
+	 * @return The interpolated y position of the body
+	 */
+	public float getInterpolatedY(float alpha) {
+		return (previousY + (((attached ? jboxBody.getPosition().y : jboxBodyDef.position.y) - previousY) * alpha))*PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get the rotation of the body interpolated between the previous and 
+	 * current fixed steps, for smooth rendering.
+	 * 
+	 * @see World#getInterpolationAlpha()
+	 * @param alpha The fraction of the way from the previous to the current step
+	 * @return The interpolated rotation of the body
+	 */
+	public float getInterpolatedRotation(float alpha) {
+		return previousAngle + (((attached ? jboxBody.getAngle() : jboxBodyDef.angle) - previousAngle) * alpha);
+	}
+	
 	/**
 	 * Get the X position of the body in local coordinates
 	 * @return The x position of the body in local coordinates
@@ -320,6 +792,50 @@ abstract public class Body<T> {
 		shape.setDensity(den);
 	}
 	
+	/**
+	 * Set whether this body is a sensor, detecting other bodies overlapping
+	 * it without colliding with them. A static sensor is kept out of the 
+	 * world's step, so idle triggers add little to it until something 
+	 * moves into them.
+	 * 
+	 * @see Shape#setSensor(boolean)
+	 * @see World#addSensorListener(SensorListener)
+	 * @param sensor True if this body should be a sensor
+	 */
+	public void setSensor(boolean sensor) {
+		shape.setSensor(sensor);
+	}
+	
+	/**
+	 * Set the collision categories this body belongs to, as a bit mask
+	 * 
+	 * @see Shape#setCollisionCategories(int)
+	 * @param categories The bits of the categories this body belongs to
+	 */
+	public void setCollisionCategories(int categories) {
+		shape.setCollisionCategories(categories);
+	}
+	
+	/**
+	 * Set the collision categories this body collides with, as a bit mask
+	 * 
+	 * @see Shape#setCollisionMask(int)
+	 * @param mask The bits of the categories this body collides with
+	 */
+	public void setCollisionMask(int mask) {
+		shape.setCollisionMask(mask);
+	}
+	
+	/**
+	 * Set the collision group of this body
+	 * 
+	 * @see Shape#setCollisionGroup(int)
+	 * @param group The group this body belongs to
+	 */
+	public void setCollisionGroup(int group) {
+		shape.setCollisionGroup(group);
+	}
+	
 	/**
 	 * @return true if the body is attached to a world and is marked "active"
 	 */
@@ -345,7 +861,81 @@ abstract public class Body<T> {
 	 * @return true if the body is currently attached to a world
 	 */
 	public boolean isAttached() {
-		return attached;
+		return attached && !parked;
+	}
+	
+	/**
+	 * Get the pool this body was created by
+	 * 
+	 * @return The pool that created this body or null if it wasn't created by a pool
+	 */
+	BodyPool<T> getPool() {
+		return pool;
+	}
+	
+	/**
+	 * Set the pool this body was created by
+	 * 
+	 * @param pool The pool that created this body
+	 */
+	void setPool(BodyPool<T> pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Check if this body is parked in a pool
+	 * 
+	 * @return True if this body is parked
+	 */
+	boolean isParked() {
+		return parked;
+	}
+	
+	/**
+	 * Notification that this body is being parked. The JBox2D body is kept
+	 * but deactivated, which takes it out of the broadphase and ends its
+	 * contacts. Like removing the body, that doesn't notify listeners, so 
+	 * the back reference is cleared while JBox2D ends them.
+	 */
+	void park() {
+		jboxBody.m_userData = null;
+		jboxBody.setActive(false);
+		jboxBody.m_userData = this;
+		resetTouching();
+		parked = true;
+	}
+	
+	/**
+	 * Notification that this body has been added to a world already parked,
+	 * with its JBox2D body created inactive
+	 */
+	void addParked() {
+		parked = true;
+	}
+	
+	/**
+	 * Notification that this body is leaving the pool to be used again. The
+	 * body is moved, given a new velocity, stopped rotating and woken up,
+	 * reusing the JBox2D body and fixtures it already has.
+	 * 
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @param xVelocity The x component of the body's velocity
+	 * @param yVelocity The y component of the body's velocity
+	 */
+	void unpark(float x, float y, float xVelocity, float yVelocity) {
+		// the definition's position is only read on creation, so it doubles as scratch
+		Vec2 position = jboxBodyDef.position;
+		position.set(x*METERS_PER_PIXEL, y*METERS_PER_PIXEL);
+		// moved while inactive so the proxies are created in the right place
+		jboxBody.setTransform(position, 0);
+		jboxBody.m_linearVelocity.set(xVelocity, yVelocity);
+		jboxBody.m_angularVelocity = 0;
+		jboxBody.m_force.setZero();
+		jboxBody.m_torque = 0;
+		jboxBody.setActive(true);
+		jboxBody.setAwake(true);
+		parked = false;
 	}
 	
 	/**
@@ -354,11 +944,14 @@ abstract public class Body<T> {
 	 * @param world The world this body is being added to
 	 */
 	void addToWorld(World world) {
-		org.jbox2d.dynamics.World jboxWorld = world.getJBoxWorld();
+		org.jbox2d.dynamics.World jboxWorld = world.getJBoxWorld(this);
 				
 		jboxBody = jboxWorld.createBody(jboxBodyDef);
+		jboxBody.m_userData = this;
 		shape.createInBody(this);
+		boundsValid = false;
 		attached = true;
+		this.world = world;
 	}
 
 	/**
@@ -367,10 +960,84 @@ abstract public class Body<T> {
 	 * @param world The world this body is being removed from
 	 */
 	void removeFromWorld(World world) {
-		org.jbox2d.dynamics.World jboxWorld = world.getJBoxWorld();
-		jboxWorld.destroyBody(jboxBody);
+		storeState();
+		// cleared first so the contacts JBox2D ends on the way out aren't reported
+		jboxBody.m_userData = null;
+		jboxBody.getWorld().destroyBody(jboxBody);
 		resetTouching();
 		attached = false;
+		parked = false;
+		this.world = null;
+	}
+	
+	/**
+	 * Notification that this body is moving to another world. Its JBox2D body
+	 * is recreated there in the same state, and the contacts ending as it
+	 * leaves aren't reported, so what it's touching is left for the caller to
+	 * settle.
+	 * 
+	 * @param from The world this body is leaving
+	 * @param to The world this body is joining
+	 */
+	void transfer(World from, World to) {
+		storeState();
+		jboxBody.m_userData = null;
+		jboxBody.getWorld().destroyBody(jboxBody);
+		addToWorld(to);
+	}
+	
+	/**
+	 * Notification that one of this body's shapes has become or stopped 
+	 * being a sensor, which moves a static body in or out of its world's 
+	 * static sensors
+	 */
+	void sensorChanged() {
+		if (attached && isStatic()) {
+			world.sensorChanged(this);
+		}
+	}
+	
+	/**
+	 * Recreate the JBox2D body in the same world in the same state, so that
+	 * it's placed where its world keeps bodies like it now. The contacts 
+	 * ending as the old body is destroyed aren't reported.
+	 */
+	void recreate() {
+		storeState();
+		jboxBody.m_userData = null;
+		jboxBody.getWorld().destroyBody(jboxBody);
+		addToWorld(world);
+		if (dormantProxy != null) {
+			jboxBody.setActive(false);
+		}
+	}
+	
+	/**
+	 * Copy the current state of the JBox2D body back into the body definition, 
+	 * so that the body carries on where it left off if it's added to a world 
+	 * again.
+	 */
+	private void storeState() {
+		jboxBodyDef.position.set(jboxBody.getPosition());
+		jboxBodyDef.angle = jboxBody.getAngle();
+		jboxBodyDef.linearVelocity.set(jboxBody.getLinearVelocity());
+		jboxBodyDef.angularVelocity = jboxBody.getAngularVelocity();
+		jboxBodyDef.awake = jboxBody.isAwake();
+		// a body resting away from the observers is active as far as the caller is concerned
+		jboxBodyDef.active = jboxBody.isActive() || (dormantProxy != null);
+		jboxBodyDef.fixedRotation = jboxBody.isFixedRotation();
+		jboxBodyDef.bullet = jboxBody.isBullet();
+		jboxBodyDef.linearDamping = jboxBody.getLinearDamping();
+		jboxBodyDef.angularDamping = jboxBody.getAngularDamping();
+	}
+	
+	/**
+	 * Get the world this body is attached to
+	 * 
+	 * @return The world this body is attached to or null if it isn't attached
+	 */
+	World getWorld() {
+		return world;
 	}
 	
 	/**
@@ -400,7 +1067,23 @@ abstract public class Body<T> {
 	 */
 	public void setPosition(float x, float y) {
 		assertBodyAttached();
-		jboxBody.setTransform(new Vec2(x*METERS_PER_PIXEL,y*METERS_PER_PIXEL), jboxBody.getAngle());
+		jboxBody.setTransform(world.getScratchPoint().set(x*METERS_PER_PIXEL,y*METERS_PER_PIXEL), jboxBody.getAngle());
+		world.bodyMoved(this);
+	}
+	
+	/**
+	 * Set the position and rotation of the body in one go, moving it in the 
+	 * broadphase once rather than twice. This can only be called after the 
+	 * body has been added to the world.
+	 * 
+	 * @param x The new x coordinate of the body
+	 * @param y The new y coordinate of the body
+	 * @param rotation The new rotation of the body
+	 */
+	public void setTransform(float x, float y, float rotation) {
+		assertBodyAttached();
+		jboxBody.setTransform(world.getScratchPoint().set(x*METERS_PER_PIXEL,y*METERS_PER_PIXEL), rotation);
+		world.bodyMoved(this);
 	}
 	
 	/**
@@ -412,6 +1095,7 @@ abstract public class Body<T> {
 	public void setRotation(float rotation) {
 		assertBodyAttached();
 		jboxBody.setTransform(jboxBody.getPosition(), rotation);
+		world.bodyMoved(this);
 	}
 	
 	/**
@@ -440,7 +1124,11 @@ abstract public class Body<T> {
 	 * @param y The amount to move the body on the y axis
 	 */
 	public void translate(float x, float y) {
-		setPosition(getX()+x, getY()+y);
+		assertBodyAttached();
+		Vec2 position = jboxBody.getPosition();
+		jboxBody.setTransform(world.getScratchPoint().set(position.x+(x*METERS_PER_PIXEL), position.y+(y*METERS_PER_PIXEL)), 
+				jboxBody.getAngle());
+		world.bodyMoved(this);
 	}
 
 	/**
@@ -518,28 +1206,74 @@ abstract public class Body<T> {
 	 * @return bounding box of all shapes enclosed in this body
 	 */
 	public BoundingBox getBoundingBox(){
-		AABB bodyAABB = new AABB(new AABB(new Vec2(Float.MAX_VALUE, Float.MAX_VALUE), new Vec2(Float.MIN_VALUE, Float.MIN_VALUE)));
-		AABB shapeAABB = new AABB();
-		for(org.jbox2d.collision.shapes.Shape jshape : shape.getJBoxShapes()){
-			jshape.computeAABB(shapeAABB, jboxBody.m_xf);
-			if(shapeAABB.lowerBound.x < bodyAABB.lowerBound.x){
-				bodyAABB.lowerBound.x = shapeAABB.lowerBound.x;
-			}
-			if(shapeAABB.lowerBound.y < bodyAABB.lowerBound.y){
-				bodyAABB.lowerBound.y = shapeAABB.lowerBound.y;
-			}
-			if(shapeAABB.upperBound.x > bodyAABB.upperBound.x){
-				bodyAABB.upperBound.x = shapeAABB.upperBound.x;
-			}
-			if(shapeAABB.upperBound.y > bodyAABB.upperBound.y){
-				bodyAABB.upperBound.y = shapeAABB.upperBound.y;
-			}
+		updateBounds();
+		return new BoundingBox(new Vector(boundsLowerX*PIXELS_PER_METER, boundsLowerY*PIXELS_PER_METER), 
+				new Vector(boundsUpperX*PIXELS_PER_METER, boundsUpperY*PIXELS_PER_METER));
+	}
+	
+	/**
+	 * Get the bounding box that encloses this body and all of its constituent 
+	 * shapes without allocating, as the lower x, lower y, upper x and upper y
+	 * 
+	 * @param bounds The array to write the bounds into, at least 4 long
+	 */
+	public void getBoundingBox(float[] bounds) {
+		getBoundingBox(bounds, 0);
+	}
+	
+	/**
+	 * Get the bounding box that encloses this body and all of its constituent 
+	 * shapes without allocating, as the lower x, lower y, upper x and upper y. 
+	 * The offset lets the bounds of many bodies be packed into one array.
+	 * 
+	 * @param bounds The array to write the bounds into
+	 * @param offset The index to write the lower x at, followed by the other three
+	 */
+	public void getBoundingBox(float[] bounds, int offset) {
+		updateBounds();
+		bounds[offset] = boundsLowerX*PIXELS_PER_METER;
+		bounds[offset+1] = boundsLowerY*PIXELS_PER_METER;
+		bounds[offset+2] = boundsUpperX*PIXELS_PER_METER;
+		bounds[offset+3] = boundsUpperY*PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Make sure the cached bounds are up to date. They're only computed again 
+	 * if the body has moved or rotated since they were last computed, so the 
+	 * bounds of a sleeping body are never recomputed and those of a moving 
+	 * body at most once a step.
+	 */
+	private void updateBounds() {
+		assertBodyAttached();
+		Vec2 position = jboxBody.m_xf.position;
+		float angle = jboxBody.getAngle();
+		if (boundsValid && (position.x == boundsX) && (position.y == boundsY) && (angle == boundsAngle)) {
+			return;
+		}
+		
+		if (shapeAABB == null) {
+			shapeAABB = new AABB();
+		}
+		float lowerX = Float.MAX_VALUE;
+		float lowerY = Float.MAX_VALUE;
+		float upperX = -Float.MAX_VALUE;
+		float upperY = -Float.MAX_VALUE;
+		List<org.jbox2d.collision.shapes.Shape> jshapes = shape.getJBoxShapes();
+		for (int i=0;i<jshapes.size();i++) {
+			jshapes.get(i).computeAABB(shapeAABB, jboxBody.m_xf);
+			lowerX = Math.min(lowerX, shapeAABB.lowerBound.x);
+			lowerY = Math.min(lowerY, shapeAABB.lowerBound.y);
+			upperX = Math.max(upperX, shapeAABB.upperBound.x);
+			upperY = Math.max(upperY, shapeAABB.upperBound.y);
 		}
-		bodyAABB.lowerBound.x=bodyAABB.lowerBound.x*PIXELS_PER_METER;
-		bodyAABB.lowerBound.y=bodyAABB.lowerBound.y*PIXELS_PER_METER;
-		bodyAABB.upperBound.x=bodyAABB.upperBound.x*PIXELS_PER_METER;
-		bodyAABB.upperBound.y=bodyAABB.upperBound.y*PIXELS_PER_METER;
-		return BoundingBox.fromAABB(bodyAABB);
+		boundsLowerX = lowerX;
+		boundsLowerY = lowerY;
+		boundsUpperX = upperX;
+		boundsUpperY = upperY;
+		boundsX = position.x;
+		boundsY = position.y;
+		boundsAngle = angle;
+		boundsValid = true;
 	}
 	
 	private boolean bullet = false;
@@ -575,6 +1309,80 @@ abstract public class Body<T> {
 	 */
 	public void setActive(boolean flag) {
 		assertBodyAttached();
+		if (dormantProxy != null) {
+			world.forgetDormant(this);
+		}
 		jboxBody.setActive(flag);
+		if (!flag) {
+			world.bodyDeactivated(this);
+		}
+	}
+
+	/**
+	 * Check if this body has been deactivated by its world because it's far
+	 * from all of the world's observers. It will be activated again when an
+	 * observer comes near.
+	 * 
+	 * @see World#addObserver(Observer)
+	 * @return True if the body is resting away from the observers
+	 */
+	public boolean isDormant() {
+		return dormantProxy != null;
+	}
+
+	/**
+	 * Check if this body is in its world's far tier, stepped less often
+	 * because it's far from all of the world's observers
+	 * 
+	 * @see World#setLevelOfDetail(float, float, int)
+	 * @return True if the body is simulated at the reduced rate
+	 */
+	public boolean isFar() {
+		return farIndex >= 0;
+	}
+
+	/**
+	 * Get the body's index in the world's far tier
+	 * 
+	 * @return The index, or -1 if the body runs at the full rate
+	 */
+	int getFarIndex() {
+		return farIndex;
+	}
+
+	/**
+	 * Set the body's index in the world's far tier
+	 * 
+	 * @param index The index, or -1 if the body runs at the full rate
+	 */
+	void setFarIndex(int index) {
+		farIndex = index;
+	}
+
+	/**
+	 * Get the body's node in the world's tree of bodies put to rest
+	 * 
+	 * @return The node, or null if the body isn't resting
+	 */
+	DynamicTreeNode getDormantProxy() {
+		return dormantProxy;
+	}
+
+	/**
+	 * Set the body's node in the world's tree of bodies put to rest
+	 * 
+	 * @param proxy The node, or null once the body is woken
+	 */
+	void setDormantProxy(DynamicTreeNode proxy) {
+		dormantProxy = proxy;
+	}
+
+	/**
+	 * A mutable count of the contact points shared with another body, kept so that
+	 * touching and untouching doesn't box a new integer on every contact event
+	 */
+	private static class TouchCount {
+		/** The number of contact points */
+		private int value;
 	}
 }
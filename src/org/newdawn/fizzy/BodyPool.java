@@ -0,0 +1,221 @@
+package org.newdawn.fizzy;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of bodies for things that are created and thrown away over and over,
+ * such as bullets and debris. Bodies released back to the pool aren't
+ * destroyed but parked: taken out of the world's list of bodies and
+ * deactivated, keeping the Fizzy body, its shape and definitions and the JBox2D
+ * body and fixtures. Acquiring a body from the pool moves a parked body back
+ * into the world, only creating a new one from the template when the pool is
+ * empty.
+ *
+ * A body acquired from the pool is reset to a new position and velocity, with
+ * no rotation, no contacts and no body listeners. Its user data and any
+ * settings changed since it was created, such as its damping, are left as they
+ * were. Parked bodies aren't in the world as far as its users can tell - they
+ * aren't reported by queries, they have no id and {@link Body#isAttached()} is
+ * false - but a released body mustn't be used until it's acquired again.
+ *
+ * <pre>
+ * BodyPool&lt;Bullet&gt; bullets = new BodyPool&lt;Bullet&gt;(world, template, 256);
+ * Body&lt;Bullet&gt; bullet = bullets.acquire(x, y, xVelocity, yVelocity);
+ * ...
+ * bullets.release(bullet);
+ * </pre>
+ *
+ * @param <T> The type of user data held by the bodies in the pool
+ */
+public class BodyPool<T> {
+	/** The world the pooled bodies belong to */
+	private final World world;
+	/** The template new bodies are created from */
+	private final BodyTemplate<T> template;
+	/** The bodies parked, ready to be acquired */
+	private final ArrayList<Body<T>> parked;
+	/** The most bodies kept parked, further releases are destroyed */
+	private int maxSize;
+	/** The number of bodies acquired from the parked bodies */
+	private long hits;
+	/** The number of bodies acquired that had to be created */
+	private long misses;
+	/** The number of bodies released that were destroyed because the pool was full */
+	private long discards;
+
+	/**
+	 * Create a new, empty, pool
+	 *
+	 * @param world The world the bodies belong to
+	 * @param template The template new bodies are created from
+	 * @param maxSize The most bodies kept parked
+	 */
+	public BodyPool(World world, BodyTemplate<T> template, int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Pool size must not be negative: "+maxSize);
+		}
+		this.world = world;
+		this.template = template;
+		this.maxSize = maxSize;
+		this.parked = new ArrayList<Body<T>>(maxSize);
+	}
+
+	/**
+	 * Create bodies up front and park them, so that the first acquires don't
+	 * have to. The bodies are created inactive, so they never enter the
+	 * broadphase until they're acquired.
+	 *
+	 * @param count The number of bodies the pool should hold, capped at its maximum size
+	 */
+	public void prefill(int count) {
+		count = Math.min(count, maxSize);
+		while (parked.size() < count) {
+			Body<T> body = template.create(0, 0);
+			body.jboxBodyDef.active = false;
+			body.setPool(this);
+			world.addParked(body);
+			parked.add(body);
+		}
+	}
+
+	/**
+	 * Acquire a body at rest
+	 *
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @return The body, added to the world
+	 */
+	public Body<T> acquire(float x, float y) {
+		return acquire(x, y, 0, 0);
+	}
+
+	/**
+	 * Acquire a body moving at the given velocity
+	 *
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @param xVelocity The x component of the body's velocity
+	 * @param yVelocity The y component of the body's velocity
+	 * @return The body, added to the world
+	 */
+	public Body<T> acquire(float x, float y, float xVelocity, float yVelocity) {
+		int count = parked.size();
+		if (count > 0) {
+			Body<T> body = parked.remove(count - 1);
+			world.unpark(body, x, y, xVelocity, yVelocity);
+			hits++;
+			return body;
+		}
+
+		Body<T> body = template.spawn(world, x, y, xVelocity, yVelocity);
+		body.setPool(this);
+		misses++;
+		return body;
+	}
+
+	/**
+	 * Release a body back to the pool, taking it out of the world. If the pool
+	 * is full the body is removed from the world as normal.
+	 *
+	 * @param body The body to release, which must have been acquired from this pool
+	 */
+	public void release(Body<T> body) {
+		if (body.getPool() != this) {
+			throw new IllegalArgumentException("Body wasn't acquired from this pool");
+		}
+		if (parked.size() >= maxSize) {
+			world.remove(body);
+			discards++;
+			return;
+		}
+		world.park(body);
+		parked.add(body);
+	}
+
+	/**
+	 * Destroy every parked body
+	 */
+	public void clear() {
+		trim(0);
+	}
+
+	/**
+	 * Destroy parked bodies until there are no more than a given number
+	 *
+	 * @param size The number of parked bodies to keep
+	 */
+	private void trim(int size) {
+		for (int i=parked.size()-1;i>=size;i--) {
+			world.destroyParked(parked.remove(i));
+		}
+	}
+
+	/**
+	 * Set the most bodies kept parked. Bodies over the new size are destroyed.
+	 *
+	 * @param maxSize The most bodies kept parked
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Pool size must not be negative: "+maxSize);
+		}
+		this.maxSize = maxSize;
+		trim(maxSize);
+	}
+
+	/**
+	 * Get the most bodies kept parked
+	 *
+	 * @return The most bodies kept parked
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Get the number of bodies parked, ready to be acquired
+	 *
+	 * @return The number of bodies parked
+	 */
+	public int getParkedCount() {
+		return parked.size();
+	}
+
+	/**
+	 * Get the number of acquires served by a parked body
+	 *
+	 * @return The number of acquires that reused a body
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of acquires that had to create a new body because the
+	 * pool was empty
+	 *
+	 * @return The number of acquires that created a body
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get the number of releases that destroyed the body because the pool
+	 * was full
+	 *
+	 * @return The number of bodies destroyed on release
+	 */
+	public long getDiscards() {
+		return discards;
+	}
+
+	/**
+	 * Reset the hit, miss and discard counts to zero
+	 */
+	public void resetStats() {
+		hits = 0;
+		misses = 0;
+		discards = 0;
+	}
+}
@@ -0,0 +1,150 @@
+package org.newdawn.fizzy;
+
+import org.jbox2d.dynamics.BodyType;
+
+/**
+ * A prefab for bodies that are created over and over, such as projectiles.
+ * The template is built once from a prototype body and stamps out copies of
+ * it, with the same type, shape, materials and settings. The geometry of the
+ * shapes, which is the expensive part of building them, is built once and
+ * shared by every body stamped out, since JBox2D copies it into each fixture
+ * anyway. Changing the geometry of a stamped body's shape, e.g. with
+ * {@link PolygonBasedShape#setOffset(float, float, float)}, gives that shape
+ * its own copy first so the template isn't affected.
+ *
+ * <pre>
+ * BodyTemplate&lt;Bullet&gt; bullets = new BodyTemplate&lt;Bullet&gt;(prototype);
+ * Body&lt;Bullet&gt; bullet = bullets.spawn(world, x, y, xVelocity, yVelocity);
+ * </pre>
+ *
+ * @param <T> The type of user data held by the bodies created
+ */
+public class BodyTemplate<T> {
+	/** The type of the bodies created */
+	private final BodyType type;
+	/** The shape copied into each body, which owns its geometry */
+	private final Shape shape;
+	/** The linear damping applied to each body */
+	private final float linearDamping;
+	/** The angular damping applied to each body */
+	private final float angularDamping;
+	/** True if the bodies created can't rotate */
+	private final boolean fixedRotation;
+	/** True if the bodies created are bullets */
+	private final boolean bullet;
+
+	/**
+	 * Create a new template. Later changes to the prototype don't change
+	 * the template.
+	 *
+	 * @param prototype The body whose type, shape, materials and settings are copied
+	 */
+	public BodyTemplate(Body<T> prototype) {
+		if (prototype.isAttached()) {
+			org.jbox2d.dynamics.Body jboxBody = prototype.getJBoxBody();
+			type = jboxBody.getType();
+			linearDamping = jboxBody.getLinearDamping();
+			angularDamping = jboxBody.getAngularDamping();
+			fixedRotation = jboxBody.isFixedRotation();
+		} else {
+			type = prototype.jboxBodyDef.type;
+			linearDamping = prototype.jboxBodyDef.linearDamping;
+			angularDamping = prototype.jboxBodyDef.angularDamping;
+			fixedRotation = prototype.jboxBodyDef.fixedRotation;
+		}
+		bullet = prototype.getBullet();
+		shape = copy(prototype.getShape(), true);
+	}
+
+	/**
+	 * Create a new body from the template, not yet added to a world
+	 *
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @return The newly created body
+	 */
+	public Body<T> create(float x, float y) {
+		Shape bodyShape = copy(shape, false);
+		Body<T> body;
+		if (type == BodyType.STATIC) {
+			body = new StaticBody<T>(bodyShape, x, y);
+		} else if (type == BodyType.KINEMATIC) {
+			body = new KinematicBody<T>(bodyShape, x, y);
+		} else {
+			body = new DynamicBody<T>(bodyShape, x, y);
+		}
+		body.jboxBodyDef.linearDamping = linearDamping;
+		body.jboxBodyDef.angularDamping = angularDamping;
+		body.jboxBodyDef.fixedRotation = fixedRotation;
+		if (bullet) {
+			body.setBullet(true);
+		}
+		return body;
+	}
+
+	/**
+	 * Create a new body from the template and add it to a world
+	 *
+	 * @param world The world to add the body to
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @return The newly created body
+	 */
+	public Body<T> spawn(World world, float x, float y) {
+		Body<T> body = create(x, y);
+		world.add(body);
+		return body;
+	}
+
+	/**
+	 * Create a new body from the template, moving at the given velocity, and
+	 * add it to a world. The velocity is set before the body is added, so
+	 * it's moving from its first step.
+	 *
+	 * @param world The world to add the body to
+	 * @param x The x axis location of the body
+	 * @param y The y axis location of the body
+	 * @param xVelocity The x component of the body's velocity
+	 * @param yVelocity The y component of the body's velocity
+	 * @return The newly created body
+	 */
+	public Body<T> spawn(World world, float x, float y, float xVelocity, float yVelocity) {
+		Body<T> body = create(x, y);
+		body.jboxBodyDef.linearVelocity.set(xVelocity, yVelocity);
+		world.add(body);
+		return body;
+	}
+
+	/**
+	 * Copy a shape, sharing its geometry
+	 *
+	 * @param shape The shape to copy
+	 * @param own True if the copy should have its own geometry rather than share it
+	 * @return The copy of the shape
+	 */
+	private static Shape copy(Shape shape, boolean own) {
+		if (shape instanceof CompoundShape) {
+			CompoundShape compound = (CompoundShape) shape;
+			CompoundShape copy = new CompoundShape();
+			for (int i=0;i<compound.getShapeCount();i++) {
+				copy.add(copy(compound.getShape(i), own));
+			}
+			return copy;
+		}
+
+		PrimitiveShape copy;
+		if (shape instanceof Circle) {
+			copy = new Circle((Circle) shape);
+		} else if (shape instanceof Rectangle) {
+			copy = new Rectangle((Rectangle) shape);
+		} else if (shape instanceof Polygon) {
+			copy = new Polygon((Polygon) shape);
+		} else {
+			throw new IllegalArgumentException("Shape can't be used in a template: "+shape.getClass().getName());
+		}
+		if (own) {
+			copy.ownGeometry();
+		}
+		return copy;
+	}
+}
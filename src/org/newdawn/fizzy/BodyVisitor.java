@@ -0,0 +1,19 @@
+package org.newdawn.fizzy;
+
+/**
+ * Description of any class receiving the bodies found by a query on the
+ * world, one at a time, without a collection being built to hold them.
+ * The world can't be queried again from inside {@link #visit(Body)}.
+ * 
+ * @see World#visitBodiesAt(float, float, BodyVisitor)
+ */
+public interface BodyVisitor {
+	/**
+	 * Notification that a body matched the query. Each body is reported at
+	 * most once per query.
+	 * 
+	 * @param body The body found
+	 * @return True if the query should continue, false to stop it
+	 */
+	public boolean visit(Body<?> body);
+}
@@ -58,6 +58,16 @@ public class Circle extends PrimitiveShape {
 		def.friction = friction;
 	}
 	
+	/**
+	 * Create a new circle sharing the geometry of another
+	 * 
+	 * @param template The circle to copy
+	 */
+	Circle(Circle template) {
+		super(template);
+		shape = (CircleShape) def.shape;
+	}
+	
 	/**
 	 * Get the radius of the circle 
 	 * 
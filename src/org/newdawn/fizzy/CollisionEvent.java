@@ -18,6 +18,7 @@ public class CollisionEvent {
 	 * 
 	 * @param bodyA The first body in the collision
 	 * @param bodyB The second body in the collision
+	 * @param contact The contact between the bodies
 	 */
 	CollisionEvent(Body<?> bodyA, Body<?> bodyB, FizzyContact contact) {
 		this.bodyA = bodyA;
@@ -25,6 +26,20 @@ public class CollisionEvent {
 		this.contact = contact;
 	}
 	
+	/**
+	 * Reuse this event to describe a different collision. Only used for events
+	 * the world dispatches from its pool.
+	 * 
+	 * @param bodyA The first body in the collision
+	 * @param bodyB The second body in the collision
+	 * @param contact The contact between the bodies
+	 */
+	void set(Body<?> bodyA, Body<?> bodyB, FizzyContact contact) {
+		this.bodyA = bodyA;
+		this.bodyB = bodyB;
+		this.contact = contact;
+	}
+	
 	/**
 	 * Get the first body taking part in the collision
 	 * 
@@ -0,0 +1,221 @@
+package org.newdawn.fizzy;
+
+/**
+ * The batch of collision and separation events recorded while the world was
+ * stepped with deferred events enabled. Events are held as primitive records
+ * (the ids of the two bodies, the kind of event and the number of contact
+ * points) in a ring buffer. The events delivered by an update are dropped at
+ * the start of the next one, so recording them never allocates once the
+ * buffer has grown to fit a step.
+ *
+ * The batch can be iterated directly after {@link World#update(float)} returns:
+ *
+ * <pre>
+ * CollisionEventQueue queue = world.getEventQueue();
+ * for (int i = 0; i &lt; queue.size(); i++) {
+ * 	if (queue.isCollision(i)) {
+ * 		...queue.getBodyA(i), queue.getBodyB(i)
+ * 	}
+ * }
+ * </pre>
+ *
+ * @see World#setDeferredEvents(boolean)
+ */
+public class CollisionEventQueue {
+	/** The kind recorded for two bodies colliding */
+	private static final int COLLIDED = 0;
+	/** The kind recorded for two bodies separating */
+	private static final int SEPARATED = 1;
+	/** The number of ints used by each event */
+	private static final int STRIDE = 4;
+
+	/** The world owning the bodies referenced by id */
+	private final World world;
+	/** The event records, STRIDE ints per event */
+	private int[] data;
+	/** The number of events the buffer can hold, always a power of two */
+	private int capacity;
+	/** The index of the first event in the ring */
+	private int head;
+	/** The number of events in the ring */
+	private int size;
+
+	/**
+	 * Create a new queue
+	 *
+	 * @param world The world owning the bodies referenced by id
+	 * @param capacity The initial number of events that can be held, rounded up to a power of two
+	 */
+	CollisionEventQueue(World world, int capacity) {
+		this.world = world;
+		this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		data = new int[this.capacity * STRIDE];
+	}
+
+	/**
+	 * Record that two bodies have collided
+	 *
+	 * @param bodyA The first body in the collision
+	 * @param bodyB The second body in the collision
+	 * @param pointCount The number of contact points between them
+	 */
+	void addCollision(Body<?> bodyA, Body<?> bodyB, int pointCount) {
+		add(bodyA.getId(), bodyB.getId(), COLLIDED, pointCount);
+	}
+
+	/**
+	 * Record that two bodies have separated
+	 *
+	 * @param bodyA The first body in the separation
+	 * @param bodyB The second body in the separation
+	 */
+	void addSeparation(Body<?> bodyA, Body<?> bodyB) {
+		add(bodyA.getId(), bodyB.getId(), SEPARATED, 0);
+	}
+
+	/**
+	 * Append an event record to the ring, growing it if it's full
+	 *
+	 * @param idA The id of the first body
+	 * @param idB The id of the second body
+	 * @param kind The kind of event
+	 * @param pointCount The number of contact points
+	 */
+	private void add(int idA, int idB, int kind, int pointCount) {
+		if (size == capacity) {
+			grow();
+		}
+		int offset = ((head + size) & (capacity - 1)) * STRIDE;
+		data[offset] = idA;
+		data[offset + 1] = idB;
+		data[offset + 2] = kind;
+		data[offset + 3] = pointCount;
+		size++;
+	}
+
+	/**
+	 * Double the capacity of the ring, unwrapping the events to the start
+	 */
+	private void grow() {
+		int[] grown = new int[capacity * 2 * STRIDE];
+		int first = Math.min(size, capacity - head);
+		System.arraycopy(data, head * STRIDE, grown, 0, first * STRIDE);
+		System.arraycopy(data, 0, grown, first * STRIDE, (size - first) * STRIDE);
+		data = grown;
+		capacity *= 2;
+		head = 0;
+	}
+
+	/**
+	 * Remove all events from the queue
+	 */
+	void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Remove the oldest events from the queue
+	 *
+	 * @param count The number of events to remove
+	 */
+	void removeFirst(int count) {
+		if (count >= size) {
+			clear();
+			return;
+		}
+		head = (head + count) & (capacity - 1);
+		size -= count;
+	}
+
+	/**
+	 * Get the number of events in the batch
+	 *
+	 * @return The number of events in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if the batch is empty
+	 *
+	 * @return True if no events were recorded
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Get the offset into the data of an event
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The offset of the event's first int
+	 */
+	private int offset(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Event "+i+" of "+size);
+		}
+		return ((head + i) & (capacity - 1)) * STRIDE;
+	}
+
+	/**
+	 * Check if an event records two bodies colliding
+	 *
+	 * @param i The index of the event in the batch
+	 * @return True if the bodies collided, false if they separated
+	 */
+	public boolean isCollision(int i) {
+		return data[offset(i) + 2] == COLLIDED;
+	}
+
+	/**
+	 * Get the id of the first body in an event
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The id of the first body
+	 */
+	public int getBodyIdA(int i) {
+		return data[offset(i)];
+	}
+
+	/**
+	 * Get the id of the second body in an event
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The id of the second body
+	 */
+	public int getBodyIdB(int i) {
+		return data[offset(i) + 1];
+	}
+
+	/**
+	 * Get the first body in an event
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The first body or null if it has since been removed from the world
+	 */
+	public Body<?> getBodyA(int i) {
+		return world.getBodyById(getBodyIdA(i));
+	}
+
+	/**
+	 * Get the second body in an event
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The second body or null if it has since been removed from the world
+	 */
+	public Body<?> getBodyB(int i) {
+		return world.getBodyById(getBodyIdB(i));
+	}
+
+	/**
+	 * Get the number of contact points the bodies had when they collided
+	 *
+	 * @param i The index of the event in the batch
+	 * @return The number of contact points, always 0 for a separation
+	 */
+	public int getPointCount(int i) {
+		return data[offset(i) + 3];
+	}
+}
@@ -1,6 +1,7 @@
 package org.newdawn.fizzy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,6 +14,13 @@ public class CompoundShape implements Shape {
 	private List<Shape> children = new ArrayList<Shape>();
 	/** The body this shape is being used in if any */
 	private Body<?> body;
+	/** The compound this shape has been added to if any */
+	private CompoundShape parent;
+	/** 
+	 * The JBox2D shapes of all the children, nested compounds included, or 
+	 * null if they need collecting again 
+	 */
+	private List<org.jbox2d.collision.shapes.Shape> jboxShapes;
 	
 	/**
 	 * Create a new shape built up of a set of others
@@ -32,6 +40,20 @@ public class CompoundShape implements Shape {
 	 */
 	public void add(Shape child) {
 		children.add(child);
+		if (child instanceof CompoundShape) {
+			((CompoundShape) child).parent = this;
+		}
+		invalidate();
+	}
+	
+	/**
+	 * Throw away the collected JBox2D shapes of this compound and the 
+	 * compounds it's part of, since the shapes making them up have changed
+	 */
+	private void invalidate() {
+		for (CompoundShape shape = this; shape != null; shape = shape.parent) {
+			shape.jboxShapes = null;
+		}
 	}
 	
 	/**
@@ -55,20 +77,31 @@ public class CompoundShape implements Shape {
 	
 	@Override
 	public void createInBody(Body<?> body) {
+		this.body = body;
 		for(Shape child : children){
 			child.createInBody(body);
 		}
+		// the children have new JBox2D shapes
+		invalidate();
 	}
 
+	/**
+	 * Get the JBox2D shapes that build up this compound. The list is 
+	 * collected once and kept until the children change, so it mustn't be 
+	 * modified.
+	 * 
+	 * @return The shapes that build up this compound
+	 */
 	@Override
 	public List<org.jbox2d.collision.shapes.Shape> getJBoxShapes() {
-		List<org.jbox2d.collision.shapes.Shape> shapes = new ArrayList<org.jbox2d.collision.shapes.Shape>();
-
-		for (int i=0;i<children.size();i++) {
-			shapes.addAll(children.get(i).getJBoxShapes());
+		if (jboxShapes == null) {
+			List<org.jbox2d.collision.shapes.Shape> shapes = new ArrayList<org.jbox2d.collision.shapes.Shape>();
+			for (int i=0;i<children.size();i++) {
+				shapes.addAll(children.get(i).getJBoxShapes());
+			}
+			jboxShapes = Collections.unmodifiableList(shapes);
 		}
-		
-		return shapes;
+		return jboxShapes;
 	}
 
 	@Override
@@ -92,4 +125,42 @@ public class CompoundShape implements Shape {
 		}
 	}
 
+	@Override
+	public void setCollisionCategories(int categories) {
+		for(Shape child : children){
+			child.setCollisionCategories(categories);
+		}
+	}
+
+	@Override
+	public void setCollisionMask(int mask) {
+		for(Shape child : children){
+			child.setCollisionMask(mask);
+		}
+	}
+
+	@Override
+	public void setCollisionGroup(int group) {
+		for(Shape child : children){
+			child.setCollisionGroup(group);
+		}
+	}
+
+	@Override
+	public void setSensor(boolean sensor) {
+		for(Shape child : children){
+			child.setSensor(sensor);
+		}
+	}
+
+	@Override
+	public boolean isSensor() {
+		for(Shape child : children){
+			if (!child.isSensor()) {
+				return false;
+			}
+		}
+		return !children.isEmpty();
+	}
+
 }
@@ -3,10 +3,11 @@ package org.newdawn.fizzy;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jbox2d.collision.ManifoldPoint;
 import org.jbox2d.dynamics.contacts.Contact;
 
 public class FizzyContact {
-	private final Contact jboxContact;
+	private Contact jboxContact;
 	private List<Vector> contacts;
 	private Vector referencePoint;
 
@@ -14,6 +15,18 @@ public class FizzyContact {
 		jboxContact = contact;
 	}
 	
+	/**
+	 * Point this contact at a different JBox2D contact. Used to reuse a single
+	 * instance when the world is dispatching pooled events.
+	 * 
+	 * @param contact The JBox2D contact to wrap
+	 */
+	void set(Contact contact){
+		jboxContact = contact;
+		contacts = null;
+		referencePoint = null;
+	}
+	
 	public final int getContactCount(){
 		return jboxContact.getManifold().pointCount;
 	}
@@ -36,6 +49,41 @@ public class FizzyContact {
 		return contacts;
 	}
 	
+	/**
+	 * Get the x coordinate of a contact point without allocating. This is the 
+	 * same value as getContacts().get(i).x
+	 * 
+	 * @param i The index of the contact point, less than {@link #getContactCount()}
+	 * @return The x coordinate of the contact point
+	 */
+	public final float getContactX(int i){
+		return getManifoldPoint(i).localPoint.x*World.PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get the y coordinate of a contact point without allocating. This is the 
+	 * same value as getContacts().get(i).y
+	 * 
+	 * @param i The index of the contact point, less than {@link #getContactCount()}
+	 * @return The y coordinate of the contact point
+	 */
+	public final float getContactY(int i){
+		return getManifoldPoint(i).localPoint.y*World.PIXELS_PER_METER;
+	}
+	
+	/**
+	 * Get a point from the contact manifold, checking that it's in use
+	 * 
+	 * @param i The index of the point
+	 * @return The manifold point at the given index
+	 */
+	private ManifoldPoint getManifoldPoint(int i){
+		if(i < 0 || i >= getContactCount()){
+			throw new IndexOutOfBoundsException("Contact point "+i+" of "+getContactCount());
+		}
+		return jboxContact.getManifold().points[i];
+	}
+	
 	public boolean isTouching(){
 		return jboxContact.isTouching();
 	}
@@ -0,0 +1,135 @@
+package org.newdawn.fizzy;
+
+/**
+ * A movable area of the world that something is watching, usually the part
+ * of the world on screen for one player. While a world has observers, bodies
+ * far from all of them are deactivated and take no part in the simulation,
+ * and they're activated again when an observer comes near.
+ *
+ * @see World#addObserver(Observer)
+ * @see World#setActivityMargins(float, float)
+ */
+public class Observer {
+	/** The x coordinate of the centre of the area */
+	private float x;
+	/** The y coordinate of the centre of the area */
+	private float y;
+	/** The width of the area */
+	private float width;
+	/** The height of the area */
+	private float height;
+	/** True if the area has moved or changed size since the world last checked it */
+	private boolean changed = true;
+
+	/**
+	 * Create a new observer
+	 *
+	 * @param x The x coordinate of the centre of the area observed
+	 * @param y The y coordinate of the centre of the area observed
+	 * @param width The width of the area observed
+	 * @param height The height of the area observed
+	 */
+	public Observer(float x, float y, float width, float height) {
+		setPosition(x, y);
+		setSize(width, height);
+	}
+
+	/**
+	 * Move the area observed
+	 *
+	 * @param x The x coordinate of the centre of the area
+	 * @param y The y coordinate of the centre of the area
+	 */
+	public void setPosition(float x, float y) {
+		if ((x != this.x) || (y != this.y)) {
+			this.x = x;
+			this.y = y;
+			changed = true;
+		}
+	}
+
+	/**
+	 * Change the size of the area observed
+	 *
+	 * @param width The width of the area
+	 * @param height The height of the area
+	 */
+	public void setSize(float width, float height) {
+		if ((width < 0) || (height < 0)) {
+			throw new IllegalArgumentException("Observer size can't be negative: " + width + "x" + height);
+		}
+		if ((width != this.width) || (height != this.height)) {
+			this.width = width;
+			this.height = height;
+			changed = true;
+		}
+	}
+
+	/**
+	 * Get the x coordinate of the centre of the area observed
+	 *
+	 * @return The x coordinate of the centre
+	 */
+	public float getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y coordinate of the centre of the area observed
+	 *
+	 * @return The y coordinate of the centre
+	 */
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * Get the width of the area observed
+	 *
+	 * @return The width of the area
+	 */
+	public float getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the area observed
+	 *
+	 * @return The height of the area
+	 */
+	public float getHeight() {
+		return height;
+	}
+
+	/**
+	 * Check if a bounding box comes within a margin of the area observed
+	 *
+	 * @param bounds The box as lower x, lower y, upper x and upper y
+	 * @param margin The distance around the area that counts as near
+	 * @return True if the box is within the margin of the area
+	 */
+	boolean isNear(float[] bounds, float margin) {
+		float halfWidth = (width * 0.5f) + margin;
+		float halfHeight = (height * 0.5f) + margin;
+		return (bounds[0] <= x + halfWidth) && (bounds[2] >= x - halfWidth)
+				&& (bounds[1] <= y + halfHeight) && (bounds[3] >= y - halfHeight);
+	}
+
+	/**
+	 * Check and clear whether the area has changed since the last check
+	 *
+	 * @return True if the area has moved or changed size
+	 */
+	boolean checkChanged() {
+		boolean result = changed;
+		changed = false;
+		return result;
+	}
+
+	/**
+	 * Indicate that the area should be checked again, as if it had moved
+	 */
+	void markChanged() {
+		changed = true;
+	}
+}
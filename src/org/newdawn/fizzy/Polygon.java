@@ -53,11 +53,25 @@ public class Polygon extends PolygonBasedShape {
 		def.friction = friction;
 	}
 
+	/**
+	 * Create a new polygon sharing the geometry of another
+	 * 
+	 * @param template The polygon to copy
+	 */
+	Polygon(Polygon template) {
+		super(template);
+		shape = (PolygonShape) def.shape;
+		xoffset = template.xoffset;
+		yoffset = template.yoffset;
+		angleOffset = template.angleOffset;
+	}
+
 	/**
 	 * Set all the points on the polygon.
 	 * @param points points in CCW order (as usual)
 	 */
 	public void setPoints(Vec2[] points){
+		shape = (PolygonShape) ownGeometry();
 		Vec2[] scaledPoints=new Vec2[points.length];
 		for (int i=0;i<points.length;i++){
 			scaledPoints[i]=points[i].mul(World.METERS_PER_PIXEL);
@@ -115,8 +129,23 @@ public class Polygon extends PolygonBasedShape {
 		return this;
 	}
 	
+	/**
+	 * Record the offset of points that have already had it applied, e.g. when
+	 * restoring a polygon from a snapshot. 
+	 * 
+	 * @param x The horizontal axis offset
+	 * @param y The vertical axis offset
+	 * @param angle The angle offset
+	 */
+	void restoreOffset(float x, float y, float angle) {
+		xoffset = x;
+		yoffset = y;
+		angleOffset = angle;
+	}
+	
 	@Override
 	protected void applyOffset(float x, float y, float angle) {
+		shape = (PolygonShape) ownGeometry();
 		final Transform xf = new Transform();
 		xf.position.set(new Vec2(x, y).mul(World.METERS_PER_PIXEL));
 		xf.R.set(angle);
@@ -9,6 +9,21 @@ public abstract class PolygonBasedShape extends PrimitiveShape {
 	/** The angle offset */
 	protected float angleOffset;
 	
+	/**
+	 * Create a new polygon based shape
+	 */
+	protected PolygonBasedShape() {
+	}
+	
+	/**
+	 * Create a new polygon based shape sharing the geometry of another
+	 * 
+	 * @param template The shape to copy
+	 */
+	protected PolygonBasedShape(PolygonBasedShape template) {
+		super(template);
+	}
+	
 	/**
 	 * Move the rectangle away from the center of it's potential body. The rectangle will still 
 	 * be positioned based on it's center but will be offset from the body's center by the given 
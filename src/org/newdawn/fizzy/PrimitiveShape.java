@@ -3,6 +3,7 @@ package org.newdawn.fizzy;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jbox2d.dynamics.Filter;
 import org.jbox2d.dynamics.Fixture;
 import org.jbox2d.dynamics.FixtureDef;
 
@@ -13,6 +14,9 @@ import org.jbox2d.dynamics.FixtureDef;
  * @author kevin
  */
 public abstract class PrimitiveShape implements Shape {
+	/** The mask bits colliding with every category */
+	private static final int ALL_CATEGORIES = 0xFFFFFFFF;
+	
 	/** The array list of bodies that contains this shape */
 	protected List<org.jbox2d.collision.shapes.Shape> jbox2DShapes = new ArrayList<org.jbox2d.collision.shapes.Shape>();
 	/** The primitive shape that represent this fizzy fixture */
@@ -21,6 +25,11 @@ public abstract class PrimitiveShape implements Shape {
 	protected FixtureDef def;
 	/** The body this shape is being used in if any */
 	protected Body<?> body;
+	/** 
+	 * True if the JBox2D shape in the definition is shared with the template 
+	 * this shape was copied from, and must be copied before it's changed 
+	 */
+	protected boolean sharedGeometry;
 	
 	/**
 	 * The body this shape is being used in if any
@@ -36,10 +45,52 @@ public abstract class PrimitiveShape implements Shape {
 	 */
 	protected PrimitiveShape() {
 		this.def = new FixtureDef();
+		// JBox2D's default mask only covers 16 categories
+		def.filter.maskBits = ALL_CATEGORIES;
+	}
+	
+	/**
+	 * Create a new primitive shape with the same geometry and properties as 
+	 * another. The JBox2D shape is shared rather than built again, since 
+	 * JBox2D copies it into each fixture anyway.
+	 * 
+	 * @param template The shape to copy
+	 */
+	protected PrimitiveShape(PrimitiveShape template) {
+		this.def = new FixtureDef();
+		def.shape = template.def.shape;
+		def.density = template.getDensity();
+		def.friction = template.getFriction();
+		def.restitution = template.getRestitution();
+		def.isSensor = template.def.isSensor;
+		def.filter.set(template.def.filter);
+		sharedGeometry = true;
+	}
+	
+	/**
+	 * Get the JBox2D shape in the definition ready to be changed, copying it 
+	 * first if it's shared with a template
+	 * 
+	 * @return The JBox2D shape owned by this shape
+	 */
+	protected org.jbox2d.collision.shapes.Shape ownGeometry() {
+		if (sharedGeometry) {
+			def.shape = def.shape.clone();
+			sharedGeometry = false;
+		}
+		return def.shape;
 	}
 	
 	@Override
 	public void createInBody(Body<?> body) {
+		if (jbox2DFixture != null) {
+			// being created again, e.g. moved to another world - keep any 
+			// changes made to the old fixture
+			def.density = jbox2DFixture.m_density;
+			def.friction = jbox2DFixture.m_friction;
+			def.restitution = jbox2DFixture.m_restitution;
+			jbox2DShapes.clear();
+		}
 		this.body = body;
 		jbox2DFixture = body.getJBoxBody().createFixture(def);
 		jbox2DShapes.add(jbox2DFixture.getShape());
@@ -50,6 +101,33 @@ public abstract class PrimitiveShape implements Shape {
 		return jbox2DShapes;
 	}
 
+	/**
+	 * Get the density applied to this shape
+	 * 
+	 * @return The density applied to this shape
+	 */
+	float getDensity() {
+		return jbox2DFixture == null ? def.density : jbox2DFixture.m_density;
+	}
+
+	/**
+	 * Get the friction applied to this shape
+	 * 
+	 * @return The friction applied to this shape
+	 */
+	float getFriction() {
+		return jbox2DFixture == null ? def.friction : jbox2DFixture.m_friction;
+	}
+
+	/**
+	 * Get the restitution applied to this shape
+	 * 
+	 * @return The restitution applied to this shape
+	 */
+	float getRestitution() {
+		return jbox2DFixture == null ? def.restitution : jbox2DFixture.m_restitution;
+	}
+
 	@Override
 	public void setDensity(float density) {
 		if (jbox2DFixture == null) {
@@ -77,4 +155,67 @@ public abstract class PrimitiveShape implements Shape {
 		}
 	}
 
+	/**
+	 * Get the collision filter applied to this shape
+	 * 
+	 * @return The filter holding this shape's categories, mask and group
+	 */
+	Filter getFilter() {
+		return def.filter;
+	}
+
+	@Override
+	public void setCollisionCategories(int categories) {
+		def.filter.categoryBits = categories;
+		refilter();
+	}
+
+	@Override
+	public void setCollisionMask(int mask) {
+		def.filter.maskBits = mask;
+		refilter();
+	}
+
+	@Override
+	public void setCollisionGroup(int group) {
+		def.filter.groupIndex = group;
+		refilter();
+	}
+
+	@Override
+	public boolean isSensor() {
+		return def.isSensor;
+	}
+
+	@Override
+	public void setSensor(boolean sensor) {
+		def.isSensor = sensor;
+		if ((jbox2DFixture != null) && (jbox2DFixture.isSensor() != sensor)) {
+			// JBox2D keeps existing contacts when the flag changes, so end 
+			// them first, reporting them as they were, and let them be made 
+			// again under the new setting
+			org.jbox2d.dynamics.Body jboxBody = jbox2DFixture.getBody();
+			boolean active = jboxBody.isActive();
+			if (active) {
+				jboxBody.setActive(false);
+			}
+			jbox2DFixture.setSensor(sensor);
+			if (active) {
+				jboxBody.setActive(true);
+			}
+			body.sensorChanged();
+		}
+	}
+
+	/**
+	 * Apply a changed filter to the fixture, if it's been created. JBox2D 
+	 * flags the contacts of the fixture's body to be filtered again at the 
+	 * next step, so contacts that are no longer wanted are destroyed then.
+	 */
+	private void refilter() {
+		if (jbox2DFixture != null) {
+			jbox2DFixture.setFilterData(def.filter);
+		}
+	}
+
 }
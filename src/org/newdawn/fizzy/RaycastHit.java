@@ -0,0 +1,101 @@
+package org.newdawn.fizzy;
+
+/**
+ * The result of a ray hitting a body. Hits are owned by the caller and filled
+ * in by the world's raycasts, so the same hit can be reused for every ray.
+ *
+ * @see World#raycastClosest(float, float, float, float, RaycastHit)
+ */
+public class RaycastHit {
+	/** The body hit */
+	private Body<?> body;
+	/** The x coordinate of the point the ray hit */
+	private float x;
+	/** The y coordinate of the point the ray hit */
+	private float y;
+	/** The x component of the surface normal at the point hit */
+	private float normalX;
+	/** The y component of the surface normal at the point hit */
+	private float normalY;
+	/** How far along the ray the hit is, from 0 at its start to 1 at its end */
+	private float fraction;
+
+	/**
+	 * Create a new, empty, hit
+	 */
+	public RaycastHit() {
+	}
+
+	/**
+	 * Fill in the hit
+	 *
+	 * @param body The body hit
+	 * @param x The x coordinate of the point hit
+	 * @param y The y coordinate of the point hit
+	 * @param normalX The x component of the surface normal
+	 * @param normalY The y component of the surface normal
+	 * @param fraction How far along the ray the hit is
+	 */
+	void set(Body<?> body, float x, float y, float normalX, float normalY, float fraction) {
+		this.body = body;
+		this.x = x;
+		this.y = y;
+		this.normalX = normalX;
+		this.normalY = normalY;
+		this.fraction = fraction;
+	}
+
+	/**
+	 * Get the body hit
+	 *
+	 * @return The body hit
+	 */
+	public Body<?> getBody() {
+		return body;
+	}
+
+	/**
+	 * Get the x coordinate of the point the ray hit
+	 *
+	 * @return The x coordinate of the point hit
+	 */
+	public float getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y coordinate of the point the ray hit
+	 *
+	 * @return The y coordinate of the point hit
+	 */
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * Get the x component of the surface normal at the point hit
+	 *
+	 * @return The x component of the normal
+	 */
+	public float getNormalX() {
+		return normalX;
+	}
+
+	/**
+	 * Get the y component of the surface normal at the point hit
+	 *
+	 * @return The y component of the normal
+	 */
+	public float getNormalY() {
+		return normalY;
+	}
+
+	/**
+	 * Get how far along the ray the hit is
+	 *
+	 * @return The fraction of the ray's length from its start to the hit, 0 to 1
+	 */
+	public float getFraction() {
+		return fraction;
+	}
+}
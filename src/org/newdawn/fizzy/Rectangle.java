@@ -72,6 +72,21 @@ public class Rectangle extends PolygonBasedShape {
 		this.height = height;
 	}
 	
+	/**
+	 * Create a new rectangle sharing the geometry of another
+	 * 
+	 * @param template The rectangle to copy
+	 */
+	Rectangle(Rectangle template) {
+		super(template);
+		shape = (PolygonShape) def.shape;
+		width = template.width;
+		height = template.height;
+		xoffset = template.xoffset;
+		yoffset = template.yoffset;
+		angleOffset = template.angleOffset;
+	}
+	
 	/**
 	 * Get the width of the rectangle
 	 * 
@@ -92,6 +107,7 @@ public class Rectangle extends PolygonBasedShape {
 
 	@Override
 	protected void applyOffset(float x, float y, float angle) {
+		shape = (PolygonShape) ownGeometry();
 		shape.setAsBox(width*World.METERS_PER_PIXEL / 2, height*World.METERS_PER_PIXEL / 2,
 				//then we set it so that the origin is at the upper left corner so people like us
 				new Vec2(x*World.METERS_PER_PIXEL+(width*World.METERS_PER_PIXEL / 2), y*World.METERS_PER_PIXEL+(height*World.METERS_PER_PIXEL / 2)),0);
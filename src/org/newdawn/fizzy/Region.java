@@ -0,0 +1,194 @@
+package org.newdawn.fizzy;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jbox2d.collision.broadphase.DynamicTreeNode;
+
+/**
+ * An axis-aligned area of the world being watched for bodies entering and
+ * leaving it. A body is inside the region while its bounding box overlaps
+ * the region. Regions aren't bodies, have no effect on the simulation and
+ * are never returned by queries or ray casts.
+ *
+ * @see World#watchRegion(BoundingBox, RegionListener)
+ */
+public class Region {
+	/** The x coordinate of the lower left corner */
+	private final float x1;
+	/** The y coordinate of the lower left corner */
+	private final float y1;
+	/** The x coordinate of the upper right corner */
+	private final float x2;
+	/** The y coordinate of the upper right corner */
+	private final float y2;
+	/** The listener notified of bodies entering and leaving */
+	private final RegionListener listener;
+	/** The bodies inside the region */
+	private Map<Body<?>, Body<?>> inside = new IdentityHashMap<Body<?>, Body<?>>();
+	/** The region's node in the tracker's tree, or null if not watched */
+	private DynamicTreeNode proxy;
+
+	/**
+	 * Create a new region
+	 *
+	 * @param x1 x coordinate of one corner of the region
+	 * @param y1 y coordinate of one corner of the region
+	 * @param x2 x coordinate of the opposite corner of the region
+	 * @param y2 y coordinate of the opposite corner of the region
+	 * @param listener The listener notified of bodies entering and leaving
+	 */
+	Region(float x1, float y1, float x2, float y2, RegionListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Region needs a listener");
+		}
+		this.x1 = Math.min(x1, x2);
+		this.y1 = Math.min(y1, y2);
+		this.x2 = Math.max(x1, x2);
+		this.y2 = Math.max(y1, y2);
+		this.listener = listener;
+	}
+
+	/**
+	 * Get the bounds of the region
+	 *
+	 * @return The bounds of the region
+	 */
+	public BoundingBox getBounds() {
+		return new BoundingBox(new Vector(x1, y1), new Vector(x2, y2));
+	}
+
+	/**
+	 * Get the listener notified of bodies entering and leaving the region
+	 *
+	 * @return The listener for this region
+	 */
+	public RegionListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Check if the region is still being watched
+	 *
+	 * @see World#unwatchRegion(Region)
+	 * @return True if the region is being watched
+	 */
+	public boolean isWatched() {
+		return proxy != null;
+	}
+
+	/**
+	 * Check if a body is inside the region
+	 *
+	 * @param body The body to check
+	 * @return True if the body's bounding box overlaps the region
+	 */
+	public boolean contains(Body<?> body) {
+		return inside.containsKey(body);
+	}
+
+	/**
+	 * Get the number of bodies inside the region
+	 *
+	 * @return The number of bodies inside the region
+	 */
+	public int getBodyCount() {
+		return inside.size();
+	}
+
+	/**
+	 * Check if a bounding box overlaps the region
+	 *
+	 * @param bounds The box as lower x, lower y, upper x and upper y
+	 * @return True if the box overlaps the region
+	 */
+	boolean overlaps(float[] bounds) {
+		return (bounds[0] <= x2) && (bounds[2] >= x1) && (bounds[1] <= y2) && (bounds[3] >= y1);
+	}
+
+	/**
+	 * Get the lower x coordinate of the region
+	 *
+	 * @return The lower x coordinate
+	 */
+	float getX1() {
+		return x1;
+	}
+
+	/**
+	 * Get the lower y coordinate of the region
+	 *
+	 * @return The lower y coordinate
+	 */
+	float getY1() {
+		return y1;
+	}
+
+	/**
+	 * Get the upper x coordinate of the region
+	 *
+	 * @return The upper x coordinate
+	 */
+	float getX2() {
+		return x2;
+	}
+
+	/**
+	 * Get the upper y coordinate of the region
+	 *
+	 * @return The upper y coordinate
+	 */
+	float getY2() {
+		return y2;
+	}
+
+	/**
+	 * Get the region's node in the tracker's tree
+	 *
+	 * @return The node, or null if the region isn't watched
+	 */
+	DynamicTreeNode getProxy() {
+		return proxy;
+	}
+
+	/**
+	 * Set the region's node in the tracker's tree
+	 *
+	 * @param proxy The node, or null once the region is no longer watched
+	 */
+	void setProxy(DynamicTreeNode proxy) {
+		this.proxy = proxy;
+	}
+
+	/**
+	 * Indicate that a body has entered the region
+	 *
+	 * @param body The body entering
+	 */
+	void enter(Body<?> body) {
+		inside.put(body, body);
+	}
+
+	/**
+	 * Indicate that a body has left the region
+	 *
+	 * @param body The body leaving
+	 */
+	void leave(Body<?> body) {
+		inside.remove(body);
+	}
+
+	/**
+	 * Forget the bodies inside the region, once it's no longer watched
+	 */
+	void clear() {
+		for (Body<?> body : inside.keySet()) {
+			for (int i = body.getRegionCount() - 1; i >= 0; i--) {
+				if (body.getRegion(i) == this) {
+					body.removeRegion(i);
+				}
+			}
+		}
+		inside.clear();
+	}
+}
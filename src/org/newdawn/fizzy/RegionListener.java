@@ -0,0 +1,28 @@
+package org.newdawn.fizzy;
+
+/**
+ * Description of any class responding to bodies entering and leaving a
+ * watched region of the world. Like sensor events, entries and exits found
+ * while the world is stepping are reported once the step is complete, so a
+ * listener can add and remove bodies.
+ *
+ * @see World#watchRegion(BoundingBox, RegionListener)
+ */
+public interface RegionListener {
+	/**
+	 * Notification that a body has entered a region
+	 *
+	 * @param region The region entered
+	 * @param body The body that entered it
+	 */
+	public void entered(Region region, Body<?> body);
+
+	/**
+	 * Notification that a body has left a region by moving out of it. A body
+	 * removed from the world leaves its regions without being reported.
+	 *
+	 * @param region The region left
+	 * @param body The body that left it
+	 */
+	public void exited(Region region, Body<?> body);
+}
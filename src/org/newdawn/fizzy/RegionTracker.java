@@ -0,0 +1,182 @@
+package org.newdawn.fizzy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.broadphase.DynamicTree;
+import org.jbox2d.collision.broadphase.DynamicTreeNode;
+
+/**
+ * Tracks the bodies entering and leaving the regions watched in a world. The
+ * regions are kept in a JBox2D dynamic tree of their own, separate from the
+ * world's broadphase, so they never make contacts. After each step every
+ * awake body is checked against the regions it was inside, and the tree is
+ * queried for any it has entered, so the cost depends on the moving bodies
+ * and the regions they cross rather than on how many regions there are or
+ * how many bodies sit inside them.
+ *
+ * @see World#watchRegion(BoundingBox, RegionListener)
+ */
+class RegionTracker implements TreeCallback {
+	/** The world whose regions are tracked */
+	private final World world;
+	/** The tree holding the regions, in pixels */
+	private final DynamicTree tree = new DynamicTree();
+	/** The regions being watched */
+	private final List<Region> regions = new ArrayList<Region>();
+	/** A read only view of the regions being watched */
+	private final List<Region> regionsView = Collections.unmodifiableList(regions);
+	/** The box used to add and query the tree */
+	private final AABB aabb = new AABB();
+	/** The bounding box of the body being tracked, as lower x, lower y, upper x and upper y */
+	private final float[] bounds = new float[4];
+	/** The body being tracked while the tree is queried */
+	private Body<?> body;
+
+	/**
+	 * Create a new tracker
+	 *
+	 * @param world The world whose regions are tracked
+	 */
+	RegionTracker(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Start watching a region
+	 *
+	 * @param region The region to watch
+	 */
+	void watch(Region region) {
+		aabb.lowerBound.set(region.getX1(), region.getY1());
+		aabb.upperBound.set(region.getX2(), region.getY2());
+		region.setProxy(tree.createProxy(aabb, region));
+		regions.add(region);
+	}
+
+	/**
+	 * Stop watching a region, forgetting the bodies inside it without
+	 * reporting them as leaving
+	 *
+	 * @param region The region to stop watching
+	 */
+	void unwatch(Region region) {
+		if (!regions.remove(region)) {
+			throw new IllegalArgumentException("Region isn't watched in this world");
+		}
+		tree.destroyProxy(region.getProxy());
+		region.setProxy(null);
+		region.clear();
+	}
+
+	/**
+	 * Get the regions being watched
+	 *
+	 * @return A read only list of the regions being watched
+	 */
+	List<Region> getRegions() {
+		return regionsView;
+	}
+
+	/**
+	 * Check the moving bodies of the world against the regions after a step.
+	 * Sleeping and static bodies haven't moved so are skipped.
+	 *
+	 * @param bodies The bodies in the world
+	 * @param count The number of bodies in the world
+	 */
+	void track(Body<?>[] bodies, int count) {
+		if (regions.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			Body<?> candidate = bodies[i];
+			if (candidate.isStatic()) {
+				continue;
+			}
+			org.jbox2d.dynamics.Body jboxBody = candidate.getJBoxBody();
+			if (jboxBody.isAwake() && jboxBody.isActive()) {
+				track(candidate);
+			}
+		}
+	}
+
+	/**
+	 * Check a body against every region, reporting the regions it has
+	 * entered and left
+	 *
+	 * @param target The body to check
+	 */
+	void track(Body<?> target) {
+		if (regions.isEmpty()) {
+			return;
+		}
+		target.getBoundingBox(bounds);
+		for (int i = target.getRegionCount() - 1; i >= 0; i--) {
+			Region region = target.getRegion(i);
+			if (!region.overlaps(bounds)) {
+				target.removeRegion(i);
+				region.leave(target);
+				world.queueOverlap(region, target, false);
+			}
+		}
+
+		aabb.lowerBound.set(bounds[0], bounds[1]);
+		aabb.upperBound.set(bounds[2], bounds[3]);
+		body = target;
+		try {
+			tree.query(this, aabb);
+		} finally {
+			body = null;
+		}
+	}
+
+	/**
+	 * Check a body against a single region, reporting it if it's inside
+	 *
+	 * @param target The body to check
+	 * @param region The region to check it against
+	 */
+	void track(Body<?> target, Region region) {
+		target.getBoundingBox(bounds);
+		enter(target, region);
+	}
+
+	/**
+	 * Take a body out of all the regions it's inside, as it leaves the world.
+	 * Like the rest of removal this isn't reported to the listeners.
+	 *
+	 * @param target The body leaving the world
+	 */
+	void leaveAll(Body<?> target) {
+		for (int i = target.getRegionCount() - 1; i >= 0; i--) {
+			Region region = target.getRegion(i);
+			target.removeRegion(i);
+			region.leave(target);
+		}
+	}
+
+	@Override
+	public boolean treeCallback(DynamicTreeNode node) {
+		enter(body, (Region) node.userData);
+		return true;
+	}
+
+	/**
+	 * Report a body entering a region if its bounds, already found, overlap
+	 * the region and it wasn't inside before
+	 *
+	 * @param target The body to check
+	 * @param region The region to check it against
+	 */
+	private void enter(Body<?> target, Region region) {
+		if (region.overlaps(bounds) && !region.contains(target)) {
+			region.enter(target);
+			target.addRegion(region);
+			world.queueOverlap(region, target, true);
+		}
+	}
+}
@@ -0,0 +1,357 @@
+package org.newdawn.fizzy;
+
+import org.jbox2d.common.Vec2;
+
+/**
+ * A bounded history of the last few steps of a world, used to rewind it.
+ * The buffer holds the state of every body as of the last capture, and for
+ * each step an undo log holding the previous state of only the bodies that
+ * changed. Sleeping and static bodies cost nothing to record, and rewinding
+ * a step only touches the bodies that moved during it.
+ *
+ * Undo entries are kept in a ring of primitive arrays, sized up front and
+ * only grown when a single step changes more bodies than it can hold, so
+ * capturing a step doesn't allocate. When the ring is full the oldest steps
+ * are dropped.
+ *
+ * @see World#setRollbackTicks(int)
+ * @see World#rewind(int)
+ */
+class RollbackBuffer {
+	/** The number of floats recorded for each body */
+	private static final int STRIDE = 7;
+	/** The offset of the x position in meters */
+	private static final int X = 0;
+	/** The offset of the y position in meters */
+	private static final int Y = 1;
+	/** The offset of the angle */
+	private static final int ANGLE = 2;
+	/** The offset of the x velocity */
+	private static final int VX = 3;
+	/** The offset of the y velocity */
+	private static final int VY = 4;
+	/** The offset of the angular velocity */
+	private static final int SPIN = 5;
+	/** The offset of the awake flag, 1 if awake and 0 if not */
+	private static final int AWAKE = 6;
+
+	/** The world whose steps are recorded */
+	private final World world;
+	/** The most steps that can be rewound */
+	private final int maxTicks;
+
+	/** The state of each body, by id, as of the last capture */
+	private float[] current;
+	/** Flags marking the bodies, by id, already restored by the rewind in progress */
+	private boolean[] restored;
+	/** The id of the body recorded by each undo entry */
+	private int[] entryIds;
+	/** The previous state recorded by each undo entry, STRIDE floats each */
+	private float[] entryData;
+	/** The number of undo entries the ring can hold */
+	private int entryCapacity;
+	/** The index in the ring of the oldest undo entry */
+	private int entryHead;
+	/** The number of undo entries in the ring */
+	private int entryCount;
+
+	/** The number of undo entries recorded by each step, oldest first */
+	private int[] tickSizes;
+	/** The sequence number of each step, counting every step ever captured */
+	private int[] tickNumbers;
+	/** The sequence number the next step captured gets */
+	private int nextTickNumber;
+	/** The index of the oldest step in tickSizes */
+	private int tickHead;
+	/** The number of steps recorded */
+	private int tickCount;
+
+	/** The ids of removed bodies that the recorded steps may still refer to, oldest first */
+	private int[] retiredIds = new int[16];
+	/** The sequence number of the latest step that may refer to each retired id */
+	private int[] retiredTicks = new int[16];
+	/** The number of retired ids */
+	private int retiredCount;
+
+	/** Scratch vector used when restoring positions and velocities */
+	private final Vec2 scratch = new Vec2();
+
+	/**
+	 * Create a new buffer
+	 *
+	 * @param world The world whose steps should be recorded
+	 * @param maxTicks The most steps that can be rewound
+	 */
+	RollbackBuffer(World world, int maxTicks) {
+		this.world = world;
+		this.maxTicks = maxTicks;
+		tickSizes = new int[maxTicks];
+		tickNumbers = new int[maxTicks];
+		current = new float[Math.max(16, world.getBodyCount()) * STRIDE];
+		restored = new boolean[current.length / STRIDE];
+		entryCapacity = Math.max(16, world.getBodyCount() * maxTicks);
+		entryIds = new int[entryCapacity];
+		entryData = new float[entryCapacity * STRIDE];
+
+		for (int i=0;i<world.getBodyCount();i++) {
+			Body<?> body = world.getBody(i);
+			ensureCurrentCapacity(body.getId());
+			read(body, current, body.getId() * STRIDE);
+		}
+	}
+
+	/**
+	 * Get the most steps that can be rewound
+	 *
+	 * @return The most steps that can be rewound
+	 */
+	int getMaxTicks() {
+		return maxTicks;
+	}
+
+	/**
+	 * Get the number of steps that can currently be rewound
+	 *
+	 * @return The number of steps recorded
+	 */
+	int getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Notification that a body has been added to the world. Its state as it
+	 * was added becomes the state it's rewound to if the world is rewound past
+	 * the step it was added before.
+	 *
+	 * @param body The body added
+	 */
+	void bodyAdded(Body<?> body) {
+		ensureCurrentCapacity(body.getId());
+		read(body, current, body.getId() * STRIDE);
+	}
+
+	/**
+	 * Notification that a body has been removed from the world. Its id is
+	 * held until every step recorded so far has been dropped, since the
+	 * entries for it would apply to the wrong body if the id was handed out
+	 * again. Rewinding skips the id in the meantime, so the body stays
+	 * removed.
+	 *
+	 * @param id The id of the body removed
+	 */
+	void retire(int id) {
+		if (tickCount == 0) {
+			world.freeId(id);
+			return;
+		}
+		if (retiredCount == retiredIds.length) {
+			int[] grownIds = new int[retiredIds.length * 2];
+			System.arraycopy(retiredIds, 0, grownIds, 0, retiredCount);
+			retiredIds = grownIds;
+			int[] grownTicks = new int[retiredTicks.length * 2];
+			System.arraycopy(retiredTicks, 0, grownTicks, 0, retiredCount);
+			retiredTicks = grownTicks;
+		}
+		retiredIds[retiredCount] = id;
+		retiredTicks[retiredCount++] = nextTickNumber - 1;
+	}
+
+	/**
+	 * Hand back the retired ids that no recorded step refers to any more
+	 */
+	private void freeAgedIds() {
+		int oldest = tickCount == 0 ? nextTickNumber : tickNumbers[tickHead];
+		int freed = 0;
+		// ids are retired in step order, so the aged ones are at the front
+		while ((freed < retiredCount) && (retiredTicks[freed] < oldest)) {
+			world.freeId(retiredIds[freed++]);
+		}
+		if (freed > 0) {
+			System.arraycopy(retiredIds, freed, retiredIds, 0, retiredCount - freed);
+			System.arraycopy(retiredTicks, freed, retiredTicks, 0, retiredCount - freed);
+			retiredCount -= freed;
+		}
+	}
+
+	/**
+	 * Hand back every retired id, as the buffer is being thrown away
+	 */
+	void freeRetired() {
+		for (int i=0;i<retiredCount;i++) {
+			world.freeId(retiredIds[i]);
+		}
+		retiredCount = 0;
+	}
+
+	/**
+	 * Record the step that has just been taken, storing the previous state of
+	 * every body that changed since the last capture
+	 */
+	void capture() {
+		if (tickCount == maxTicks) {
+			dropOldestTick();
+		}
+
+		int recorded = 0;
+		int count = world.getBodyCount();
+		for (int i=0;i<count;i++) {
+			Body<?> body = world.getBody(i);
+			org.jbox2d.dynamics.Body jbox = body.jboxBody;
+			int offset = body.getId() * STRIDE;
+			Vec2 position = jbox.getPosition();
+			Vec2 velocity = jbox.getLinearVelocity();
+			if ((current[offset + X] == position.x) && (current[offset + Y] == position.y)
+					&& (current[offset + ANGLE] == jbox.getAngle())
+					&& (current[offset + VX] == velocity.x) && (current[offset + VY] == velocity.y)
+					&& (current[offset + SPIN] == jbox.getAngularVelocity())
+					&& (current[offset + AWAKE] == (jbox.isAwake() ? 1 : 0))) {
+				continue;
+			}
+
+			// make room by forgetting the oldest steps, only growing if this
+			// step alone fills the ring
+			while ((entryCount == entryCapacity) && (tickCount > 0)) {
+				dropOldestTick();
+			}
+			if (entryCount == entryCapacity) {
+				growEntries();
+			}
+			int entry = (entryHead + entryCount) % entryCapacity;
+			entryIds[entry] = body.getId();
+			System.arraycopy(current, offset, entryData, entry * STRIDE, STRIDE);
+			entryCount++;
+			recorded++;
+			read(body, current, offset);
+		}
+
+		tickSizes[(tickHead + tickCount) % maxTicks] = recorded;
+		tickNumbers[(tickHead + tickCount) % maxTicks] = nextTickNumber++;
+		tickCount++;
+		if (retiredCount > 0) {
+			freeAgedIds();
+		}
+	}
+
+	/**
+	 * Undo the most recent steps, putting every body back to the state it had
+	 * before them. Each body is only written back once, however many of the
+	 * steps it changed in, since moving a JBox2D body updates the broadphase.
+	 *
+	 * @param ticks The number of steps to undo
+	 */
+	void rewind(int ticks) {
+		int end = entryCount;
+		for (int t=0;t<ticks;t++) {
+			int tick = (tickHead + tickCount - 1) % maxTicks;
+			int size = tickSizes[tick];
+			for (int i=0;i<size;i++) {
+				int entry = (entryHead + entryCount - 1) % entryCapacity;
+				int id = entryIds[entry];
+				System.arraycopy(entryData, entry * STRIDE, current, id * STRIDE, STRIDE);
+				entryCount--;
+			}
+			tickCount--;
+		}
+
+		for (int i=entryCount;i<end;i++) {
+			int id = entryIds[(entryHead + i) % entryCapacity];
+			if (restored[id]) {
+				continue;
+			}
+			restored[id] = true;
+			Body<?> body = world.getBodyById(id);
+			if (body != null) {
+				write(body, id * STRIDE);
+			}
+		}
+		for (int i=entryCount;i<end;i++) {
+			restored[entryIds[(entryHead + i) % entryCapacity]] = false;
+		}
+		if (retiredCount > 0) {
+			freeAgedIds();
+		}
+	}
+
+	/**
+	 * Drop the oldest recorded step, freeing its entries
+	 */
+	private void dropOldestTick() {
+		int size = tickSizes[tickHead];
+		entryHead = (entryHead + size) % entryCapacity;
+		entryCount -= size;
+		tickHead = (tickHead + 1) % maxTicks;
+		tickCount--;
+	}
+
+	/**
+	 * Double the number of undo entries the ring can hold, unwrapping the
+	 * entries to the start
+	 */
+	private void growEntries() {
+		int capacity = entryCapacity * 2;
+		int[] ids = new int[capacity];
+		float[] data = new float[capacity * STRIDE];
+		int first = Math.min(entryCount, entryCapacity - entryHead);
+		System.arraycopy(entryIds, entryHead, ids, 0, first);
+		System.arraycopy(entryIds, 0, ids, first, entryCount - first);
+		System.arraycopy(entryData, entryHead * STRIDE, data, 0, first * STRIDE);
+		System.arraycopy(entryData, 0, data, first * STRIDE, (entryCount - first) * STRIDE);
+		entryIds = ids;
+		entryData = data;
+		entryCapacity = capacity;
+		entryHead = 0;
+	}
+
+	/**
+	 * Make sure there's room to hold the state of the body with the given id
+	 *
+	 * @param id The id of the body
+	 */
+	private void ensureCurrentCapacity(int id) {
+		if ((id + 1) * STRIDE > current.length) {
+			float[] grown = new float[Math.max((id + 1) * STRIDE, current.length * 2)];
+			System.arraycopy(current, 0, grown, 0, current.length);
+			current = grown;
+			boolean[] grownRestored = new boolean[current.length / STRIDE];
+			System.arraycopy(restored, 0, grownRestored, 0, restored.length);
+			restored = grownRestored;
+		}
+	}
+
+	/**
+	 * Read the state of a body into an array
+	 *
+	 * @param body The body to read
+	 * @param data The array to store the state in
+	 * @param offset The offset of the first value in the array
+	 */
+	private static void read(Body<?> body, float[] data, int offset) {
+		org.jbox2d.dynamics.Body jbox = body.jboxBody;
+		Vec2 position = jbox.getPosition();
+		Vec2 velocity = jbox.getLinearVelocity();
+		data[offset + X] = position.x;
+		data[offset + Y] = position.y;
+		data[offset + ANGLE] = jbox.getAngle();
+		data[offset + VX] = velocity.x;
+		data[offset + VY] = velocity.y;
+		data[offset + SPIN] = jbox.getAngularVelocity();
+		data[offset + AWAKE] = jbox.isAwake() ? 1 : 0;
+	}
+
+	/**
+	 * Write the recorded state of a body back to it
+	 *
+	 * @param body The body to restore
+	 * @param offset The offset of the body's state in the current state
+	 */
+	private void write(Body<?> body, int offset) {
+		org.jbox2d.dynamics.Body jbox = body.jboxBody;
+		scratch.set(current[offset + X], current[offset + Y]);
+		jbox.setTransform(scratch, current[offset + ANGLE]);
+		scratch.set(current[offset + VX], current[offset + VY]);
+		jbox.setLinearVelocity(scratch);
+		jbox.setAngularVelocity(current[offset + SPIN]);
+		jbox.setAwake(current[offset + AWAKE] != 0);
+		world.bodyMoved(body);
+	}
+}
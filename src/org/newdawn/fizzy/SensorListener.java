@@ -0,0 +1,31 @@
+package org.newdawn.fizzy;
+
+/**
+ * Description of any class responding to bodies entering and leaving sensors.
+ * The bodies are passed directly, with no event object or contact points, so
+ * reporting an overlap doesn't allocate. Overlaps found while the world is
+ * stepping are reported once the step is complete, so a listener can add and
+ * remove bodies, for instance to collect a pickup.
+ *
+ * @see World#addSensorListener(SensorListener)
+ * @see Body#setSensor(boolean)
+ */
+public interface SensorListener {
+	/**
+	 * Notification that a body has started overlapping a sensor
+	 *
+	 * @param sensor The body whose sensor is overlapped
+	 * @param other The body overlapping it
+	 */
+	public void entered(Body<?> sensor, Body<?> other);
+
+	/**
+	 * Notification that a body has stopped overlapping a sensor by moving
+	 * out of it. Overlaps ended by removing either body from the world aren't
+	 * reported.
+	 *
+	 * @param sensor The body whose sensor was overlapped
+	 * @param other The body that was overlapping it
+	 */
+	public void exited(Body<?> sensor, Body<?> other);
+}
@@ -0,0 +1,247 @@
+package org.newdawn.fizzy;
+
+import org.jbox2d.callbacks.QueryCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+
+/**
+ * Tracks the bodies overlapping the static sensors of a world. A static body
+ * made only of sensors never moves by itself and never pushes anything, so
+ * rather than being stepped with the rest of the world it's kept in a JBox2D
+ * world of its own that's never stepped, whose broadphase serves as a tree
+ * of the sensors. JBox2D charges a cost each step for every body it holds,
+ * whether it's doing anything or not, so this keeps idle triggers out of the
+ * step altogether.
+ *
+ * After each step every awake dynamic body is checked against the static
+ * sensors it overlapped, and the tree is queried for any it has entered, so
+ * the cost depends on the moving bodies and the sensors they cross rather
+ * than on how many sensors there are. Like JBox2D's own contacts, overlaps
+ * with sleeping bodies aren't brought up to date until they wake.
+ *
+ * @see Body#setSensor(boolean)
+ */
+class SensorTracker implements QueryCallback {
+	/** The world whose static sensors are tracked */
+	private final World world;
+	/** The JBox2D world holding the static sensors, or null until the first is added */
+	private org.jbox2d.dynamics.World jboxWorld;
+	/** True once the world has had static sensors or bodies overlapping them */
+	private boolean used;
+	/** The body being tracked while the tree is queried */
+	private Body<?> body;
+	/** True if the last pair checked has a sensor of the static body overlapping the other body */
+	private boolean sensorOverlaps;
+	/** True if the last pair checked has a sensor of the other body overlapping the static body */
+	private boolean targetOverlaps;
+
+	/**
+	 * Create a new tracker
+	 *
+	 * @param world The world whose static sensors are tracked
+	 */
+	SensorTracker(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Get the JBox2D world holding the static sensors, creating it the first
+	 * time it's needed
+	 *
+	 * @return The JBox2D world holding the static sensors
+	 */
+	org.jbox2d.dynamics.World getJBoxWorld() {
+		if (jboxWorld == null) {
+			jboxWorld = new org.jbox2d.dynamics.World(new Vec2(), false);
+			used = true;
+		}
+		return jboxWorld;
+	}
+
+	/**
+	 * Check if a body is one of the static sensors held by this tracker
+	 *
+	 * @param target The body to check
+	 * @return True if the body's JBox2D body is held by this tracker
+	 */
+	boolean holds(Body<?> target) {
+		return (jboxWorld != null) && (target.getJBoxBody().getWorld() == jboxWorld);
+	}
+
+	/**
+	 * Run a query against the static sensors, if there are any
+	 *
+	 * @param callback The callback to report the fixtures found to
+	 * @param aabb The box to query, in meters
+	 */
+	void query(QueryCallback callback, AABB aabb) {
+		if ((jboxWorld != null) && (jboxWorld.getBodyCount() > 0)) {
+			jboxWorld.queryAABB(callback, aabb);
+		}
+	}
+
+	/**
+	 * Note a body joining the world, which may bring overlaps with static
+	 * sensors from another world
+	 *
+	 * @param target The body added
+	 */
+	void bodyAdded(Body<?> target) {
+		if (target.getStaticSensorCount() > 0) {
+			used = true;
+		}
+	}
+
+	/**
+	 * Check the moving bodies of the world against the static sensors after
+	 * a step. Sleeping, static and kinematic bodies are skipped, as JBox2D
+	 * never has them touch static bodies.
+	 *
+	 * @param bodies The bodies in the world
+	 * @param count The number of bodies in the world
+	 */
+	void track(Body<?>[] bodies, int count) {
+		if (!used) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			org.jbox2d.dynamics.Body jboxBody = bodies[i].getJBoxBody();
+			if ((jboxBody.getType() == BodyType.DYNAMIC) && jboxBody.isAwake() && jboxBody.isActive()) {
+				track(bodies[i]);
+			}
+		}
+	}
+
+	/**
+	 * Check a body against the static sensors it overlapped, and the tree
+	 * for any it has started to overlap
+	 *
+	 * @param target The body to check
+	 */
+	private void track(Body<?> target) {
+		for (int i = target.getStaticSensorCount() - 1; i >= 0; i--) {
+			if (!check(target.getStaticSensor(i), target)) {
+				target.removeStaticSensor(i);
+			}
+		}
+
+		if ((jboxWorld == null) || (jboxWorld.getBodyCount() == 0)) {
+			return;
+		}
+		body = target;
+		try {
+			for (Fixture fixture = target.getJBoxBody().getFixtureList(); fixture != null; fixture = fixture.m_next) {
+				jboxWorld.queryAABB(this, fixture.m_aabb);
+			}
+		} finally {
+			body = null;
+		}
+	}
+
+	@Override
+	public boolean reportFixture(Fixture fixture) {
+		Body<?> sensor = World.getBody(fixture);
+		if ((sensor != null) && !body.hasStaticSensor(sensor) && check(sensor, body)) {
+			body.addStaticSensor(sensor);
+		}
+		return true;
+	}
+
+	/**
+	 * End the overlaps of a body that has been deactivated, or of a static
+	 * sensor that has been deactivated or stopped being a sensor, reporting
+	 * them as JBox2D would as it ends contacts
+	 *
+	 * @param target The body whose overlaps are ending
+	 * @param bodies The bodies in the world
+	 * @param count The number of bodies in the world
+	 */
+	void endOverlaps(Body<?> target, Body<?>[] bodies, int count) {
+		if (!holds(target)) {
+			for (int i = target.getStaticSensorCount() - 1; i >= 0; i--) {
+				end(target.getStaticSensor(i), target);
+				target.removeStaticSensor(i);
+			}
+			return;
+		}
+		if (!target.isOverlappingAnything()) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			Body<?> other = bodies[i];
+			for (int j = other.getStaticSensorCount() - 1; j >= 0; j--) {
+				if (other.getStaticSensor(j) == target) {
+					end(target, other);
+					other.removeStaticSensor(j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find whether a static sensor and another body overlap, and report any
+	 * change since they were last checked
+	 *
+	 * @param sensor The static sensor
+	 * @param target The body that may overlap it
+	 * @return True if the sensor overlaps the body
+	 */
+	private boolean check(Body<?> sensor, Body<?> target) {
+		findOverlaps(sensor.getJBoxBody(), target.getJBoxBody());
+		if (sensorOverlaps != sensor.isOverlapping(target)) {
+			world.sensorOverlap(sensor, target, sensorOverlaps);
+		}
+		if (targetOverlaps != target.isOverlapping(sensor)) {
+			world.sensorOverlap(target, sensor, targetOverlaps);
+		}
+		return sensorOverlaps;
+	}
+
+	/**
+	 * Report the end of any overlap between a static sensor and another body
+	 *
+	 * @param sensor The static sensor
+	 * @param target The body overlapping it
+	 */
+	private void end(Body<?> sensor, Body<?> target) {
+		if (sensor.isOverlapping(target)) {
+			world.sensorOverlap(sensor, target, false);
+		}
+		if (target.isOverlapping(sensor)) {
+			world.sensorOverlap(target, sensor, false);
+		}
+	}
+
+	/**
+	 * Test the fixtures of a static sensor against those of another body the
+	 * way JBox2D tests a sensor contact, filtering each pair and then testing
+	 * the shapes for overlap
+	 *
+	 * @param sensor The JBox2D body of the static sensor
+	 * @param target The JBox2D body of the other body
+	 */
+	private void findOverlaps(org.jbox2d.dynamics.Body sensor, org.jbox2d.dynamics.Body target) {
+		sensorOverlaps = false;
+		targetOverlaps = false;
+		if (!sensor.isActive() || !target.isActive()) {
+			return;
+		}
+		for (Fixture a = sensor.getFixtureList(); a != null; a = a.m_next) {
+			for (Fixture b = target.getFixtureList(); b != null; b = b.m_next) {
+				if (!AABB.testOverlap(a.m_aabb, b.m_aabb) || !world.getContactFilter().shouldCollide(a, b)) {
+					continue;
+				}
+				if (world.getJBoxWorld().getPool().getCollision().testOverlap(a.m_shape, b.m_shape,
+						sensor.getTransform(), target.getTransform())) {
+					sensorOverlaps = true;
+					if (b.m_isSensor) {
+						targetOverlaps = true;
+						return;
+					}
+				}
+			}
+		}
+	}
+}
@@ -53,6 +53,49 @@ public interface Shape {
 	 */
 	void setDensity(float density);
 	
+	/**
+	 * Set the collision categories this shape belongs to, as a bit mask. Two 
+	 * shapes only collide if each one's categories are in the other's mask.
+	 * Shapes start in the first category, 1.
+	 * 
+	 * @param categories The bits of the categories this shape belongs to
+	 */
+	void setCollisionCategories(int categories);
+	
+	/**
+	 * Set the collision categories this shape collides with, as a bit mask. 
+	 * Shapes start colliding with every category.
+	 * 
+	 * @param mask The bits of the categories this shape collides with
+	 */
+	void setCollisionMask(int mask);
+	
+	/**
+	 * Set the collision group of this shape. Shapes in the same positive 
+	 * group always collide and shapes in the same negative group never do, 
+	 * whatever their categories and masks. Group 0, the default, is no group.
+	 * 
+	 * @param group The group this shape belongs to
+	 */
+	void setCollisionGroup(int group);
+	
+	/**
+	 * Set whether this shape is a sensor. Sensors detect other shapes 
+	 * overlapping them but don't collide with them, and report the overlaps 
+	 * to {@link SensorListener}s rather than as collisions.
+	 * 
+	 * @param sensor True if this shape should be a sensor
+	 */
+	void setSensor(boolean sensor);
+	
+	/**
+	 * Check if this shape is a sensor. A compound shape is a sensor only if
+	 * every shape it's built from is.
+	 * 
+	 * @return True if this shape is a sensor
+	 */
+	boolean isSensor();
+	
 	/**
 	 * Get the JBox2D shapes that build up this fizzy shape
 	 *
@@ -0,0 +1,954 @@
+package org.newdawn.fizzy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.jbox2d.callbacks.ContactImpulse;
+import org.jbox2d.callbacks.ContactListener;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.shapes.MassData;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.FixtureDef;
+import org.jbox2d.dynamics.contacts.Contact;
+import org.jbox2d.dynamics.contacts.ContactEdge;
+
+/**
+ * A large world split into vertical strips, or shards, along the x axis. Each
+ * shard is a {@link World} of its own, and the shards are stepped in parallel
+ * through a {@link WorldGroup}, so a large, sparse world can use more than
+ * one core.
+ *
+ * Bodies belong to the shard containing their position. A body that moves
+ * further than the overlap distance past the edge of its shard migrates to
+ * the neighbouring shard. Migrating is invisible to the caller: the body
+ * keeps its id, its listeners and what it's touching, and no events are
+ * fired for the move itself. The overlap stops bodies sitting on a seam from
+ * bouncing between shards.
+ *
+ * Any body whose bounds reach within the overlap distance of a neighbouring
+ * shard is mirrored there by a ghost - a copy of its fixtures of the same
+ * type and mass that's moved to match it before every step. Contacts with a
+ * ghost count as contacts with the body it mirrors, so collisions, touch
+ * counts and sensor overlaps work across seams. A contact that shows up in
+ * two shards is only resolved in one: against the static or kinematic
+ * side's ghost where there is one, otherwise in the left hand shard. When
+ * the ghost of a moving body is pushed, the change in its velocity is passed
+ * on to the body it mirrors after the step, so two moving bodies meeting
+ * across a seam react to each other a step late - close enough for the
+ * short contacts that happen at seams, but stacks resting across a seam
+ * won't be as stable as they are inside a shard.
+ *
+ * Listeners added to the sharded world are added to every shard, so they may
+ * be called from several threads at once for contacts inside a shard and
+ * must be thread safe. Contacts across a seam are reported on the thread
+ * calling {@link #update(float)} once the shards have been stepped. A shard
+ * with bounds set to destroy bodies may do so while another shard is
+ * stepping, which isn't safe if the body is touching one in another shard,
+ * so shards should use bounds that deactivate instead.
+ */
+public class ShardedWorld {
+	/** Flag recorded for a seam contact that began rather than ended */
+	private static final int BEGAN = 1;
+	/** Flag recorded for a seam contact where the real body's fixture is a sensor */
+	private static final int REAL_SENSOR = 2;
+	/** Flag recorded for a seam contact where the ghost's fixture is a sensor */
+	private static final int GHOST_SENSOR = 4;
+
+	/** The shards making up the world, in order along the x axis */
+	private final World[] shards;
+	/** The listeners recording contacts with ghosts in each shard, indexed by shard */
+	private final SeamRecorder[] recorders;
+	/** The group stepping the shards in parallel */
+	private final WorldGroup group;
+	/** The x coordinate of the left edge of the first shard */
+	private final float minX;
+	/** The width of each shard */
+	private final float shardWidth;
+	/** The distance bodies may stray past the edge of their shard before migrating */
+	private final float overlap;
+	/** The ghosts mirroring each body in other shards, indexed by shard */
+	private final Map<Body<?>, Ghost[]> ghosts = new IdentityHashMap<Body<?>, Ghost[]>();
+	/**
+	 * The pairs of bodies whose contacts were cut short by a migration, with
+	 * the sensor body first for overlaps. They're held as touching until the
+	 * step after, when the contacts made again in their new shards have been
+	 * counted, so a pair that still touches doesn't see an event.
+	 */
+	private Body<?>[] heldPairs = new Body<?>[32];
+	/** True for each held pair that's a sensor overlap rather than a contact */
+	private boolean[] heldOverlaps = new boolean[16];
+	/** The number of held pairs */
+	private int heldCount;
+	/** Scratch space for the shard index range of a body */
+	private final int[] range = new int[2];
+	/** Scratch mass data copied to ghosts */
+	private final MassData massData = new MassData();
+
+	/**
+	 * Create a new sharded world with the default gravity, using one thread
+	 * per available processor
+	 *
+	 * @param minX The x coordinate of the left edge of the sharded area
+	 * @param maxX The x coordinate of the right edge of the sharded area
+	 * @param shardCount The number of shards to split the area into
+	 * @param overlap The distance bodies may stray into a neighbouring shard before migrating
+	 */
+	public ShardedWorld(float minX, float maxX, int shardCount, float overlap) {
+		this(minX, maxX, shardCount, overlap, World.DEFAULT_GRAVITY, new WorldGroup());
+	}
+
+	/**
+	 * Create a new sharded world
+	 *
+	 * @param minX The x coordinate of the left edge of the sharded area
+	 * @param maxX The x coordinate of the right edge of the sharded area
+	 * @param shardCount The number of shards to split the area into
+	 * @param overlap The distance bodies may stray into a neighbouring shard before migrating
+	 * @param gravity The gravity to apply in every shard
+	 * @param group The group to step the shards with
+	 */
+	public ShardedWorld(float minX, float maxX, int shardCount, float overlap, float gravity, WorldGroup group) {
+		if ((shardCount < 1) || (maxX <= minX) || (overlap < 0)) {
+			throw new IllegalArgumentException("Need at least one shard, a positive width and a non-negative overlap");
+		}
+		this.minX = minX;
+		this.shardWidth = (maxX - minX) / shardCount;
+		this.overlap = overlap;
+		this.group = group;
+
+		shards = new World[shardCount];
+		recorders = new SeamRecorder[shardCount];
+		for (int i=0;i<shardCount;i++) {
+			shards[i] = new World(gravity);
+			// ids are shared so bodies keep theirs as they migrate
+			shards[i].shareIds(shards[0]);
+			recorders[i] = new SeamRecorder(i);
+			shards[i].setSeamListener(recorders[i]);
+			group.add(shards[i]);
+		}
+	}
+
+	/**
+	 * Get the number of shards the world is split into
+	 *
+	 * @return The number of shards
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Get a shard of the world
+	 *
+	 * @param index The index of the shard, counting from the left
+	 * @return The world simulating the shard
+	 */
+	public World getShard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Get the index of the shard containing an x coordinate. Coordinates
+	 * outside the sharded area belong to the nearest shard.
+	 *
+	 * @param x The x coordinate to check
+	 * @return The index of the shard containing the coordinate
+	 */
+	public int getShardIndex(float x) {
+		int index = (int) Math.floor((x - minX) / shardWidth);
+		return Math.max(0, Math.min(shards.length - 1, index));
+	}
+
+	/**
+	 * Find the index of the shard a body belongs to
+	 *
+	 * @param body The body to check
+	 * @return The index of the body's shard or -1 if it isn't in this world
+	 */
+	private int findShard(Body<?> body) {
+		World world = body.getWorld();
+		for (int i=0;i<shards.length;i++) {
+			if (shards[i] == world) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Add a body to the world, in the shard containing its position
+	 *
+	 * @param body The body to be added to the world
+	 */
+	public void add(Body<?> body) {
+		shards[getShardIndex(body.getX())].add(body);
+		syncGhosts(body);
+	}
+
+	/**
+	 * Remove a body from the world. Like removing a body from a {@link World},
+	 * its contacts and overlaps end without listeners being told.
+	 *
+	 * @param body The body to be removed from the world
+	 */
+	public void remove(Body<?> body) {
+		int shard = findShard(body);
+		if (shard < 0) {
+			throw new NotAttachedToWorldException();
+		}
+		// anything ended since the last update is settled while the body is still here
+		mergeSeamContacts();
+		Ghost[] bodyGhosts = ghosts.remove(body);
+		if (bodyGhosts != null) {
+			destroyGhosts(bodyGhosts);
+		}
+		for (int i=0;i<heldCount*2;i++) {
+			if (heldPairs[i] == body) {
+				heldPairs[i & ~1] = null;
+				heldPairs[i | 1] = null;
+			}
+		}
+		shards[shard].remove(body);
+	}
+
+	/**
+	 * Get the number of bodies in the world, across all shards
+	 *
+	 * @return The number of bodies in the world
+	 */
+	public int getBodyCount() {
+		int count = 0;
+		for (int i=0;i<shards.length;i++) {
+			count += shards[i].getBodyCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Get a body at a particular index, counting through each shard in turn.
+	 * Indices change as bodies migrate between shards.
+	 *
+	 * @param index The index of the body to retrieve
+	 * @return The body at the given index
+	 */
+	public Body<?> getBody(int index) {
+		int remaining = index;
+		for (int i=0;i<shards.length;i++) {
+			int count = shards[i].getBodyCount();
+			if (remaining < count) {
+				return shards[i].getBody(remaining);
+			}
+			remaining -= count;
+		}
+		throw new IndexOutOfBoundsException("Index: "+index+", Size: "+getBodyCount());
+	}
+
+	/**
+	 * Update the world, stepping every shard in parallel and then reporting
+	 * contacts across seams and moving bodies that have left their shards
+	 *
+	 * @param timeStep The amount of time to simulate
+	 */
+	public void update(float timeStep) {
+		// contacts ended between updates, e.g. by deactivating a body
+		mergeSeamContacts();
+		group.update(timeStep);
+		mergeSeamContacts();
+		releaseHeldPairs();
+		applyGhostImpulses(timeStep);
+		migrate();
+		// contacts ended as ghosts were dropped
+		mergeSeamContacts();
+	}
+
+	/**
+	 * Move bodies that have strayed too far from their shard into the shard
+	 * containing them, and bring every body's ghosts up to date
+	 */
+	private void migrate() {
+		for (int s=0;s<shards.length;s++) {
+			World shard = shards[s];
+			float left = minX + (s * shardWidth) - overlap;
+			float right = minX + ((s + 1) * shardWidth) + overlap;
+			// backwards, since moving a body out moves the last one into its place
+			for (int i=shard.getBodyCount()-1;i>=0;i--) {
+				Body<?> body = shard.getBody(i);
+				float x = body.getX();
+				if (((x < left) && (s > 0)) || ((x > right) && (s < shards.length - 1))) {
+					moveBody(body, shard, shards[getShardIndex(x)]);
+				}
+			}
+		}
+		for (int s=0;s<shards.length;s++) {
+			World shard = shards[s];
+			for (int i=0;i<shard.getBodyCount();i++) {
+				syncGhosts(shard.getBody(i));
+			}
+		}
+
+		// bodies can also leave a shard on their own, e.g. when destroyed for going out of bounds
+		if (!ghosts.isEmpty()) {
+			Iterator<Map.Entry<Body<?>, Ghost[]>> entries = ghosts.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<Body<?>, Ghost[]> entry = entries.next();
+				if (findShard(entry.getKey()) < 0) {
+					destroyGhosts(entry.getValue());
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Move a body from one shard to another without it being noticed. The
+	 * contacts of the body and its ghosts end silently as it moves, so the
+	 * pairs touching through them are held until the next step has found
+	 * their contacts again.
+	 *
+	 * @param body The body to move
+	 * @param from The shard the body is leaving
+	 * @param to The shard the body is joining
+	 */
+	private void moveBody(Body<?> body, World from, World to) {
+		holdContacts(body.getJBoxBody());
+		Ghost[] bodyGhosts = ghosts.remove(body);
+		if (bodyGhosts != null) {
+			for (int s=0;s<bodyGhosts.length;s++) {
+				if (bodyGhosts[s] != null) {
+					holdContacts(bodyGhosts[s].body);
+				}
+			}
+			destroyGhosts(bodyGhosts);
+		}
+		from.transfer(body, to);
+	}
+
+	/**
+	 * Hold the pairs of bodies touching through a JBox2D body's contacts
+	 *
+	 * @param jboxBody The body whose contacts are about to end
+	 */
+	private void holdContacts(org.jbox2d.dynamics.Body jboxBody) {
+		for (ContactEdge edge = jboxBody.getContactList(); edge != null; edge = edge.next) {
+			Contact contact = edge.contact;
+			Object dataA = contact.m_fixtureA.m_body.m_userData;
+			Object dataB = contact.m_fixtureB.m_body.m_userData;
+			if (!contact.isTouching() || ((dataA instanceof Ghost) && (dataB instanceof Ghost))) {
+				continue;
+			}
+			Body<?> bodyA = getOwner(dataA);
+			Body<?> bodyB = getOwner(dataB);
+			if ((bodyA == null) || (bodyB == null)) {
+				continue;
+			}
+			boolean sensorA = contact.m_fixtureA.m_isSensor;
+			boolean sensorB = contact.m_fixtureB.m_isSensor;
+			if (sensorA) {
+				hold(bodyA, bodyB, true);
+			}
+			if (sensorB) {
+				hold(bodyB, bodyA, true);
+			}
+			if (!sensorA && !sensorB) {
+				hold(bodyA, bodyB, false);
+			}
+		}
+	}
+
+	/**
+	 * Get the body owning a JBox2D body, either directly or through a ghost
+	 *
+	 * @param userData The user data of the JBox2D body
+	 * @return The body owning it or null if it isn't owned by a body
+	 */
+	private static Body<?> getOwner(Object userData) {
+		if (userData instanceof Ghost) {
+			return ((Ghost) userData).owner;
+		}
+		return userData instanceof Body ? (Body<?>) userData : null;
+	}
+
+	/**
+	 * Add a pair of bodies to those held until the next step
+	 *
+	 * @param bodyA The first body, the sensor body for an overlap
+	 * @param bodyB The second body
+	 * @param overlapping True if the pair is a sensor overlap rather than a contact
+	 */
+	private void hold(Body<?> bodyA, Body<?> bodyB, boolean overlapping) {
+		if (heldCount == heldOverlaps.length) {
+			Body<?>[] grownPairs = new Body<?>[heldPairs.length * 2];
+			System.arraycopy(heldPairs, 0, grownPairs, 0, heldPairs.length);
+			heldPairs = grownPairs;
+			boolean[] grownOverlaps = new boolean[heldOverlaps.length * 2];
+			System.arraycopy(heldOverlaps, 0, grownOverlaps, 0, heldOverlaps.length);
+			heldOverlaps = grownOverlaps;
+		}
+		heldPairs[heldCount * 2] = bodyA;
+		heldPairs[(heldCount * 2) + 1] = bodyB;
+		heldOverlaps[heldCount++] = overlapping;
+	}
+
+	/**
+	 * Let go of the pairs held by migrations, reporting those that haven't
+	 * been found touching again
+	 */
+	private void releaseHeldPairs() {
+		for (int i=0;i<heldCount;i++) {
+			Body<?> bodyA = heldPairs[i * 2];
+			Body<?> bodyB = heldPairs[(i * 2) + 1];
+			heldPairs[i * 2] = null;
+			heldPairs[(i * 2) + 1] = null;
+			if (bodyA == null) {
+				continue;
+			}
+			if (heldOverlaps[i]) {
+				sensorOverlap(bodyA, bodyB, false);
+			} else {
+				contact(bodyA, bodyB, false);
+			}
+		}
+		heldCount = 0;
+	}
+
+	/**
+	 * Apply the contacts with ghosts recorded in every shard since the last
+	 * merge, counting them against the bodies the ghosts mirror
+	 */
+	private void mergeSeamContacts() {
+		for (int s=0;s<recorders.length;s++) {
+			SeamRecorder recorder = recorders[s];
+			for (int i=0;i<recorder.count;i++) {
+				Body<?> real = recorder.bodies[i * 2];
+				Body<?> owner = recorder.bodies[(i * 2) + 1];
+				recorder.bodies[i * 2] = null;
+				recorder.bodies[(i * 2) + 1] = null;
+				if ((real.getWorld() == null) || (owner.getWorld() == null)) {
+					// removed since, taking its contacts with it
+					continue;
+				}
+				int flags = recorder.flags[i];
+				boolean began = (flags & BEGAN) != 0;
+				if ((flags & (REAL_SENSOR | GHOST_SENSOR)) != 0) {
+					if ((flags & REAL_SENSOR) != 0) {
+						sensorOverlap(real, owner, began);
+					}
+					if ((flags & GHOST_SENSOR) != 0) {
+						sensorOverlap(owner, real, began);
+					}
+				} else {
+					contact(real, owner, began);
+				}
+			}
+			recorder.count = 0;
+		}
+	}
+
+	/**
+	 * Count a contact beginning or ending between two bodies, reporting it if
+	 * it's the first between them or the last
+	 *
+	 * @param bodyA The first body
+	 * @param bodyB The second body
+	 * @param began True if the contact began, false if it ended
+	 */
+	private void contact(Body<?> bodyA, Body<?> bodyB, boolean began) {
+		if (began) {
+			bodyB.touch(bodyA);
+			if (bodyA.touch(bodyB) != 1) {
+				return;
+			}
+		} else {
+			if (!bodyA.isTouching(bodyB)) {
+				return;
+			}
+			bodyB.untouch(bodyA);
+			if (bodyA.untouch(bodyB) != 0) {
+				return;
+			}
+		}
+		World worldA = bodyA.getWorld();
+		World worldB = bodyB.getWorld();
+		worldA.fireContact(bodyA, bodyB, began, true);
+		if (worldB != worldA) {
+			// the listeners for the other body live in its own shard
+			worldB.fireContact(bodyA, bodyB, began, false);
+		}
+	}
+
+	/**
+	 * Count a sensor overlap beginning or ending, reporting it if it's the
+	 * first between the bodies or the last
+	 *
+	 * @param sensor The body owning the sensor
+	 * @param other The body overlapping it
+	 * @param entered True if the overlap began, false if it ended
+	 */
+	private void sensorOverlap(Body<?> sensor, Body<?> other, boolean entered) {
+		if (entered) {
+			if (sensor.overlap(other) != 1) {
+				return;
+			}
+		} else if (!sensor.isOverlapping(other) || (sensor.unoverlap(other) != 0)) {
+			return;
+		}
+		sensor.getWorld().queueOverlap(sensor, other, entered);
+	}
+
+	/**
+	 * Pass the pushes the ghosts of moving bodies took during the step on to
+	 * the bodies they mirror. A ghost's velocity is set to its body's before
+	 * the step, so anything beyond what gravity added came from its contacts.
+	 *
+	 * @param timeStep The length of the step taken
+	 */
+	private void applyGhostImpulses(float timeStep) {
+		if (ghosts.isEmpty()) {
+			return;
+		}
+		for (Ghost[] bodyGhosts : ghosts.values()) {
+			for (int s=0;s<bodyGhosts.length;s++) {
+				Ghost ghost = bodyGhosts[s];
+				if ((ghost == null) || (ghost.body.getType() != BodyType.DYNAMIC) || !ghost.body.isAwake()) {
+					continue;
+				}
+				Vec2 gravity = shards[s].getJBoxWorld().getGravity();
+				Vec2 velocity = ghost.body.m_linearVelocity;
+				// the same sums JBox2D makes, so a ghost nothing touched comes out exactly even
+				float xChange = velocity.x - (ghost.xVelocity + (timeStep * gravity.x));
+				float yChange = velocity.y - (ghost.yVelocity + (timeStep * gravity.y));
+				float angularChange = ghost.body.m_angularVelocity - ghost.angularVelocity;
+				if ((xChange == 0) && (yChange == 0) && (angularChange == 0)) {
+					continue;
+				}
+				org.jbox2d.dynamics.Body source = ghost.owner.getJBoxBody();
+				source.m_linearVelocity.x += xChange;
+				source.m_linearVelocity.y += yChange;
+				source.m_angularVelocity += angularChange;
+				if (!source.isAwake()) {
+					source.setAwake(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create, move or destroy the ghosts of a body so that there's one in each
+	 * neighbouring shard its bounds reach into
+	 *
+	 * @param body The body whose ghosts should be updated
+	 */
+	private void syncGhosts(Body<?> body) {
+		int owner = findShard(body);
+		getShardRange(body, range);
+		Ghost[] bodyGhosts = ghosts.get(body);
+		if ((bodyGhosts == null) && (range[0] == owner) && (range[1] == owner)) {
+			return;
+		}
+
+		boolean any = false;
+		for (int s=0;s<shards.length;s++) {
+			Ghost ghost = bodyGhosts == null ? null : bodyGhosts[s];
+			if ((s != owner) && (s >= range[0]) && (s <= range[1])) {
+				if (bodyGhosts == null) {
+					bodyGhosts = new Ghost[shards.length];
+					ghosts.put(body, bodyGhosts);
+				}
+				if (ghost == null) {
+					bodyGhosts[s] = createGhost(body, s, owner);
+				} else {
+					updateGhost(ghost);
+				}
+				any = true;
+			} else if (ghost != null) {
+				// the contacts ending with the ghost are reported, as the bodies really have parted
+				shards[s].getJBoxWorld().destroyBody(ghost.body);
+				bodyGhosts[s] = null;
+			}
+		}
+		if (!any && (bodyGhosts != null)) {
+			ghosts.remove(body);
+		}
+	}
+
+	/**
+	 * Find the range of shards a body's bounds reach into, including the
+	 * overlap distance
+	 *
+	 * @param body The body to check
+	 * @param range The array to store the lowest and highest shard index in
+	 */
+	private void getShardRange(Body<?> body, int[] range) {
+		float lower = Float.MAX_VALUE;
+		float upper = -Float.MAX_VALUE;
+		for (Fixture fixture = body.getJBoxBody().getFixtureList(); fixture != null; fixture = fixture.getNext()) {
+			AABB aabb = fixture.getAABB();
+			lower = Math.min(lower, aabb.lowerBound.x);
+			upper = Math.max(upper, aabb.upperBound.x);
+		}
+		if (lower > upper) {
+			lower = upper = body.getX() * World.METERS_PER_PIXEL;
+		}
+		range[0] = getShardIndex((lower * World.PIXELS_PER_METER) - overlap);
+		range[1] = getShardIndex((upper * World.PIXELS_PER_METER) + overlap);
+	}
+
+	/**
+	 * Create a ghost of a body in another shard, of the same type and mass
+	 *
+	 * @param body The body to mirror
+	 * @param shard The index of the shard to create the ghost in
+	 * @param ownerShard The index of the shard the body is in
+	 * @return The ghost created
+	 */
+	private Ghost createGhost(Body<?> body, int shard, int ownerShard) {
+		org.jbox2d.dynamics.Body source = body.getJBoxBody();
+		Ghost ghost = new Ghost(body, shard, ownerShard);
+		BodyDef def = new BodyDef();
+		def.type = source.getType();
+		def.position.set(source.getPosition());
+		def.angle = source.getAngle();
+		def.fixedRotation = source.isFixedRotation();
+		def.bullet = source.isBullet();
+		def.userData = ghost;
+		ghost.body = shards[shard].getJBoxWorld().createBody(def);
+
+		FixtureDef fixtureDef = new FixtureDef();
+		for (Fixture fixture = source.getFixtureList(); fixture != null; fixture = fixture.getNext()) {
+			fixtureDef.shape = fixture.getShape();
+			fixtureDef.density = fixture.getDensity();
+			fixtureDef.friction = fixture.getFriction();
+			fixtureDef.restitution = fixture.getRestitution();
+			fixtureDef.filter.set(fixture.getFilterData());
+			fixtureDef.isSensor = fixture.isSensor();
+			ghost.body.createFixture(fixtureDef);
+		}
+		if (def.type == BodyType.DYNAMIC) {
+			source.getMassData(massData);
+			ghost.body.setMassData(massData);
+		}
+		updateGhost(ghost);
+		return ghost;
+	}
+
+	/**
+	 * Move a ghost to match the body it mirrors, and give it the body's
+	 * velocity and sleep state
+	 *
+	 * @param ghost The ghost to update
+	 */
+	private void updateGhost(Ghost ghost) {
+		org.jbox2d.dynamics.Body source = ghost.owner.getJBoxBody();
+		org.jbox2d.dynamics.Body jboxGhost = ghost.body;
+		if (!jboxGhost.getPosition().equals(source.getPosition()) || (jboxGhost.getAngle() != source.getAngle())) {
+			jboxGhost.setTransform(source.getPosition(), source.getAngle());
+		}
+		if (jboxGhost.getType() == BodyType.STATIC) {
+			return;
+		}
+		if (jboxGhost.isAwake() != source.isAwake()) {
+			jboxGhost.setAwake(source.isAwake());
+		}
+		jboxGhost.m_linearVelocity.set(source.m_linearVelocity);
+		jboxGhost.m_angularVelocity = source.m_angularVelocity;
+		ghost.xVelocity = jboxGhost.m_linearVelocity.x;
+		ghost.yVelocity = jboxGhost.m_linearVelocity.y;
+		ghost.angularVelocity = jboxGhost.m_angularVelocity;
+	}
+
+	/**
+	 * Destroy a set of ghosts without reporting the contacts that end with
+	 * them, since the body they mirror has already dealt with those
+	 *
+	 * @param bodyGhosts The ghosts to destroy, indexed by shard
+	 */
+	private void destroyGhosts(Ghost[] bodyGhosts) {
+		for (int s=0;s<bodyGhosts.length;s++) {
+			if (bodyGhosts[s] != null) {
+				bodyGhosts[s].body.m_userData = null;
+				shards[s].getJBoxWorld().destroyBody(bodyGhosts[s].body);
+				bodyGhosts[s] = null;
+			}
+		}
+	}
+
+	/**
+	 * Return a list of all bodies in or near the given box, from every shard
+	 * the box covers
+	 *
+	 * @see World#bodiesAt(float, float, float, float)
+	 * @param x1 x-coordinate of one corner of the box
+	 * @param y1 y-coordinate of one corner of the box
+	 * @param x2 x-coordinate of the opposite corner of the box
+	 * @param y2 y-coordinate of the opposite corner of the box
+	 * @return The bodies in or near the box
+	 */
+	public List<Body<?>> bodiesAt(float x1, float y1, float x2, float y2) {
+		// bodies may sit up to the overlap distance outside their shard
+		int first = getShardIndex(Math.min(x1, x2) - overlap);
+		int last = getShardIndex(Math.max(x1, x2) + overlap);
+		List<Body<?>> bodies = new ArrayList<Body<?>>();
+		for (int s=first;s<=last;s++) {
+			bodies.addAll(shards[s].bodiesAt(x1, y1, x2, y2));
+		}
+		return bodies;
+	}
+
+	/**
+	 * Add a listener to be notified of collisions in every shard. The listener
+	 * may be called from several threads at once.
+	 *
+	 * @param listener The listener to be notified of collisions
+	 */
+	public void addListener(WorldListener listener) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].addListener(listener);
+		}
+	}
+
+	/**
+	 * Remove a listener that will no longer receive events
+	 *
+	 * @param listener The listener to be removed
+	 */
+	public void removeListener(WorldListener listener) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].removeListener(listener);
+		}
+	}
+
+	/**
+	 * Add a listener to be notified of bodies entering and leaving sensors in
+	 * every shard. The listener may be called from several threads at once.
+	 *
+	 * @param listener The listener to be notified of sensor overlaps
+	 */
+	public void addSensorListener(SensorListener listener) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].addSensorListener(listener);
+		}
+	}
+
+	/**
+	 * Remove a sensor listener that will no longer receive events
+	 *
+	 * @param listener The listener to be removed
+	 */
+	public void removeSensorListener(SensorListener listener) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].removeSensorListener(listener);
+		}
+	}
+
+	/**
+	 * Add a listener that listens for collisions on a particular body. The
+	 * listener follows the body as it moves between shards.
+	 *
+	 * @param body The body on which collisions should be detected
+	 * @param listener The listener to call
+	 */
+	public void addBodyListener(Body<?> body, WorldListener listener) {
+		int shard = findShard(body);
+		if (shard < 0) {
+			throw new NotAttachedToWorldException();
+		}
+		shards[shard].addBodyListener(body, listener);
+	}
+
+	/**
+	 * Remove a listener that listens for collisions on a particular body
+	 *
+	 * @param body The body the listener was added for
+	 * @param listener The listener to remove
+	 */
+	public void removeBodyListener(Body<?> body, WorldListener listener) {
+		int shard = findShard(body);
+		if (shard >= 0) {
+			shards[shard].removeBodyListener(body, listener);
+		}
+	}
+
+	/**
+	 * Sets x- and y-axis gravity in every shard
+	 *
+	 * @param xGravity horizontal pull
+	 * @param yGravity vertical pull
+	 */
+	public void setGravity(float xGravity, float yGravity) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].setGravity(xGravity, yGravity);
+		}
+	}
+
+	/**
+	 * Set the number of iterations used in every shard
+	 *
+	 * @param iterations The number of iterations to integrate over
+	 */
+	public void setIterations(int iterations) {
+		for (int i=0;i<shards.length;i++) {
+			shards[i].setIterations(iterations);
+		}
+	}
+
+	/**
+	 * Shut down the threads stepping the shards
+	 */
+	public void shutdown() {
+		group.shutdown();
+	}
+
+	/**
+	 * A copy of a body standing in for it in a neighbouring shard. It's the
+	 * user data of its JBox2D body, so contacts with it can be traced back to
+	 * the body it mirrors.
+	 */
+	private static class Ghost {
+		/** The body mirrored */
+		private final Body<?> owner;
+		/** The index of the shard the ghost is in */
+		private final int shard;
+		/** The index of the shard the body mirrored is in, which can't change while the ghost exists */
+		private final int ownerShard;
+		/** The JBox2D body acting as the ghost */
+		private org.jbox2d.dynamics.Body body;
+		/** The x component of the velocity given to the ghost before the step */
+		private float xVelocity;
+		/** The y component of the velocity given to the ghost before the step */
+		private float yVelocity;
+		/** The angular velocity given to the ghost before the step */
+		private float angularVelocity;
+
+		/**
+		 * Create a new ghost
+		 *
+		 * @param owner The body mirrored
+		 * @param shard The index of the shard the ghost is in
+		 * @param ownerShard The index of the shard the body mirrored is in
+		 */
+		Ghost(Body<?> owner, int shard, int ownerShard) {
+			this.owner = owner;
+			this.shard = shard;
+			this.ownerShard = ownerShard;
+		}
+	}
+
+	/**
+	 * The listener told of a shard's contacts with ghosts. It runs on the
+	 * thread stepping the shard, so it only records the contacts for them to
+	 * be counted once every shard has finished, and decides in pre-solve
+	 * which shard resolves a contact that shows up in two.
+	 */
+	private class SeamRecorder implements ContactListener {
+		/** The index of the shard recorded */
+		private final int shard;
+		/** The real body and the owner of the ghost for each contact recorded */
+		private Body<?>[] bodies = new Body<?>[32];
+		/** The flags for each contact recorded */
+		private int[] flags = new int[16];
+		/** The number of contacts recorded */
+		private int count;
+
+		/**
+		 * Create a new recorder
+		 *
+		 * @param shard The index of the shard recorded
+		 */
+		SeamRecorder(int shard) {
+			this.shard = shard;
+		}
+
+		@Override
+		public void beginContact(Contact contact) {
+			record(contact, BEGAN);
+		}
+
+		@Override
+		public void endContact(Contact contact) {
+			record(contact, 0);
+		}
+
+		/**
+		 * Record a contact between a real body and a ghost
+		 *
+		 * @param contact The contact that began or ended
+		 * @param began BEGAN if the contact began, 0 if it ended
+		 */
+		private void record(Contact contact, int began) {
+			Fixture real = contact.m_fixtureA;
+			Fixture ghost = contact.m_fixtureB;
+			if (real.m_body.m_userData instanceof Ghost) {
+				real = contact.m_fixtureB;
+				ghost = contact.m_fixtureA;
+			}
+			// contacts with bodies being removed or ghosts being dropped quietly aren't counted
+			if (!(real.m_body.m_userData instanceof Body) || !(ghost.m_body.m_userData instanceof Ghost)) {
+				return;
+			}
+			if (count == flags.length) {
+				Body<?>[] grownBodies = new Body<?>[bodies.length * 2];
+				System.arraycopy(bodies, 0, grownBodies, 0, bodies.length);
+				bodies = grownBodies;
+				int[] grownFlags = new int[flags.length * 2];
+				System.arraycopy(flags, 0, grownFlags, 0, flags.length);
+				flags = grownFlags;
+			}
+			bodies[count * 2] = (Body<?>) real.m_body.m_userData;
+			bodies[(count * 2) + 1] = ((Ghost) ghost.m_body.m_userData).owner;
+			flags[count++] = began | (real.m_isSensor ? REAL_SENSOR : 0) | (ghost.m_isSensor ? GHOST_SENSOR : 0);
+		}
+
+		@Override
+		public void preSolve(Contact contact, Manifold oldManifold) {
+			Object dataA = contact.m_fixtureA.m_body.m_userData;
+			Object dataB = contact.m_fixtureB.m_body.m_userData;
+			if (dataA instanceof Ghost) {
+				if ((dataB instanceof Ghost) || !resolvesHere(dataB, (Ghost) dataA)) {
+					contact.setEnabled(false);
+				}
+			} else if ((dataB instanceof Ghost) && !resolvesHere(dataA, (Ghost) dataB)) {
+				contact.setEnabled(false);
+			}
+		}
+
+		/**
+		 * Check if a contact between a real body and a ghost should be
+		 * resolved in this shard. If the real body has a ghost in the other
+		 * body's shard the contact shows up there too, and only one of them
+		 * may push the bodies apart.
+		 *
+		 * @param real The user data of the real body
+		 * @param ghost The ghost
+		 * @return True if the contact should be resolved here
+		 */
+		private boolean resolvesHere(Object real, Ghost ghost) {
+			if (!(real instanceof Body)) {
+				return true;
+			}
+			Body<?> body = (Body<?>) real;
+			Ghost[] bodyGhosts = ghosts.get(body);
+			if ((bodyGhosts == null) || (bodyGhosts[ghost.ownerShard] == null)) {
+				return true;
+			}
+			// a static or kinematic ghost stands in exactly, so resolve against it
+			if (ghost.body.getType() != BodyType.DYNAMIC) {
+				return true;
+			}
+			if (body.getJBoxBody().getType() != BodyType.DYNAMIC) {
+				return false;
+			}
+			return shard < ghost.ownerShard;
+		}
+
+		@Override
+		public void postSolve(Contact contact, ContactImpulse impulse) {
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.newdawn.fizzy;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The layout of the memory mapped file shared by {@link TransformRingWriter}
+ * and {@link TransformRingReader}. The file is a header followed by a fixed
+ * number of slots, each holding one published frame:
+ *
+ * <pre>
+ * header: int magic, int version, int slot count, int bodies per slot,
+ *         long latest frame published (0 if none), padded to 64 bytes
+ * slot:   long sequence, int body count, int padding,
+ *         then per body: int id, float x, float y, float angle, int flags
+ * </pre>
+ *
+ * Frame n is written to slot n % slot count. The slot's sequence is a seqlock
+ * counter: 2n - 1 while frame n is being written and 2n once it's complete,
+ * so a reader can tell a torn or overwritten frame by reading the sequence
+ * before and after the data. Everything is little endian.
+ *
+ * The Java memory model says nothing about mapped memory shared with
+ * another process, so ordering can't come from a happens-before edge between
+ * the two sides. Instead each side puts a full fence between the sequence and
+ * the data: a write and then a read of a volatile field, which the JVM
+ * compiles to a store-load barrier plus the acquire and release barriers
+ * either side of it. That keeps both the JIT and the processor from moving
+ * the plain accesses to the mapped memory across it, on weakly ordered
+ * processors as well as x86. Java 7 has no fence method, which is why it's
+ * built from a volatile field.
+ */
+final class TransformRing {
+	/** The magic number at the start of the file, "FZTR" */
+	static final int MAGIC = 0x465A5452;
+	/** The version of the layout */
+	static final int VERSION = 1;
+	/** The byte order of the file */
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** The offset of the slot count in the header */
+	static final int SLOT_COUNT = 8;
+	/** The offset of the number of bodies per slot in the header */
+	static final int SLOT_BODIES = 12;
+	/** The offset of the latest frame published in the header */
+	static final int LATEST_FRAME = 16;
+	/** The size of the header */
+	static final int HEADER_SIZE = 64;
+
+	/** The offset of the sequence in a slot */
+	static final int SEQUENCE = 0;
+	/** The offset of the body count in a slot */
+	static final int BODY_COUNT = 8;
+	/** The size of a slot's header */
+	static final int SLOT_HEADER_SIZE = 16;
+	/** The size of each body's record */
+	static final int RECORD_SIZE = 20;
+
+	/**
+	 * Not constructed, just a holder for the layout
+	 */
+	private TransformRing() {
+	}
+
+	/**
+	 * Get the size of each slot
+	 *
+	 * @param bodies The number of bodies each slot can hold
+	 * @return The size of a slot in bytes
+	 */
+	static int slotSize(int bodies) {
+		return SLOT_HEADER_SIZE + (bodies * RECORD_SIZE);
+	}
+
+	/**
+	 * Get the size of the whole file
+	 *
+	 * @param slots The number of slots in the ring
+	 * @param bodies The number of bodies each slot can hold
+	 * @return The size of the file in bytes
+	 */
+	static long fileSize(int slots, int bodies) {
+		return HEADER_SIZE + ((long) slots * slotSize(bodies));
+	}
+
+	/**
+	 * Check the header of a mapped file is a ring this code can read
+	 *
+	 * @param buffer The mapped file
+	 * @throws IOException Indicates the file isn't a transform ring or is the wrong version
+	 */
+	static void checkHeader(MappedByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a transform ring");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported transform ring version: "+version);
+		}
+		long size = fileSize(buffer.getInt(SLOT_COUNT), buffer.getInt(SLOT_BODIES));
+		if (buffer.capacity() < size) {
+			throw new IOException("Transform ring is truncated");
+		}
+	}
+}
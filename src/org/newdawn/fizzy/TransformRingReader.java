@@ -0,0 +1,184 @@
+package org.newdawn.fizzy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames published by a {@link TransformRingWriter}, usually in
+ * another process. Frames are read straight out of the mapped file into
+ * arrays owned by the caller and checked against the slot's sequence counter
+ * before and after, so a frame that was overwritten while it was being read
+ * is reported rather than returned half old and half new.
+ *
+ * <pre>
+ * TransformRingReader reader = new TransformRingReader(file);
+ * int count = reader.readLatest(ids, xs, ys, angles, flags);
+ * </pre>
+ */
+public class TransformRingReader {
+	/** The flag set for bodies that are awake */
+	public static final int FLAG_AWAKE = 1;
+	/** The flag set for bodies that are active */
+	public static final int FLAG_ACTIVE = 2;
+	/** The flag set for static bodies */
+	public static final int FLAG_STATIC = 4;
+
+	/** The number of times a read of the latest frame is retried after it's overwritten */
+	private static final int RETRIES = 16;
+
+	/** The mapped ring */
+	private final MappedByteBuffer buffer;
+	/** The number of slots in the ring */
+	private final int slots;
+	/** The number of bodies each slot can hold */
+	private final int slotBodies;
+	/** The size of each slot in bytes */
+	private final int slotSize;
+	/** The number of the last frame read successfully */
+	private long lastFrameRead;
+	/**
+	 * Written and then read between the sequence and the data, making a full
+	 * fence that the reads of the mapped memory can't be reordered across
+	 */
+	private volatile int fence;
+
+	/**
+	 * Create a new reader, mapping a ring written by a {@link TransformRingWriter}
+	 *
+	 * @param path The ring file
+	 * @throws IOException Indicates a failure to map the file or that it isn't a ring
+	 */
+	public TransformRingReader(File path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			// the mapping stays valid once the file is closed
+			file.close();
+		}
+		buffer.order(TransformRing.ORDER);
+		TransformRing.checkHeader(buffer);
+		slots = buffer.getInt(TransformRing.SLOT_COUNT);
+		slotBodies = buffer.getInt(TransformRing.SLOT_BODIES);
+		slotSize = TransformRing.slotSize(slotBodies);
+	}
+
+	/**
+	 * Get the most bodies a frame can hold, and so the length the arrays
+	 * passed to the read methods need to be
+	 *
+	 * @return The most bodies a frame can hold
+	 */
+	public int getMaxBodies() {
+		return slotBodies;
+	}
+
+	/**
+	 * Get the number of the latest frame published
+	 *
+	 * @return The number of the latest frame, or 0 if none has been published
+	 */
+	public long getLatestFrame() {
+		long latest = buffer.getLong(TransformRing.LATEST_FRAME);
+		fence();
+		return latest;
+	}
+
+	/**
+	 * Get the number of the last frame read successfully
+	 *
+	 * @return The number of the last frame read, or 0 if none has been read
+	 */
+	public long getLastFrameRead() {
+		return lastFrameRead;
+	}
+
+	/**
+	 * Read the latest frame published, retrying if it's overwritten while
+	 * it's being read
+	 *
+	 * @param ids The array to fill with body ids
+	 * @param xs The array to fill with x positions
+	 * @param ys The array to fill with y positions
+	 * @param angles The array to fill with rotations
+	 * @param flags The array to fill with flags, or null if they're not needed
+	 * @return The number of bodies read, or -1 if no frame could be read
+	 */
+	public int readLatest(int[] ids, float[] xs, float[] ys, float[] angles, int[] flags) {
+		for (int i=0;i<RETRIES;i++) {
+			long latest = getLatestFrame();
+			if (latest == 0) {
+				return -1;
+			}
+			int count = readFrame(latest, ids, xs, ys, angles, flags);
+			if (count >= 0) {
+				return count;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Read a particular frame
+	 *
+	 * @param frame The number of the frame to read
+	 * @param ids The array to fill with body ids
+	 * @param xs The array to fill with x positions
+	 * @param ys The array to fill with y positions
+	 * @param angles The array to fill with rotations
+	 * @param flags The array to fill with flags, or null if they're not needed
+	 * @return The number of bodies read, or -1 if the frame isn't in the ring,
+	 *         either because it hasn't been published yet or because it's been
+	 *         overwritten
+	 */
+	public int readFrame(long frame, int[] ids, float[] xs, float[] ys, float[] angles, int[] flags) {
+		if (frame < 1) {
+			return -1;
+		}
+		int slot = TransformRing.HEADER_SIZE + (int) ((frame % slots) * slotSize);
+		long expected = frame * 2;
+		long before = buffer.getLong(slot + TransformRing.SEQUENCE);
+		fence();
+		if (before != expected) {
+			return -1;
+		}
+
+		int count = buffer.getInt(slot + TransformRing.BODY_COUNT);
+		if ((count < 0) || (count > slotBodies)) {
+			return -1;
+		}
+		int offset = slot + TransformRing.SLOT_HEADER_SIZE;
+		for (int i=0;i<count;i++) {
+			ids[i] = buffer.getInt(offset);
+			xs[i] = buffer.getFloat(offset + 4);
+			ys[i] = buffer.getFloat(offset + 8);
+			angles[i] = buffer.getFloat(offset + 12);
+			if (flags != null) {
+				flags[i] = buffer.getInt(offset + 16);
+			}
+			offset += TransformRing.RECORD_SIZE;
+		}
+
+		fence();
+		long after = buffer.getLong(slot + TransformRing.SEQUENCE);
+		if (after != expected) {
+			return -1;
+		}
+		lastFrameRead = frame;
+		return count;
+	}
+
+	/**
+	 * Write and then read the volatile fence. A volatile read alone lets the
+	 * reads of the data before it drift past it, so they could see a later
+	 * frame than the second read of the sequence; the write in front stops
+	 * that, making a full fence the reads can't cross in either direction.
+	 */
+	private void fence() {
+		fence = 1;
+		int ignored = fence;
+	}
+}
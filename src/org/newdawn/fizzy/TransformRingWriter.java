@@ -0,0 +1,166 @@
+package org.newdawn.fizzy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BodyType;
+
+/**
+ * Publishes the transforms of a world's bodies, once per step, into a memory
+ * mapped file that other processes on the same machine can read with a
+ * {@link TransformRingReader}. The file holds a ring of the last few frames,
+ * each guarded by a sequence counter, so there's exactly one writer and any
+ * number of readers without locks. Publishing writes straight into the
+ * mapped memory and doesn't allocate.
+ *
+ * <pre>
+ * TransformRingWriter writer = new TransformRingWriter(file, 8, 10000);
+ * while (running) {
+ * 	world.update(1/60f);
+ * 	writer.publish(world);
+ * }
+ * writer.close();
+ * </pre>
+ */
+public class TransformRingWriter {
+	/** The file the ring is mapped from */
+	private final RandomAccessFile file;
+	/** The mapped ring */
+	private final MappedByteBuffer buffer;
+	/** The number of slots in the ring */
+	private final int slots;
+	/** The number of bodies each slot can hold */
+	private final int slotBodies;
+	/** The size of each slot in bytes */
+	private final int slotSize;
+	/** The number of the last frame published */
+	private long frame;
+	/**
+	 * Written and then read between the sequence and the data, making a full
+	 * fence that the writes to the mapped memory can't be reordered across
+	 */
+	private volatile int fence;
+
+	/**
+	 * Create a new writer, creating or replacing the ring file
+	 *
+	 * @param path The file to write the ring to
+	 * @param slots The number of frames the ring holds
+	 * @param maxBodies The most bodies a single frame can hold
+	 * @throws IOException Indicates a failure to create or map the file
+	 */
+	public TransformRingWriter(File path, int slots, int maxBodies) throws IOException {
+		if ((slots < 2) || (maxBodies < 1)) {
+			throw new IllegalArgumentException("A ring needs at least two slots and room for one body");
+		}
+		long size = TransformRing.fileSize(slots, maxBodies);
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Ring of "+size+" bytes is too big to map");
+		}
+		this.slots = slots;
+		this.slotBodies = maxBodies;
+		this.slotSize = TransformRing.slotSize(maxBodies);
+
+		file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			file.setLength(size);
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		buffer.order(TransformRing.ORDER);
+		buffer.putInt(0, TransformRing.MAGIC);
+		buffer.putInt(4, TransformRing.VERSION);
+		buffer.putInt(TransformRing.SLOT_COUNT, slots);
+		buffer.putInt(TransformRing.SLOT_BODIES, maxBodies);
+		buffer.putLong(TransformRing.LATEST_FRAME, 0);
+	}
+
+	/**
+	 * Publish the current transforms of every body in a world as the next
+	 * frame. Positions are in pixels, as returned by {@link Body#getX()}.
+	 *
+	 * @param world The world to publish
+	 * @return The number of the frame published, starting at 1
+	 */
+	public long publish(World world) {
+		int count = world.getBodyCount();
+		if (count > slotBodies) {
+			throw new IllegalStateException("World has "+count+" bodies, ring slots hold "+slotBodies);
+		}
+
+		long next = frame + 1;
+		int slot = TransformRing.HEADER_SIZE + (int) ((next % slots) * slotSize);
+		buffer.putLong(slot + TransformRing.SEQUENCE, (next * 2) - 1);
+		fence();
+
+		int offset = slot + TransformRing.SLOT_HEADER_SIZE;
+		for (int i=0;i<count;i++) {
+			Body<?> body = world.getBody(i);
+			org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+			Vec2 position = jboxBody.getPosition();
+			int flags = 0;
+			if (jboxBody.isAwake()) {
+				flags |= TransformRingReader.FLAG_AWAKE;
+			}
+			if (jboxBody.isActive()) {
+				flags |= TransformRingReader.FLAG_ACTIVE;
+			}
+			if (jboxBody.getType() == BodyType.STATIC) {
+				flags |= TransformRingReader.FLAG_STATIC;
+			}
+			buffer.putInt(offset, body.getId());
+			buffer.putFloat(offset + 4, position.x * World.PIXELS_PER_METER);
+			buffer.putFloat(offset + 8, position.y * World.PIXELS_PER_METER);
+			buffer.putFloat(offset + 12, jboxBody.getAngle());
+			buffer.putInt(offset + 16, flags);
+			offset += TransformRing.RECORD_SIZE;
+		}
+		buffer.putInt(slot + TransformRing.BODY_COUNT, count);
+
+		fence();
+		buffer.putLong(slot + TransformRing.SEQUENCE, next * 2);
+		fence();
+		buffer.putLong(TransformRing.LATEST_FRAME, next);
+		frame = next;
+		return next;
+	}
+
+	/**
+	 * Write and then read the volatile fence. The write keeps the accesses
+	 * before it from moving after it, the read keeps those after it from
+	 * moving before it, and a volatile write followed by a volatile read
+	 * can't be reordered either, so together they're a full fence that the
+	 * stores to the mapped memory can't cross in either direction.
+	 */
+	private void fence() {
+		fence = 1;
+		int ignored = fence;
+	}
+
+	/**
+	 * Get the number of the last frame published
+	 *
+	 * @return The number of the last frame published, or 0 if there's been none
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Close the file. Readers that already have the ring mapped can still
+	 * read the frames in it.
+	 *
+	 * @throws IOException Indicates a failure to close the file
+	 */
+	public void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+}
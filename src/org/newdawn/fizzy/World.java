@@ -1,21 +1,28 @@
 package org.newdawn.fizzy;
 
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import org.jbox2d.callbacks.ContactFilter;
 import org.jbox2d.callbacks.ContactImpulse;
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.callbacks.QueryCallback;
+import org.jbox2d.callbacks.RayCastCallback;
 import org.jbox2d.collision.AABB;
 import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Transform;
 import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BodyType;
 import org.jbox2d.dynamics.Fixture;
 import org.jbox2d.dynamics.contacts.Contact;
 
@@ -59,26 +66,141 @@ public class World {
 	 * (10)
 	 */
 	public static final int DEFAULT_ITERATIONS = 10;
+	/** The default length of a step taken by advance() (1/60th of a second) */
+	public static final float DEFAULT_FIXED_TIME_STEP = 1 / 60f;
+	/** The default maximum number of steps taken by one call to advance() (5) */
+	public static final int DEFAULT_MAX_FIXED_STEPS = 5;
+
+	/** The query for bodies whose bounding boxes overlap a box */
+	private static final int QUERY_BOX = 0;
+	/** The query for bodies whose shapes overlap a box */
+	private static final int QUERY_EXACT_BOX = 1;
+	/** The query for bodies whose shapes contain a point */
+	private static final int QUERY_POINT = 2;
+	/** The query for bodies whose shapes are within a distance of a point */
+	private static final int QUERY_RADIUS = 3;
+
+	/** The raycast finding the closest body on a ray */
+	private static final int RAY_CLOSEST = 0;
+	/** The raycast finding any body on a ray */
+	private static final int RAY_ANY = 1;
+	/** The raycast finding every body on a ray */
+	private static final int RAY_ALL = 2;
 
 	/** The JBox2D world this World object is wrapping */
 	private org.jbox2d.dynamics.World jboxWorld;
-	/** The list of bodies added to the world */
-	private List<Body<?>> bodies = new ArrayList<Body<?>>();
 	/**
-	 * A map from shapes that will be reported from collision to the bodies that
-	 * own them
+	 * The bodies added to the world, packed at the start of the array. Each
+	 * body knows its index so it can be removed by moving the last body into
+	 * its slot.
 	 */
-	private Map<org.jbox2d.collision.shapes.Shape, Body<?>> shapeMap = new HashMap<org.jbox2d.collision.shapes.Shape, Body<?>>();
+	private Body<?>[] bodies = new Body<?>[16];
+	/** The number of bodies in the world */
+	private int bodyCount;
 	/** The list of listeners to be notified of collision events */
 	private List<WorldListener> listeners = new ArrayList<WorldListener>();
 
+	/** The listeners to be notified of bodies entering and leaving sensors */
+	private List<SensorListener> sensorListeners = new ArrayList<SensorListener>();
+	/** The tracker of bodies entering and leaving watched regions */
+	private final RegionTracker regionTracker = new RegionTracker(this);
+	/** The tracker deactivating bodies far from the observers */
+	private final ActivityTracker activityTracker = new ActivityTracker(this);
+	/** The tracker of bodies overlapping static sensors, which are kept out of the step */
+	private final SensorTracker sensorTracker = new SensorTracker(this);
+	/**
+	 * The sensor body or region and the other body of each overlap event
+	 * found during the step, two entries per event, reported once the step
+	 * is complete
+	 */
+	private Object[] sensorEvents = new Object[32];
+	/** True for each waiting overlap event that's an entry rather than an exit */
+	private boolean[] sensorEntries = new boolean[16];
+	/** The number of overlap events waiting */
+	private int sensorEventCount;
+	/** True while the world is stepping, when overlap events have to wait until it's done */
+	private boolean stepping;
+
 	/** List of listeners that are associated with particular bodies */
-	private Map<Body<?>, Set<WorldListener>> bodyListeners = new HashMap<Body<?>, Set<WorldListener>>();
+	private Map<Body<?>, List<WorldListener>> bodyListeners = new HashMap<Body<?>, List<WorldListener>>();
+
+	/** The listener told of contacts with JBox2D bodies that Fizzy doesn't own, or null if there is none */
+	private ContactListener seamListener;
+
+	/** The bodies in the world indexed by their id */
+	private Body<?>[] bodiesById = new Body<?>[16];
+	/** The world whose ids this world hands out, itself unless ids are shared with other worlds */
+	private World idSource = this;
+	/** The next id to assign if there are none free */
+	private int nextId;
+	/** The ids released by removed bodies that are ready for reuse */
+	private int[] freeIds = new int[16];
+	/** The number of entries in freeIds */
+	private int freeIdCount;
+	/**
+	 * The ids released while the event queue still referenced them, freed once
+	 * the queue is cleared
+	 */
+	private int[] releasedIds = new int[16];
+	/** The number of entries in releasedIds */
+	private int releasedIdCount;
+
+	/** True if collision events are queued and delivered after the step */
+	private boolean deferredEvents;
+	/** The events recorded during the last step when events are deferred */
+	private final CollisionEventQueue eventQueue = new CollisionEventQueue(this, 64);
+	/** The number of events at the start of the queue already delivered to the listeners */
+	private int deliveredEventCount;
 
+	/** True if collision events are dispatched from a pool rather than created */
+	private boolean pooledEvents;
+	/** The contact reused for every event when events are pooled */
+	private final FizzyContact pooledContact = new FizzyContact(null);
+	/** The event reused for every collision when events are pooled */
+	private final CollisionEvent pooledEvent = new CollisionEvent(null, null, null);
+
+	/** The bounds of the world in meters, or null if there are none */
 	private AABB worldAABB;
-	private AABB[] outOfBoundsRegions;
 	private OutOfBoundsCallback outOfBoundsCallback;
 	private OutOfBoundsBehavior outOfBoundsBehavior = OutOfBoundsBehavior.DEACTIVATE;
+	/** True if every body should be checked against the bounds at the next step */
+	private boolean checkAllBounds;
+	/** The bodies found out of bounds this step, reused between steps */
+	private List<Body<?>> outOfBoundsBodies = new ArrayList<Body<?>>();
+	/** Scratch box used when checking fixtures against the bounds */
+	private final AABB boundsCheckAABB = new AABB();
+
+	/** The length of a step taken by advance() */
+	private float fixedTimeStep = DEFAULT_FIXED_TIME_STEP;
+	/** The most steps advance() will take in one call */
+	private int maxFixedSteps = DEFAULT_MAX_FIXED_STEPS;
+	/** The time passed to advance() that hasn't been simulated yet */
+	private float accumulator;
+	/** How far between the previous and current fixed steps the real time is */
+	private float interpolationAlpha = 1;
+
+	/** The query run against the world, reused so that queries don't allocate */
+	private final BodyQuery bodyQuery = new BodyQuery();
+	/** The stamp given to the last query run. Bodies start with 0, which no query is given. */
+	private int queryStamp;
+	/** The raycast run against the world, reused so that raycasts don't allocate */
+	private final RayQuery rayQuery = new RayQuery();
+
+	/** Scratch vector used by bodies to pass forces and impulses to JBox2D without allocating */
+	private final Vec2 scratchVector = new Vec2();
+	/** Scratch vector used by bodies to pass points and positions to JBox2D without allocating */
+	private final Vec2 scratchPoint = new Vec2();
+
+	/**
+	 * The layers each layer collides with as a bit mask, indexed by layer, or
+	 * null if every layer collides with every other
+	 */
+	private int[] layerMatrix;
+	/** The filter JBox2D applies to contacts, also applied to static sensors */
+	private ContactFilter contactFilter = new ContactFilter();
+
+	/** The history of recent steps used to rewind the world, or null if it isn't kept */
+	private RollbackBuffer rollback;
 
 	/** The number of iterations to integrate over */
 	private int velocityIterations;
@@ -108,6 +230,31 @@ public class World {
 		return jboxWorld;
 	}
 
+	/**
+	 * Get the JBox2D world a body's JBox2D body should be created in. Static
+	 * sensors are kept apart from the rest so they aren't stepped.
+	 * 
+	 * @see SensorTracker
+	 * @param body
+	 *            The body being created
+	 * @return The JBox2D world to create the body in
+	 */
+	org.jbox2d.dynamics.World getJBoxWorld(Body<?> body) {
+		if (body.isStatic() && body.getShape().isSensor()) {
+			return sensorTracker.getJBoxWorld();
+		}
+		return jboxWorld;
+	}
+
+	/**
+	 * Get the filter applied to contacts
+	 * 
+	 * @return The filter applied to contacts
+	 */
+	ContactFilter getContactFilter() {
+		return contactFilter;
+	}
+
 	/**
 	 * Add a body to the world
 	 * 
@@ -115,32 +262,441 @@ public class World {
 	 *            The body to be added to the world
 	 */
 	public void add(Body<?> body) {
+		ensureBodyCapacity(bodyCount + 1);
+		addBody(body);
+	}
+
+	/**
+	 * Add a set of bodies to the world in one go. The world's storage is grown
+	 * once for the whole set.
+	 * 
+	 * @param newBodies
+	 *            The bodies to be added to the world
+	 */
+	public void addAll(Collection<? extends Body<?>> newBodies) {
+		ensureBodyCapacity(bodyCount + newBodies.size());
+		for (Body<?> body : newBodies) {
+			addBody(body);
+		}
+	}
+
+	/**
+	 * Add a body to the world, assuming there's space to store it
+	 * 
+	 * @param body
+	 *            The body to be added to the world
+	 */
+	private void addBody(Body<?> body) {
 		body.addToWorld(this);
-		List<org.jbox2d.collision.shapes.Shape> shapes = body.getShape()
-				.getJBoxShapes();
+		attach(body);
+	}
+
+	/**
+	 * Add a body whose JBox2D body already exists to the list of bodies in
+	 * the world
+	 * 
+	 * @param body
+	 *            The body being added
+	 */
+	private void attach(Body<?> body) {
+		attach(body, -1);
+	}
+
+	/**
+	 * Add a body whose JBox2D body already exists to the list of bodies in
+	 * the world
+	 * 
+	 * @param body
+	 *            The body being added
+	 * @param id
+	 *            The id the body keeps, or -1 to give it a new one
+	 */
+	private void attach(Body<?> body, int id) {
+		body.storePreviousTransform();
+		// a stamp left by another world's queries could match one of ours
+		body.setQueryStamp(0);
+		assignId(body, id);
+		body.setIndex(bodyCount);
+		bodies[bodyCount++] = body;
+		if (body.isStatic()) {
+			bodyMoved(body);
+		} else {
+			body.setExportPending(true);
+		}
+		if (rollback != null) {
+			rollback.bodyAdded(body);
+		}
+		regionTracker.track(body);
+		sensorTracker.bodyAdded(body);
+		activityTracker.bodyAdded(body);
+	}
 
-		for (int i = 0; i < shapes.size(); i++) {
-			shapeMap.put(shapes.get(i), body);
+	/**
+	 * Make sure the world can store a given number of bodies
+	 * 
+	 * @param capacity
+	 *            The number of bodies that need to be stored
+	 */
+	private void ensureBodyCapacity(int capacity) {
+		if (capacity > bodies.length) {
+			Body<?>[] grown = new Body<?>[Math.max(capacity, bodies.length * 2)];
+			System.arraycopy(bodies, 0, grown, 0, bodyCount);
+			bodies = grown;
 		}
-		bodies.add(body);
 	}
 
 	/**
-	 * Remove a body from the world
+	 * Remove a body from the world. This takes constant time, but the last
+	 * body in the world is moved into the removed body's index, so the order
+	 * of {@link #getBody(int)} changes.
+	 * 
+	 * The body's contacts, sensor overlaps and watched regions end with it,
+	 * but listeners aren't told, so a listener removing bodies doesn't get
+	 * events for them in return.
 	 * 
 	 * @param body
 	 *            The body to be removed from the world
 	 */
 	public void remove(Body<?> body) {
-		List<org.jbox2d.collision.shapes.Shape> shapes = body.getShape()
-				.getJBoxShapes();
+		checkInWorld(body);
+		body.removeFromWorld(this);
+		detach(body);
+	}
+
+	/**
+	 * Check a body is in the world's list of bodies
+	 * 
+	 * @param body
+	 *            The body to check
+	 * @throws NotAttachedToWorldException
+	 *             Indicates the body isn't in this world
+	 */
+	private void checkInWorld(Body<?> body) {
+		int index = body.getIndex();
+		if ((index < 0) || (index >= bodyCount) || (bodies[index] != body)) {
+			throw new NotAttachedToWorldException();
+		}
+	}
+
+	/**
+	 * Take a body out of the list of bodies in the world, once its JBox2D
+	 * body has been destroyed or parked
+	 * 
+	 * @param body
+	 *            The body being taken out
+	 */
+	private void detach(Body<?> body) {
+		releaseId(body);
+		unlist(body);
+
+		if (!bodyListeners.isEmpty()) {
+			bodyListeners.remove(body);
+		}
+	}
+
+	/**
+	 * Take a body out of the list of bodies in the world and the trackers
+	 * following it, leaving its id and listeners alone
+	 * 
+	 * @param body
+	 *            The body being taken out
+	 */
+	private void unlist(Body<?> body) {
+		int index = body.getIndex();
+		regionTracker.leaveAll(body);
+		activityTracker.bodyRemoved(body);
+
+		Body<?> last = bodies[--bodyCount];
+		bodies[index] = last;
+		last.setIndex(index);
+		bodies[bodyCount] = null;
+		body.setIndex(-1);
+		body.setBoundsCheckPending(false);
+		body.setExportPending(false);
+	}
+
+	/**
+	 * Move a body into another world without any sign of it leaving this
+	 * one. The body keeps its id, its listeners and what it's touching,
+	 * and the contacts JBox2D ends as it leaves aren't reported. The worlds
+	 * must share their ids.
+	 * 
+	 * @see #shareIds(World)
+	 * @param body
+	 *            The body to move
+	 * @param to
+	 *            The world to move it to
+	 */
+	void transfer(Body<?> body, World to) {
+		checkInWorld(body);
+		int id = body.getId();
+		bodiesById[id] = null;
+		List<WorldListener> listeners = bodyListeners.isEmpty() ? null : bodyListeners.remove(body);
+		body.transfer(this, to);
+		unlist(body);
+
+		to.ensureBodyCapacity(to.bodyCount + 1);
+		to.attach(body, id);
+		if (listeners != null) {
+			to.bodyListeners.put(body, listeners);
+		}
+	}
+
+	/**
+	 * Remove a set of bodies from the world
+	 * 
+	 * @see #remove(Body)
+	 * @param oldBodies
+	 *            The bodies to be removed from the world
+	 */
+	public void removeAll(Collection<? extends Body<?>> oldBodies) {
+		for (Body<?> body : oldBodies) {
+			remove(body);
+		}
+	}
+
+	/**
+	 * Park a body for a {@link BodyPool}. The body is taken out of the world
+	 * as if it had been removed, but its JBox2D body and fixtures are only
+	 * deactivated so they can be used again.
+	 * 
+	 * @param body
+	 *            The body to park
+	 */
+	void park(Body<?> body) {
+		checkInWorld(body);
+		body.park();
+		detach(body);
+	}
+
+	/**
+	 * Create the JBox2D body for a new body that goes straight into a
+	 * {@link BodyPool}, without adding it to the list of bodies in the world
+	 * 
+	 * @param body
+	 *            The body to create, which must not be active
+	 */
+	void addParked(Body<?> body) {
+		body.addToWorld(this);
+		body.addParked();
+	}
+
+	/**
+	 * Put a parked body back into the world
+	 * 
+	 * @param body
+	 *            The parked body
+	 * @param x
+	 *            The x axis location of the body
+	 * @param y
+	 *            The y axis location of the body
+	 * @param xVelocity
+	 *            The x component of the body's velocity
+	 * @param yVelocity
+	 *            The y component of the body's velocity
+	 */
+	void unpark(Body<?> body, float x, float y, float xVelocity, float yVelocity) {
+		if (!body.isParked() || (body.getWorld() != this)) {
+			throw new NotAttachedToWorldException();
+		}
+		ensureBodyCapacity(bodyCount + 1);
+		body.unpark(x, y, xVelocity, yVelocity);
+		attach(body);
+	}
 
-		for (int i = 0; i < shapes.size(); i++) {
-			shapeMap.remove(shapes.get(i));
+	/**
+	 * Destroy the JBox2D body of a parked body that a pool no longer wants
+	 * 
+	 * @param body
+	 *            The parked body
+	 */
+	void destroyParked(Body<?> body) {
+		if (!body.isParked() || (body.getWorld() != this)) {
+			throw new NotAttachedToWorldException();
 		}
 		body.removeFromWorld(this);
-		bodies.remove(body);
-		bodyListeners.remove(body);
+	}
+
+	/**
+	 * Give a body newly added to the world an id
+	 * 
+	 * @param body
+	 *            The body being added
+	 * @param id
+	 *            The id the body keeps, or -1 to give it a new one
+	 */
+	private void assignId(Body<?> body, int id) {
+		if (id < 0) {
+			id = idSource.takeId();
+		}
+		if (id >= bodiesById.length) {
+			Body<?>[] grown = new Body<?>[Math.max(id + 1, bodiesById.length * 2)];
+			System.arraycopy(bodiesById, 0, grown, 0, bodiesById.length);
+			bodiesById = grown;
+		}
+		bodiesById[id] = body;
+		body.setId(id);
+	}
+
+	/**
+	 * Take an id that no body is using from the ids this world hands out
+	 * 
+	 * @return The id taken
+	 */
+	private synchronized int takeId() {
+		if (freeIdCount > 0) {
+			return freeIds[--freeIdCount];
+		}
+		return nextId++;
+	}
+
+	/**
+	 * Return an id to the ids this world hands out, to be used again
+	 * 
+	 * @param id
+	 *            The id no longer used
+	 */
+	private synchronized void giveId(int id) {
+		freeIds = push(freeIds, freeIdCount++, id);
+	}
+
+	/**
+	 * Draw ids from another world rather than this one, so that an id is only
+	 * ever used by one body across both worlds and bodies can move between
+	 * them keeping their ids. This has to be set before any bodies are added.
+	 * Ids may be taken and returned from several threads at once.
+	 * 
+	 * @see #transfer(Body, World)
+	 * @param source
+	 *            The world handing out the ids
+	 */
+	void shareIds(World source) {
+		idSource = source.idSource;
+	}
+
+	/**
+	 * Release the id of a body that's been removed from the world. If the
+	 * rollback history may still refer to the id it's retired until the
+	 * history has moved past it.
+	 * 
+	 * @param body
+	 *            The body being removed
+	 */
+	private void releaseId(Body<?> body) {
+		int id = body.getId();
+		bodiesById[id] = null;
+		body.setId(-1);
+		if (rollback != null) {
+			rollback.retire(id);
+		} else {
+			freeId(id);
+		}
+	}
+
+	/**
+	 * Make the id of a removed body available again. If queued events may
+	 * still refer to the id it's held back until the queue is cleared, so
+	 * that it can't be handed to another body in the meantime.
+	 * 
+	 * @param id
+	 *            The id no longer used
+	 */
+	void freeId(int id) {
+		if (eventQueue.isEmpty()) {
+			idSource.giveId(id);
+		} else {
+			releasedIds = push(releasedIds, releasedIdCount++, id);
+		}
+	}
+
+	/**
+	 * Put a value into an array, growing the array if needed
+	 * 
+	 * @param array
+	 *            The array to add to
+	 * @param index
+	 *            The index to store the value at
+	 * @param value
+	 *            The value to store
+	 * @return The array holding the value
+	 */
+	private static int[] push(int[] array, int index, int value) {
+		if (index == array.length) {
+			int[] grown = new int[array.length * 2];
+			System.arraycopy(array, 0, grown, 0, array.length);
+			array = grown;
+		}
+		array[index] = value;
+		return array;
+	}
+
+	/**
+	 * Clear the event queue, making the ids it held back available again
+	 */
+	private void clearEventQueue() {
+		eventQueue.clear();
+		deliveredEventCount = 0;
+		freeReleasedIds();
+	}
+
+	/**
+	 * Drop the events already delivered from the queue, keeping any recorded
+	 * since, e.g. by deactivating a touching body between updates. The ids the
+	 * queue held back are made available again once it's empty.
+	 */
+	private void dropDeliveredEvents() {
+		eventQueue.removeFirst(deliveredEventCount);
+		deliveredEventCount = 0;
+		if (eventQueue.isEmpty()) {
+			freeReleasedIds();
+		}
+	}
+
+	/**
+	 * Make the ids held back while the event queue referenced them available
+	 * again
+	 */
+	private void freeReleasedIds() {
+		for (int i = 0; i < releasedIdCount; i++) {
+			idSource.giveId(releasedIds[i]);
+		}
+		releasedIdCount = 0;
+	}
+
+	/**
+	 * Get a body in the world by its id
+	 * 
+	 * @see Body#getId()
+	 * @param id
+	 *            The id of the body to retrieve
+	 * @return The body with the given id or null if there's no such body in
+	 *         the world
+	 */
+	public Body<?> getBodyById(int id) {
+		if (id < 0 || id >= bodiesById.length) {
+			return null;
+		}
+		return bodiesById[id];
+	}
+
+	/**
+	 * Get the vector bodies use to pass forces and impulses to JBox2D. It's
+	 * only valid until the next call that uses it.
+	 * 
+	 * @return The scratch vector
+	 */
+	Vec2 getScratchVector() {
+		return scratchVector;
+	}
+
+	/**
+	 * Get the vector bodies use to pass points and positions to JBox2D. It's
+	 * only valid until the next call that uses it.
+	 * 
+	 * @return The scratch point
+	 */
+	Vec2 getScratchPoint() {
+		return scratchPoint;
 	}
 
 	/**
@@ -149,7 +705,7 @@ public class World {
 	 * @return The number of bodies in the world
 	 */
 	public int getBodyCount() {
-		return bodies.size();
+		return bodyCount;
 	}
 
 	/**
@@ -160,220 +716,1761 @@ public class World {
 	 * @return The body at the given index
 	 */
 	public Body<?> getBody(int index) {
-		return bodies.get(index);
+		if (index < 0 || index >= bodyCount) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ bodyCount);
+		}
+		return bodies[index];
 	}
 
 	/**
-	 * Update the world
+	 * Copy the position and rotation of every body into arrays owned by the
+	 * caller, in the same order as {@link #getBody(int)}. Positions are in
+	 * pixels, as returned by {@link Body#getX()} and {@link Body#getY()}.
 	 * 
-	 * @param timeStep
-	 *            The amount of time to simulate
+	 * @param xs
+	 *            The array to fill with x positions
+	 * @param ys
+	 *            The array to fill with y positions
+	 * @param angles
+	 *            The array to fill with rotations
+	 * @return The number of bodies exported
 	 */
-	public void update(float timeStep) {
-		jboxWorld.step(timeStep, velocityIterations, positionIterations);
-		resolveOutOfBounds();
+	public int exportTransforms(float[] xs, float[] ys, float[] angles) {
+		checkExportCapacity(xs.length, ys.length, angles.length, bodyCount);
+		for (int i = 0; i < bodyCount; i++) {
+			org.jbox2d.dynamics.Body jboxBody = bodies[i].getJBoxBody();
+			Vec2 position = jboxBody.getPosition();
+			xs[i] = position.x * PIXELS_PER_METER;
+			ys[i] = position.y * PIXELS_PER_METER;
+			angles[i] = jboxBody.getAngle();
+		}
+		return bodyCount;
 	}
 
-	private class BodyQueryCallbackHelper implements QueryCallback {
-		private Collection<Body<?>> bodies;
-
-		public BodyQueryCallbackHelper(Collection<Body<?>> bodies) {
-			this.bodies = bodies;
+	/**
+	 * Copy the position and rotation of every body into a buffer, starting
+	 * at its current position. Each body is written as three floats, x, y
+	 * and rotation, in the same order as {@link #getBody(int)}. The buffer's
+	 * position is moved past the data written.
+	 * 
+	 * @param buffer
+	 *            The buffer to fill, with room for three floats per body
+	 * @return The number of bodies exported
+	 */
+	public int exportTransforms(FloatBuffer buffer) {
+		if (buffer.remaining() < bodyCount * 3) {
+			throw new IllegalArgumentException("Buffer has room for "
+					+ (buffer.remaining() / 3) + " transforms, " + bodyCount
+					+ " needed");
 		}
+		for (int i = 0; i < bodyCount; i++) {
+			org.jbox2d.dynamics.Body jboxBody = bodies[i].getJBoxBody();
+			Vec2 position = jboxBody.getPosition();
+			buffer.put(position.x * PIXELS_PER_METER);
+			buffer.put(position.y * PIXELS_PER_METER);
+			buffer.put(jboxBody.getAngle());
+		}
+		return bodyCount;
+	}
 
-		@Override
-		public boolean reportFixture(Fixture fixture) {
-			Body<?> body = shapeMap.get(fixture.getShape());
-			if (body != null) {
-				bodies.add(body);
+	/**
+	 * Copy the position and rotation of only the bodies that may have moved
+	 * since the last export into arrays owned by the caller. That's the
+	 * bodies that aren't static and aren't sleeping, along with any body
+	 * added or moved by hand since it was last exported, such as a static
+	 * body moved with {@link Body#setPosition(float, float)} or a rewound
+	 * body. The index of each body exported is stored alongside it so the
+	 * caller can tell which body it belongs to. The arrays need room for
+	 * every body in the world, since they could all be moving.
+	 * 
+	 * @param indices
+	 *            The array to fill with the index of each body exported
+	 * @param xs
+	 *            The array to fill with x positions
+	 * @param ys
+	 *            The array to fill with y positions
+	 * @param angles
+	 *            The array to fill with rotations
+	 * @return The number of bodies exported
+	 */
+	public int exportMovingTransforms(int[] indices, float[] xs, float[] ys,
+			float[] angles) {
+		checkExportCapacity(Math.min(indices.length, xs.length), ys.length,
+				angles.length, bodyCount);
+		int count = 0;
+		for (int i = 0; i < bodyCount; i++) {
+			Body<?> body = bodies[i];
+			org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+			if (body.isExportPending()) {
+				body.setExportPending(false);
+			} else if (!jboxBody.isAwake() || (jboxBody.getType() == BodyType.STATIC)) {
+				continue;
 			}
-			return true;
+			Vec2 position = jboxBody.getPosition();
+			indices[count] = i;
+			xs[count] = position.x * PIXELS_PER_METER;
+			ys[count] = position.y * PIXELS_PER_METER;
+			angles[count] = jboxBody.getAngle();
+			count++;
 		}
-	};
+		return count;
+	}
 
-	private void resolveOutOfBounds() {
-		/*
-		 * Only continue if: a) out of bounds is defined, and b) either a
-		 * callback or a non-NONE out of bounds behavior is set
-		 */
-		if ((outOfBoundsRegions != null && (outOfBoundsBehavior != OutOfBoundsBehavior.NONE || outOfBoundsCallback != null))) {
-			Collection<Body<?>> bodies = new LinkedList<Body<?>>();
-			QueryCallback queryCallback = new BodyQueryCallbackHelper(bodies);
-			for (AABB region : outOfBoundsRegions) {
-				jboxWorld.queryAABB(queryCallback, region);
-			}
+	/**
+	 * Check that the arrays passed to an export are big enough
+	 * 
+	 * @param xs
+	 *            The length of the first array
+	 * @param ys
+	 *            The length of the second array
+	 * @param angles
+	 *            The length of the third array
+	 * @param needed
+	 *            The number of entries that may be written
+	 */
+	private static void checkExportCapacity(int xs, int ys, int angles, int needed) {
+		int length = Math.min(xs, Math.min(ys, angles));
+		if (length < needed) {
+			throw new IllegalArgumentException("Arrays have room for " + length
+					+ " transforms, " + needed + " needed");
+		}
+	}
 
-			if (outOfBoundsCallback != null) {
-				boolean continueProcessing = outOfBoundsCallback
-						.reportBodies(bodies);
-				if (!continueProcessing) {
-					return;
-				}
-			}
-			if (outOfBoundsBehavior != OutOfBoundsBehavior.NONE) {
-				for (Body<?> body : bodies) {
-					switch (outOfBoundsBehavior) {
-					case DEACTIVATE:
-						body.jboxBody.setActive(false);
-						break;
-					case DESTROY:
-						remove(body);
-						break;
-					}
-				}
-			}
+	/**
+	 * Apply a force to each of a set of bodies at its center, as
+	 * {@link Body#applyForce(float, float)} does, without allocating
+	 * 
+	 * @param targets
+	 *            The bodies to push
+	 * @param xForces
+	 *            The force on the x axis for each body
+	 * @param yForces
+	 *            The force on the y axis for each body
+	 * @param count
+	 *            The number of bodies, from the start of the arrays
+	 */
+	public void applyForces(Body<?>[] targets, float[] xForces, float[] yForces, int count) {
+		checkBulkLength(targets.length, Math.min(xForces.length, yForces.length), count);
+		for (int i = 0; i < count; i++) {
+			targets[i].applyForce(xForces[i], yForces[i]);
+		}
+	}
+
+	/**
+	 * Apply an impulse to each of a set of bodies at its center, as
+	 * {@link Body#applyImpulse(float, float)} does, without allocating
+	 * 
+	 * @param targets
+	 *            The bodies to push
+	 * @param xImpulses
+	 *            The impulse on the x axis for each body
+	 * @param yImpulses
+	 *            The impulse on the y axis for each body
+	 * @param count
+	 *            The number of bodies, from the start of the arrays
+	 */
+	public void applyImpulses(Body<?>[] targets, float[] xImpulses, float[] yImpulses, int count) {
+		checkBulkLength(targets.length, Math.min(xImpulses.length, yImpulses.length), count);
+		for (int i = 0; i < count; i++) {
+			targets[i].applyImpulse(xImpulses[i], yImpulses[i]);
+		}
+	}
+
+	/**
+	 * Set the linear velocity of each of a set of bodies, without allocating
+	 * 
+	 * @param targets
+	 *            The bodies to change
+	 * @param xVelocities
+	 *            The x component of the velocity of each body
+	 * @param yVelocities
+	 *            The y component of the velocity of each body
+	 * @param count
+	 *            The number of bodies, from the start of the arrays
+	 */
+	public void setVelocities(Body<?>[] targets, float[] xVelocities, float[] yVelocities, int count) {
+		checkBulkLength(targets.length, Math.min(xVelocities.length, yVelocities.length), count);
+		for (int i = 0; i < count; i++) {
+			targets[i].setVelocity(xVelocities[i], yVelocities[i]);
+		}
+	}
+
+	/**
+	 * Move each of a set of bodies, keeping their rotations, without
+	 * allocating. Positions are in pixels, as taken by
+	 * {@link Body#setPosition(float, float)}.
+	 * 
+	 * @param targets
+	 *            The bodies to move
+	 * @param xs
+	 *            The new x position of each body
+	 * @param ys
+	 *            The new y position of each body
+	 * @param count
+	 *            The number of bodies, from the start of the arrays
+	 */
+	public void setPositions(Body<?>[] targets, float[] xs, float[] ys, int count) {
+		checkBulkLength(targets.length, Math.min(xs.length, ys.length), count);
+		for (int i = 0; i < count; i++) {
+			targets[i].setPosition(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Move and rotate each of a set of bodies, without allocating. This is
+	 * the reverse of {@link #exportTransforms(float[], float[], float[])}.
+	 * 
+	 * @param targets
+	 *            The bodies to move
+	 * @param xs
+	 *            The new x position of each body
+	 * @param ys
+	 *            The new y position of each body
+	 * @param angles
+	 *            The new rotation of each body
+	 * @param count
+	 *            The number of bodies, from the start of the arrays
+	 */
+	public void setTransforms(Body<?>[] targets, float[] xs, float[] ys, float[] angles, int count) {
+		checkBulkLength(targets.length, Math.min(xs.length, Math.min(ys.length, angles.length)), count);
+		for (int i = 0; i < count; i++) {
+			targets[i].setTransform(xs[i], ys[i], angles[i]);
+		}
+	}
+
+	/**
+	 * Check the arrays passed to a bulk change are long enough
+	 * 
+	 * @param targets
+	 *            The length of the array of bodies
+	 * @param values
+	 *            The length of the shortest array of values
+	 * @param count
+	 *            The number of bodies to change
+	 */
+	private static void checkBulkLength(int targets, int values, int count) {
+		if ((count < 0) || (count > targets) || (count > values)) {
+			throw new IllegalArgumentException("Arrays hold " + Math.min(targets, values)
+					+ " entries, " + count + " needed");
+		}
+	}
+
+	/**
+	 * Update the world
+	 * 
+	 * @param timeStep
+	 *            The amount of time to simulate
+	 */
+	public void update(float timeStep) {
+		if (deferredEvents) {
+			dropDeliveredEvents();
+		}
+		stepping = true;
+		try {
+			activityTracker.beforeStep();
+			jboxWorld.step(timeStep, velocityIterations, positionIterations);
+			activityTracker.afterStep(timeStep, bodies, bodyCount);
+			regionTracker.track(bodies, bodyCount);
+			sensorTracker.track(bodies, bodyCount);
+			activityTracker.update(bodies, bodyCount);
+		} finally {
+			stepping = false;
+		}
+		fireSensorEvents();
+		resolveOutOfBounds();
+		if (rollback != null) {
+			rollback.capture();
+		}
+		if (deferredEvents) {
+			fireQueuedEvents();
+		}
+	}
+
+	/**
+	 * Advance the world by an amount of real time, simulating it in steps of
+	 * a fixed length. Time that doesn't fill a whole step is carried over to
+	 * the next call, so the simulation runs at the same rate whatever the
+	 * frame rate, and {@link #getInterpolationAlpha()} says how far between
+	 * the last two steps the real time lies. If more than the maximum number
+	 * of steps are due the rest are dropped, so a slow frame can't cause ever
+	 * more steps to be needed.
+	 * 
+	 * @see #setFixedTimeStep(float, int)
+	 * @param realDelta
+	 *            The amount of real time that has passed in seconds
+	 * @return The number of steps taken
+	 */
+	public int advance(float realDelta) {
+		accumulator += realDelta;
+		int steps = 0;
+		while ((accumulator >= fixedTimeStep) && (steps < maxFixedSteps)) {
+			for (int i = 0; i < bodyCount; i++) {
+				bodies[i].storePreviousTransform();
+			}
+			update(fixedTimeStep);
+			accumulator -= fixedTimeStep;
+			steps++;
+		}
+		if (accumulator >= fixedTimeStep) {
+			accumulator %= fixedTimeStep;
+		}
+		interpolationAlpha = accumulator / fixedTimeStep;
+		return steps;
+	}
+
+	/**
+	 * Set the number of recent steps that are kept so the world can be
+	 * rewound, e.g. to correct a prediction and re-simulate. Each step records
+	 * the previous position, angle, velocity and sleep state of only the
+	 * bodies that changed during it, in preallocated arrays, so keeping the
+	 * history doesn't allocate once it's sized. History starts from the moment
+	 * this is called.
+	 * 
+	 * Bodies added since a step are left where they were added when it's
+	 * rewound, and bodies removed since stay removed. A removed body's id
+	 * isn't handed out again until every step that recorded it has been
+	 * dropped from the history.
+	 * 
+	 * @see #rewind(int)
+	 * @param ticks
+	 *            The most steps that can be rewound, or 0 to stop keeping them
+	 */
+	public void setRollbackTicks(int ticks) {
+		if (ticks < 0) {
+			throw new IllegalArgumentException("Rollback ticks can't be negative: " + ticks);
+		}
+		if (rollback != null) {
+			rollback.freeRetired();
+		}
+		rollback = ticks == 0 ? null : new RollbackBuffer(this, ticks);
+	}
+
+	/**
+	 * Get the most steps that can be rewound
+	 * 
+	 * @return The most steps kept, or 0 if they aren't kept
+	 */
+	public int getRollbackTicks() {
+		return rollback == null ? 0 : rollback.getMaxTicks();
+	}
+
+	/**
+	 * Get the number of steps that can be rewound right now
+	 * 
+	 * @return The number of steps recorded
+	 */
+	public int getRewindableTicks() {
+		return rollback == null ? 0 : rollback.getTickCount();
+	}
+
+	/**
+	 * Rewind the world by a number of steps, putting every body back to the
+	 * state it had before them. The undone steps are forgotten, so stepping
+	 * again records the new history in their place. Contacts and solver state
+	 * aren't rewound, so re-simulated steps may differ slightly from the
+	 * original ones even with the same inputs.
+	 * 
+	 * @see #setRollbackTicks(int)
+	 * @param ticks
+	 *            The number of steps to rewind
+	 */
+	public void rewind(int ticks) {
+		if ((ticks < 0) || (ticks > getRewindableTicks())) {
+			throw new IllegalArgumentException("Can't rewind " + ticks + " ticks, "
+					+ getRewindableTicks() + " available");
+		}
+		if (ticks == 0) {
+			return;
+		}
+		rollback.rewind(ticks);
+		for (int i = 0; i < bodyCount; i++) {
+			bodies[i].storePreviousTransform();
+		}
+	}
+
+	/**
+	 * Set the step used by {@link #advance(float)}
+	 * 
+	 * @param timeStep
+	 *            The length of each step in seconds
+	 * @param maxSteps
+	 *            The most steps to take in one call to advance()
+	 */
+	public void setFixedTimeStep(float timeStep, int maxSteps) {
+		if ((timeStep <= 0) || (maxSteps < 1)) {
+			throw new IllegalArgumentException("Time step must be positive and at least one step allowed");
+		}
+		fixedTimeStep = timeStep;
+		maxFixedSteps = maxSteps;
+	}
+
+	/**
+	 * Get the length of the step used by {@link #advance(float)}
+	 * 
+	 * @return The length of each step in seconds
+	 */
+	public float getFixedTimeStep() {
+		return fixedTimeStep;
+	}
+
+	/**
+	 * Get the most steps {@link #advance(float)} will take in one call
+	 * 
+	 * @return The maximum number of steps per call
+	 */
+	public int getMaxFixedSteps() {
+		return maxFixedSteps;
+	}
+
+	/**
+	 * Get how far the real time passed to {@link #advance(float)} lies between
+	 * the previous and current fixed steps. Pass this to the body's
+	 * interpolated getters to render smooth motion.
+	 * 
+	 * @see Body#getInterpolatedX(float)
+	 * @return A value from 0 (the previous step) to 1 (the current step)
+	 */
+	public float getInterpolationAlpha() {
+		return interpolationAlpha;
+	}
+
+	/**
+	 * Indicate whether collision events should be deferred until the step is
+	 * complete. Normally listeners are notified from inside the JBox2D step,
+	 * while the world is locked, so they can't add or remove bodies. When
+	 * deferred, events are recorded during the step and delivered in one batch
+	 * at the end of {@link #update(float)}, after out of bounds handling, when
+	 * it's safe to modify the world. The batch can also be read directly
+	 * through {@link #getEventQueue()}.
+	 * 
+	 * Contacts that JBox2D ends between updates, e.g. when a touching body is
+	 * deactivated, are queued too and delivered at the start of the next
+	 * update's batch. Deferred events don't carry a {@link FizzyContact},
+	 * since the JBox2D contact may no longer exist by the time they're
+	 * delivered. Events are skipped if either body has been removed before
+	 * they're delivered. Turning deferral off drops any events still waiting.
+	 * Defaults to false.
+	 * 
+	 * @param deferred
+	 *            True if events should be delivered after the step
+	 */
+	public void setDeferredEvents(boolean deferred) {
+		deferredEvents = deferred;
+		if (!deferred) {
+			clearEventQueue();
+		}
+	}
+
+	/**
+	 * Check whether collision events are deferred until the step is complete
+	 * 
+	 * @see #setDeferredEvents(boolean)
+	 * @return True if events are delivered after the step
+	 */
+	public boolean isDeferredEvents() {
+		return deferredEvents;
+	}
+
+	/**
+	 * Get the events recorded during the last update when events are
+	 * deferred, preceded by any recorded between it and the update before.
+	 * The queue is reused, and the events it holds are dropped at the start
+	 * of the next update.
+	 * 
+	 * @see #setDeferredEvents(boolean)
+	 * @return The events recorded during the last update
+	 */
+	public CollisionEventQueue getEventQueue() {
+		return eventQueue;
+	}
+
+	/**
+	 * Deliver the events recorded during the step to the listeners
+	 */
+	private void fireQueuedEvents() {
+		while (deliveredEventCount < eventQueue.size()) {
+			int i = deliveredEventCount++;
+			Body<?> bodyA = eventQueue.getBodyA(i);
+			Body<?> bodyB = eventQueue.getBodyB(i);
+			if ((bodyA == null) || (bodyB == null)) {
+				continue;
+			}
+			if (eventQueue.isCollision(i)) {
+				fireCollision(createEvent(bodyA, bodyB, null));
+			} else {
+				fireSeparated(createEvent(bodyA, bodyB, null));
+			}
+		}
+	}
+
+	/**
+	 * Get the Fizzy body that owns a JBox2D fixture. Each JBox2D body created
+	 * by Fizzy carries its owning body as user data.
+	 * 
+	 * @param fixture
+	 *            The fixture reported by JBox2D
+	 * @return The body owning the fixture or null if the fixture wasn't
+	 *         created by Fizzy
+	 */
+	static Body<?> getBody(Fixture fixture) {
+		Object owner = fixture.m_body.m_userData;
+		return owner instanceof Body ? (Body<?>) owner : null;
+	}
+
+	/**
+	 * The callback used to run queries against JBox2D's broadphase. It holds
+	 * the scratch shapes used for exact tests and reports each body once per
+	 * query, by stamping the bodies it reports, so a query allocates nothing.
+	 */
+	private class BodyQuery implements QueryCallback {
+		/** The kind of query being run */
+		private int mode;
+		/** The visitor to report bodies to, or null to fill the result */
+		private BodyVisitor visitor;
+		/** The collection to fill when there's no visitor */
+		private Collection<Body<?>> result;
+		/** The stamp marking bodies reported by this query */
+		private int stamp;
+		/** The number of bodies reported */
+		private int count;
+		/** True while the query is running */
+		private boolean running;
+		/** True if the visitor has asked for the query to stop */
+		private boolean stopped;
+		/** The box queried */
+		private final AABB aabb = new AABB();
+		/** The point queried in meters */
+		private final Vec2 point = new Vec2();
+		/** The circle tested against fixtures by radius queries */
+		private final CircleShape circle = new CircleShape();
+		/** The box tested against fixtures by exact box queries */
+		private final PolygonShape box = new PolygonShape();
+		/** The transform placing the query shape in the world */
+		private final Transform transform = new Transform();
+
+		/**
+		 * Create a new query
+		 */
+		BodyQuery() {
+			transform.setIdentity();
+		}
+
+		/**
+		 * Run the query over the box already set, reporting the bodies found
+		 * 
+		 * @param mode
+		 *            The kind of query to run
+		 * @param visitor
+		 *            The visitor to report bodies to, or null to fill the
+		 *            result
+		 * @param result
+		 *            The collection to fill when there's no visitor
+		 * @return The number of bodies reported
+		 */
+		int run(int mode, BodyVisitor visitor, Collection<Body<?>> result) {
+			this.mode = mode;
+			this.visitor = visitor;
+			this.result = result;
+			count = 0;
+			stamp = ++queryStamp;
+			if (stamp == 0) {
+				// wrapped around, so old stamps could match new queries
+				for (int i = 0; i < bodyCount; i++) {
+					bodies[i].setQueryStamp(0);
+				}
+				stamp = ++queryStamp;
+			}
+			running = true;
+			stopped = false;
+			try {
+				jboxWorld.queryAABB(this, aabb);
+				if (!stopped) {
+					sensorTracker.query(this, aabb);
+				}
+			} finally {
+				running = false;
+				this.visitor = null;
+				this.result = null;
+			}
+			return count;
+		}
+
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			Body<?> body = getBody(fixture);
+			if (body == null) {
+				return true;
+			}
+			if (body.getQueryStamp() == stamp) {
+				return true;
+			}
+
+			switch (mode) {
+			case QUERY_POINT:
+				if (!fixture.testPoint(point)) {
+					return true;
+				}
+				break;
+			case QUERY_RADIUS:
+				if (!overlaps(circle, fixture)) {
+					return true;
+				}
+				break;
+			case QUERY_EXACT_BOX:
+				if (!overlaps(box, fixture)) {
+					return true;
+				}
+				break;
+			default:
+				break;
+			}
+
+			body.setQueryStamp(stamp);
+			count++;
+			if (visitor != null) {
+				stopped = !visitor.visit(body);
+				return !stopped;
+			}
+			result.add(body);
+			return true;
+		}
+
+		/**
+		 * Check if the query shape overlaps a fixture's shape
+		 * 
+		 * @param shape
+		 *            The query shape, placed by the transform
+		 * @param fixture
+		 *            The fixture to test against
+		 * @return True if the shapes overlap
+		 */
+		private boolean overlaps(org.jbox2d.collision.shapes.Shape shape, Fixture fixture) {
+			return jboxWorld.getPool().getCollision().testOverlap(shape,
+					fixture.getShape(), transform, fixture.getBody().getTransform());
+		}
+	}
+
+	/**
+	 * The callback used to cast rays through JBox2D's broadphase, reused for
+	 * every ray. It records the hit as primitives so that casting rays
+	 * doesn't allocate. Sensors are passed through, as they don't block
+	 * anything.
+	 */
+	private class RayQuery implements RayCastCallback {
+		/** The kind of raycast being run */
+		private int mode;
+		/** The start of the ray in meters */
+		private final Vec2 start = new Vec2();
+		/** The end of the ray in meters */
+		private final Vec2 end = new Vec2();
+		/** The hits to fill when finding every body on the ray */
+		private RaycastHit[] hits;
+		/** The number of hits found */
+		private int count;
+		/** The body hit, when finding a single body */
+		private Body<?> body;
+		/** The x coordinate of the point hit in meters */
+		private float x;
+		/** The y coordinate of the point hit in meters */
+		private float y;
+		/** The x component of the normal at the point hit */
+		private float normalX;
+		/** The y component of the normal at the point hit */
+		private float normalY;
+		/** How far along the ray the hit is */
+		private float fraction;
+
+		/**
+		 * Cast the ray already set
+		 * 
+		 * @param mode
+		 *            The kind of raycast to run
+		 * @param hits
+		 *            The hits to fill when finding every body, otherwise
+		 *            null
+		 * @return The number of hits found
+		 */
+		int run(int mode, RaycastHit[] hits) {
+			this.mode = mode;
+			this.hits = hits;
+			count = 0;
+			body = null;
+			if ((start.x == end.x) && (start.y == end.y)) {
+				return 0;
+			}
+			jboxWorld.raycast(this, start, end);
+			this.hits = null;
+			return count;
+		}
+
+		/**
+		 * Copy the single body hit into a hit owned by the caller
+		 * 
+		 * @param hit
+		 *            The hit to fill, or null if it's not needed
+		 */
+		void fill(RaycastHit hit) {
+			if (hit != null) {
+				hit.set(body, x * PIXELS_PER_METER, y * PIXELS_PER_METER,
+						normalX, normalY, fraction);
+			}
+		}
+
+		@Override
+		public float reportFixture(Fixture fixture, Vec2 point, Vec2 normal,
+				float fraction) {
+			Body<?> hitBody = getBody(fixture);
+			if ((hitBody == null) || fixture.m_isSensor) {
+				// ignore the fixture and carry on
+				return -1;
+			}
+
+			if (mode == RAY_ALL) {
+				int index = count;
+				if (count == hits.length) {
+					// full, so only keep the hit if it's closer than the furthest
+					index = 0;
+					for (int i = 1; i < count; i++) {
+						if (hits[i].getFraction() > hits[index].getFraction()) {
+							index = i;
+						}
+					}
+					if (hits[index].getFraction() <= fraction) {
+						return 1;
+					}
+				} else {
+					count++;
+				}
+				if (hits[index] == null) {
+					hits[index] = new RaycastHit();
+				}
+				hits[index].set(hitBody, point.x * PIXELS_PER_METER, point.y
+						* PIXELS_PER_METER, normal.x, normal.y, fraction);
+				return 1;
+			}
+
+			body = hitBody;
+			x = point.x;
+			y = point.y;
+			normalX = normal.x;
+			normalY = normal.y;
+			this.fraction = fraction;
+			count = 1;
+			// clip the ray to the hit to find the closest, or stop at the first
+			return mode == RAY_ANY ? 0 : fraction;
+		}
+	}
+
+	/**
+	 * Find the bodies that have left the world bounds this step and apply the
+	 * out of bounds behavior to them. Only bodies that can have moved are
+	 * checked - awake, active, non-static bodies - along with static bodies
+	 * added and any body moved by hand since the last step, so the cost
+	 * follows the number of moving bodies rather than the size of the world.
+	 * Every body is checked once after the bounds are changed.
+	 */
+	private void resolveOutOfBounds() {
+		/*
+		 * Only continue if: a) out of bounds is defined, and b) either a
+		 * callback or a non-NONE out of bounds behavior is set
+		 */
+		if ((worldAABB == null) || (outOfBoundsBehavior == OutOfBoundsBehavior.NONE && outOfBoundsCallback == null)) {
+			return;
+		}
+
+		outOfBoundsBodies.clear();
+		for (int i = 0; i < bodyCount; i++) {
+			Body<?> body = bodies[i];
+			org.jbox2d.dynamics.Body jboxBody = body.getJBoxBody();
+			if (checkAllBounds || body.isBoundsCheckPending()
+					|| (jboxBody.isAwake() && jboxBody.getType() != BodyType.STATIC)) {
+				body.setBoundsCheckPending(false);
+				if (isOutOfBounds(jboxBody)) {
+					outOfBoundsBodies.add(body);
+				}
+			}
+		}
+		checkAllBounds = false;
+
+		if (outOfBoundsBodies.isEmpty()) {
+			return;
+		}
+		if (outOfBoundsCallback != null) {
+			boolean continueProcessing = outOfBoundsCallback
+					.reportBodies(outOfBoundsBodies);
+			if (!continueProcessing) {
+				return;
+			}
+		}
+		if (outOfBoundsBehavior != OutOfBoundsBehavior.NONE) {
+			for (int i = 0; i < outOfBoundsBodies.size(); i++) {
+				Body<?> body = outOfBoundsBodies.get(i);
+				switch (outOfBoundsBehavior) {
+				case DEACTIVATE:
+					body.jboxBody.setActive(false);
+					bodyDeactivated(body);
+					break;
+				case DESTROY:
+					if (body.isAttached()) {
+						remove(body);
+					}
+					break;
+				}
+			}
+		}
+		outOfBoundsBodies.clear();
+	}
+
+	/**
+	 * Note that a body has been added or moved by hand, so it's checked
+	 * against the world bounds at the next step and included in the next
+	 * export of moving transforms, even if it's static or asleep
+	 * 
+	 * @param body The body that has been moved
+	 */
+	void bodyMoved(Body<?> body) {
+		if (worldAABB != null) {
+			body.setBoundsCheckPending(true);
+		}
+		body.setExportPending(true);
+	}
+
+	/**
+	 * Note that a body has been deactivated, ending its overlaps with the
+	 * static sensors, or a static sensor's overlaps, as JBox2D ends the
+	 * contacts of the bodies it holds
+	 * 
+	 * @param body The body deactivated
+	 */
+	void bodyDeactivated(Body<?> body) {
+		sensorTracker.endOverlaps(body, bodies, bodyCount);
+	}
+
+	/**
+	 * Note that a static body has become or stopped being made only of
+	 * sensors, moving it in or out of the static sensors kept out of the step
+	 * 
+	 * @param body The body whose shapes have changed
+	 */
+	void sensorChanged(Body<?> body) {
+		boolean held = sensorTracker.holds(body);
+		if (held == body.getShape().isSensor()) {
+			return;
+		}
+		if (held) {
+			sensorTracker.endOverlaps(body, bodies, bodyCount);
+		}
+		body.recreate();
+	}
+
+	/**
+	 * Check if any part of an active body lies outside the world bounds
+	 * 
+	 * @param jboxBody
+	 *            The JBox2D body to check
+	 * @return True if the body is active and at least partly out of bounds
+	 */
+	private boolean isOutOfBounds(org.jbox2d.dynamics.Body jboxBody) {
+		if (!jboxBody.isActive()) {
+			return false;
+		}
+		for (Fixture fixture = jboxBody.getFixtureList(); fixture != null; fixture = fixture
+				.getNext()) {
+			fixture.getShape().computeAABB(boundsCheckAABB, jboxBody.getTransform());
+			// AABB.contains() in this version of JBox2D has its comparisons reversed
+			if ((boundsCheckAABB.lowerBound.x < worldAABB.lowerBound.x)
+					|| (boundsCheckAABB.lowerBound.y < worldAABB.lowerBound.y)
+					|| (boundsCheckAABB.upperBound.x > worldAABB.upperBound.x)
+					|| (boundsCheckAABB.upperBound.y > worldAABB.upperBound.y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add a listener to be notified of collisions
+	 * 
+	 * @param listener
+	 *            The listener to be notified of collisions
+	 */
+	public void addListener(WorldListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener that will no longer receive events
+	 * 
+	 * @param listener
+	 *            The listener to be removed
+	 */
+	public void removeListener(WorldListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Add a listener to be notified of bodies entering and leaving sensors
+	 * 
+	 * @see Body#setSensor(boolean)
+	 * @param listener
+	 *            The listener to be notified
+	 */
+	public void addSensorListener(SensorListener listener) {
+		sensorListeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener that will no longer be notified of sensor events
+	 * 
+	 * @param listener
+	 *            The listener to be removed
+	 */
+	public void removeSensorListener(SensorListener listener) {
+		sensorListeners.remove(listener);
+	}
+
+	/**
+	 * Watch a region of the world, notifying a listener as bodies enter and
+	 * leave it. A body is inside the region while its bounding box overlaps
+	 * it. Moving bodies are checked against the regions after each step, with
+	 * the regions held in a tree of their own, so the cost of each step
+	 * depends on the number of moving bodies and the regions they cross
+	 * rather than on the number of regions watched or the bodies sitting
+	 * inside them. Bodies already inside the region, and bodies added to the
+	 * world inside it later, are reported straight away.
+	 * 
+	 * Static bodies, and bodies moved while asleep, are only checked when
+	 * they're added to the world.
+	 * 
+	 * @param box
+	 *            The area to watch
+	 * @param listener
+	 *            The listener to be notified
+	 * @return The watched region
+	 */
+	public Region watchRegion(BoundingBox box, RegionListener listener) {
+		return watchRegion(box.lowerLeft.x, box.lowerLeft.y,
+				box.upperRight.x, box.upperRight.y, listener);
+	}
+
+	/**
+	 * Watch a region of the world, notifying a listener as bodies enter and
+	 * leave it
+	 * 
+	 * @see #watchRegion(BoundingBox, RegionListener)
+	 * @param x1
+	 *            x coordinate of one corner of the region
+	 * @param y1
+	 *            y coordinate of one corner of the region
+	 * @param x2
+	 *            x coordinate of the opposite corner of the region
+	 * @param y2
+	 *            y coordinate of the opposite corner of the region
+	 * @param listener
+	 *            The listener to be notified
+	 * @return The watched region
+	 */
+	public Region watchRegion(float x1, float y1, float x2, float y2,
+			RegionListener listener) {
+		Region region = new Region(x1, y1, x2, y2, listener);
+		regionTracker.watch(region);
+		// hold the entries back until the scan is done, so listeners can remove bodies
+		boolean wasStepping = stepping;
+		stepping = true;
+		try {
+			for (int i = 0; i < bodyCount; i++) {
+				regionTracker.track(bodies[i], region);
+			}
+		} finally {
+			stepping = wasStepping;
+		}
+		if (!stepping) {
+			fireSensorEvents();
+		}
+		return region;
+	}
+
+	/**
+	 * Stop watching a region. The bodies inside it aren't reported as
+	 * leaving, and any of its events still waiting to be reported are
+	 * dropped.
+	 * 
+	 * @param region
+	 *            The region to stop watching
+	 */
+	public void unwatchRegion(Region region) {
+		regionTracker.unwatch(region);
+	}
+
+	/**
+	 * Get the regions being watched
+	 * 
+	 * @return The regions being watched
+	 */
+	public List<Region> getRegions() {
+		return regionTracker.getRegions();
+	}
+
+	/**
+	 * Add an observer to the world. While the world has observers, bodies
+	 * further than the sleep margin from all of them are deactivated after
+	 * each step, and woken again once an observer comes within the wake
+	 * margin of them, so the cost of stepping follows what's near the
+	 * observers rather than the size of the world. Deactivated bodies keep
+	 * their velocities and carry on where they left off when woken.
+	 * 
+	 * Bodies deactivated by hand or by going out of bounds are left alone.
+	 * Bodies put to rest report themselves as {@link Body#isDormant()}, and a
+	 * body moved while resting is woken by observers coming near where it was
+	 * put to rest.
+	 * 
+	 * @see #setActivityMargins(float, float)
+	 * @param observer
+	 *            The observer to add
+	 */
+	public void addObserver(Observer observer) {
+		activityTracker.addObserver(observer);
+	}
+
+	/**
+	 * Remove an observer from the world. Once the last observer is removed
+	 * every body put to rest is woken.
+	 * 
+	 * @param observer
+	 *            The observer to remove
+	 */
+	public void removeObserver(Observer observer) {
+		activityTracker.removeObserver(observer);
+	}
+
+	/**
+	 * Get the observers of the world
+	 * 
+	 * @return The observers of the world
+	 */
+	public List<Observer> getObservers() {
+		return activityTracker.getObservers();
+	}
+
+	/**
+	 * Set the distances around the observers that control which bodies are
+	 * active. A gap between the two stops bodies near the edge being
+	 * deactivated and woken over and over. The defaults are 100 and 200
+	 * pixels.
+	 * 
+	 * @param wakeMargin
+	 *            The distance from an observer within which resting bodies
+	 *            are woken
+	 * @param sleepMargin
+	 *            The distance from every observer beyond which bodies are put
+	 *            to rest, at least the wake margin
+	 */
+	public void setActivityMargins(float wakeMargin, float sleepMargin) {
+		activityTracker.setMargins(wakeMargin, sleepMargin);
+	}
+
+	/**
+	 * Get the distance from an observer within which resting bodies are woken
+	 * 
+	 * @return The wake margin in pixels
+	 */
+	public float getWakeMargin() {
+		return activityTracker.getWakeMargin();
+	}
+
+	/**
+	 * Get the distance from every observer beyond which bodies are put to rest
+	 * 
+	 * @return The sleep margin in pixels
+	 */
+	public float getSleepMargin() {
+		return activityTracker.getSleepMargin();
+	}
+
+	/**
+	 * Get the number of bodies put to rest away from the observers
+	 * 
+	 * @return The number of dormant bodies
+	 */
+	public int getDormantBodyCount() {
+		return activityTracker.getDormantCount();
+	}
+
+	/**
+	 * Simulate bodies far from the observers at a reduced rate. Bodies further
+	 * than the far margin from every observer drop into a far tier. That tier
+	 * is stepped once every few ticks, with a time step that many times
+	 * longer and its own iterations. Bodies return to the full rate once
+	 * they're within the near margin of an observer. A gap between the two
+	 * margins stops bodies near the edge moving between the tiers over and
+	 * over. Bodies join a tier part way through the far tier's interval, so
+	 * a body changing tier may gain or lose part of an interval.
+	 * 
+	 * Far bodies keep moving, unlike the bodies beyond the sleep margin of
+	 * {@link #setActivityMargins(float, float)}, which are deactivated. To
+	 * keep things like conveyor belts working out of sight, set the activity
+	 * margins beyond the far margin, or to Float.POSITIVE_INFINITY to never
+	 * deactivate. Bodies touching across the tiers are drawn into each
+	 * other's steps. Forces applied to far bodies between their steps are
+	 * averaged over their next step. JBox2D limits how far a body moves in
+	 * one step, 2 meters by default, so bodies too fast to cover their
+	 * distance in the far tier's longer step stay at the full rate.
+	 * 
+	 * @see #setFarIterations(int, int)
+	 * @param nearMargin
+	 *            The distance from an observer within which bodies run at
+	 *            the full rate
+	 * @param farMargin
+	 *            The distance from every observer beyond which bodies drop
+	 *            to the far tier, at least the near margin
+	 * @param farInterval
+	 *            The number of ticks between steps of the far tier, 1 to run
+	 *            every body at the full rate
+	 */
+	public void setLevelOfDetail(float nearMargin, float farMargin, int farInterval) {
+		activityTracker.setLevelOfDetail(nearMargin, farMargin, farInterval);
+	}
+
+	/**
+	 * Set the number of iterations used by the velocity and position
+	 * constraint solvers when stepping the far tier. The default is 3 of
+	 * each.
+	 * 
+	 * @see #setLevelOfDetail(float, float, int)
+	 * @see #setIterations(int, int)
+	 * @param velocityIterations
+	 *            The number of iterations of the velocity solver
+	 * @param positionIterations
+	 *            The number of iterations of the position solver
+	 */
+	public void setFarIterations(int velocityIterations, int positionIterations) {
+		activityTracker.setFarIterations(velocityIterations, positionIterations);
+	}
+
+	/**
+	 * Get the number of ticks between steps of the far tier
+	 * 
+	 * @return The far tier's interval, 1 if every body runs at the full rate
+	 */
+	public int getFarInterval() {
+		return activityTracker.getFarInterval();
+	}
+
+	/**
+	 * Get the distance from an observer within which bodies run at the full
+	 * rate
+	 * 
+	 * @return The near margin in pixels
+	 */
+	public float getNearMargin() {
+		return activityTracker.getNearMargin();
+	}
+
+	/**
+	 * Get the distance from every observer beyond which bodies drop to the
+	 * far tier
+	 * 
+	 * @return The far margin in pixels
+	 */
+	public float getFarMargin() {
+		return activityTracker.getFarMargin();
+	}
+
+	/**
+	 * Get the number of iterations of the velocity solver used for the far
+	 * tier
+	 * 
+	 * @return The number of velocity iterations
+	 */
+	public int getFarVelocityIterations() {
+		return activityTracker.getFarVelocityIterations();
+	}
+
+	/**
+	 * Get the number of iterations of the position solver used for the far
+	 * tier
+	 * 
+	 * @return The number of position iterations
+	 */
+	public int getFarPositionIterations() {
+		return activityTracker.getFarPositionIterations();
+	}
+
+	/**
+	 * Get the number of bodies simulated at the full rate, which is every
+	 * body in the world that is neither in the far tier nor put to rest
+	 * 
+	 * @return The number of bodies in the near tier
+	 */
+	public int getNearBodyCount() {
+		return bodyCount - activityTracker.getFarCount() - activityTracker.getDormantCount();
+	}
+
+	/**
+	 * Get the number of bodies in the far tier, simulated at the reduced rate
+	 * 
+	 * @see #setLevelOfDetail(float, float, int)
+	 * @return The number of far bodies
+	 */
+	public int getFarBodyCount() {
+		return activityTracker.getFarCount();
+	}
+
+	/**
+	 * Stop managing a body put to rest, as it's being activated or
+	 * deactivated by hand
+	 * 
+	 * @param body
+	 *            The resting body
+	 */
+	void forgetDormant(Body<?> body) {
+		activityTracker.forget(body);
+	}
+
+	/**
+	 * Add a listener that listens for collisions on a particular body.
+	 * 
+	 * @param body
+	 *            body on which collisions should be detected
+	 * @param listener
+	 *            the listener to call
+	 */
+	public void addBodyListener(Body<?> body, WorldListener listener) {
+		List<WorldListener> listeners = bodyListeners.get(body);
+		if (listeners == null) {
+			listeners = new ArrayList<WorldListener>(2);
+			bodyListeners.put(body, listeners);
+		}
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Remove a listener that listens for collisions on a particular body
+	 * 
+	 * @see #addBodyListener(Body, WorldListener)
+	 * @param body
+	 * @param listener
+	 */
+	public void removeBodyListener(Body<?> body, WorldListener listener) {
+		List<WorldListener> listeners = bodyListeners.get(body);
+		if (listeners != null) {
+			listeners.remove(listener);
+			if (listeners.isEmpty()) {
+				bodyListeners.remove(body);
+			}
+		}
+	}
+
+	/**
+	 * Establish world boundaries centered at the origin and going in
+	 * half-widths and half-heights in horizontal and vertical directions
+	 * respectively.
+	 * 
+	 * @param width
+	 *            total width of the world
+	 * @param height
+	 *            total height of the world
+	 */
+	public void setBounds(float width, float height) {
+		setBounds(-width / 2, -height / 2, width / 2, height / 2);
+	}
+
+	/**
+	 * Establish world boundaries at the given coordinates.
+	 * 
+	 * @param x1
+	 *            x-coordinate of lower-left coordinate
+	 * @param y1
+	 *            y-coordinate of lower-left coordinate
+	 * @param x2
+	 *            x-coordinate of upper-right coordinate
+	 * @param y2
+	 *            y-coordinate of upper-right coordinate
+	 */
+	public void setBounds(float x1, float y1, float x2, float y2) {
+		worldAABB = new AABB(new Vec2(Math.min(x1, x2) * METERS_PER_PIXEL,
+				Math.min(y1, y2) * METERS_PER_PIXEL), new Vec2(Math.max(x1, x2)
+				* METERS_PER_PIXEL, Math.max(y1, y2) * METERS_PER_PIXEL));
+		checkAllBounds = true;
+	}
+
+	/**
+	 * Return a list of all the bodies at the given position. This checks a
+	 * one pixel box against the bounding boxes of the bodies' shapes, so it
+	 * can include bodies that don't actually cover the point.
+	 * 
+	 * @see #bodiesAt(float, float, Collection)
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @return list of bodies at provided coordinate
+	 */
+	public List<Body<?>> bodiesAt(float x, float y) {
+		return bodiesAt(x, y, x + 1f, y + 1f);
+	}
+
+	/**
+	 * Return a list of all the bodies whose shapes are within a given
+	 * distance of a position.
+	 * 
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param radius
+	 *            The distance from the position to search
+	 * @return list of bodies within the radius
+	 */
+	public List<Body<?>> bodiesAt(float x, float y, float radius) {
+		List<Body<?>> bodies = new ArrayList<Body<?>>();
+		bodiesAt(x, y, radius, bodies);
+		return bodies;
+	}
+
+	/**
+	 * Return a list of all bodies in or near the given box. Each body is
+	 * included once, if the bounding box of any of its shapes overlaps the
+	 * box.
+	 * 
+	 * @param x1
+	 *            x coordinate of one corner of the box
+	 * @param y1
+	 *            y coordinate of one corner of the box
+	 * @param x2
+	 *            x coordinate of the opposite corner of the box
+	 * @param y2
+	 *            y coordinate of the opposite corner of the box
+	 * @return list of bodies in or near the box
+	 */
+	public List<Body<?>> bodiesAt(float x1, float y1, float x2, float y2) {
+		List<Body<?>> bodies = new ArrayList<Body<?>>();
+		bodiesAt(x1, y1, x2, y2, false, bodies);
+		return bodies;
+	}
+
+	/**
+	 * Add the bodies whose shapes contain the given position to a collection
+	 * 
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param result
+	 *            The collection to add the bodies to
+	 * @return The number of bodies added
+	 */
+	public int bodiesAt(float x, float y, Collection<Body<?>> result) {
+		return queryPoint(x, y, null, result);
+	}
+
+	/**
+	 * Add the bodies whose shapes are within a given distance of a position
+	 * to a collection
+	 * 
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param radius
+	 *            The distance from the position to search
+	 * @param result
+	 *            The collection to add the bodies to
+	 * @return The number of bodies added
+	 */
+	public int bodiesAt(float x, float y, float radius, Collection<Body<?>> result) {
+		return queryRadius(x, y, radius, null, result);
+	}
+
+	/**
+	 * Add the bodies in a box to a collection
+	 * 
+	 * @param x1
+	 *            x coordinate of one corner of the box
+	 * @param y1
+	 *            y coordinate of one corner of the box
+	 * @param x2
+	 *            x coordinate of the opposite corner of the box
+	 * @param y2
+	 *            y coordinate of the opposite corner of the box
+	 * @param exact
+	 *            True if bodies should only be included if one of their
+	 *            shapes overlaps the box, false to include any body whose
+	 *            shapes' bounding boxes overlap it
+	 * @param result
+	 *            The collection to add the bodies to
+	 * @return The number of bodies added
+	 */
+	public int bodiesAt(float x1, float y1, float x2, float y2, boolean exact,
+			Collection<Body<?>> result) {
+		return queryBox(x1, y1, x2, y2, exact, null, result);
+	}
+
+	/**
+	 * Visit the bodies whose shapes contain the given position
+	 * 
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param visitor
+	 *            The visitor to report each body to
+	 * @return The number of bodies visited
+	 */
+	public int visitBodiesAt(float x, float y, BodyVisitor visitor) {
+		return queryPoint(x, y, visitor, null);
+	}
+
+	/**
+	 * Visit the bodies whose shapes are within a given distance of a position
+	 * 
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param radius
+	 *            The distance from the position to search
+	 * @param visitor
+	 *            The visitor to report each body to
+	 * @return The number of bodies visited
+	 */
+	public int visitBodiesAt(float x, float y, float radius, BodyVisitor visitor) {
+		return queryRadius(x, y, radius, visitor, null);
+	}
+
+	/**
+	 * Visit the bodies in a box
+	 * 
+	 * @param x1
+	 *            x coordinate of one corner of the box
+	 * @param y1
+	 *            y coordinate of one corner of the box
+	 * @param x2
+	 *            x coordinate of the opposite corner of the box
+	 * @param y2
+	 *            y coordinate of the opposite corner of the box
+	 * @param exact
+	 *            True if bodies should only be visited if one of their
+	 *            shapes overlaps the box, false to visit any body whose
+	 *            shapes' bounding boxes overlap it
+	 * @param visitor
+	 *            The visitor to report each body to
+	 * @return The number of bodies visited
+	 */
+	public int visitBodiesAt(float x1, float y1, float x2, float y2,
+			boolean exact, BodyVisitor visitor) {
+		return queryBox(x1, y1, x2, y2, exact, visitor, null);
+	}
+
+	/**
+	 * Get the query to run. JBox2D can only run one query at a time, so
+	 * queries can't be started from inside a visitor.
+	 * 
+	 * @return The query to run
+	 */
+	private BodyQuery startQuery() {
+		if (bodyQuery.running) {
+			throw new IllegalStateException("Can't query the world from inside a query");
 		}
+		return bodyQuery;
 	}
 
 	/**
-	 * Add a listener to be notified of collisions
+	 * Find the bodies containing a point
 	 * 
-	 * @param listener
-	 *            The listener to be notified of collisions
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param visitor
+	 *            The visitor to report bodies to, or null to fill the result
+	 * @param result
+	 *            The collection to fill when there's no visitor
+	 * @return The number of bodies found
 	 */
-	public void addListener(WorldListener listener) {
-		listeners.add(listener);
+	private int queryPoint(float x, float y, BodyVisitor visitor,
+			Collection<Body<?>> result) {
+		BodyQuery query = startQuery();
+		query.point.set(x * METERS_PER_PIXEL, y * METERS_PER_PIXEL);
+		query.aabb.lowerBound.set(query.point);
+		query.aabb.upperBound.set(query.point);
+		return query.run(QUERY_POINT, visitor, result);
 	}
 
 	/**
-	 * Remove a listener that will no longer receive events
+	 * Find the bodies within a distance of a point
 	 * 
-	 * @param listener
-	 *            The listener to be removed
+	 * @param x
+	 *            world x coordinate
+	 * @param y
+	 *            world y coordinate
+	 * @param radius
+	 *            The distance from the point to search
+	 * @param visitor
+	 *            The visitor to report bodies to, or null to fill the result
+	 * @param result
+	 *            The collection to fill when there's no visitor
+	 * @return The number of bodies found
 	 */
-	public void removeListener(WorldListener listener) {
-		listeners.remove(listener);
+	private int queryRadius(float x, float y, float radius,
+			BodyVisitor visitor, Collection<Body<?>> result) {
+		BodyQuery query = startQuery();
+		float r = Math.abs(radius) * METERS_PER_PIXEL;
+		query.point.set(x * METERS_PER_PIXEL, y * METERS_PER_PIXEL);
+		query.circle.m_p.setZero();
+		query.circle.m_radius = r;
+		query.transform.position.set(query.point);
+		query.aabb.lowerBound.set(query.point.x - r, query.point.y - r);
+		query.aabb.upperBound.set(query.point.x + r, query.point.y + r);
+		return query.run(QUERY_RADIUS, visitor, result);
 	}
 
 	/**
-	 * Add a listener that listens for collisions on a particular body.
+	 * Find the bodies in a box
 	 * 
-	 * @param body
-	 *            body on which collisions should be detected
-	 * @param listener
-	 *            the listener to call
+	 * @param x1
+	 *            x coordinate of one corner of the box
+	 * @param y1
+	 *            y coordinate of one corner of the box
+	 * @param x2
+	 *            x coordinate of the opposite corner of the box
+	 * @param y2
+	 *            y coordinate of the opposite corner of the box
+	 * @param exact
+	 *            True if the bodies' shapes should be tested against the box
+	 * @param visitor
+	 *            The visitor to report bodies to, or null to fill the result
+	 * @param result
+	 *            The collection to fill when there's no visitor
+	 * @return The number of bodies found
 	 */
-	public void addBodyListener(Body<?> body, WorldListener listener) {
-		Set<WorldListener> listeners = bodyListeners.get(body);
-		if (listeners == null) {
-			listeners = new HashSet<WorldListener>();
-			bodyListeners.put(body, listeners);
+	private int queryBox(float x1, float y1, float x2, float y2,
+			boolean exact, BodyVisitor visitor, Collection<Body<?>> result) {
+		BodyQuery query = startQuery();
+		float lowerX = Math.min(x1, x2) * METERS_PER_PIXEL;
+		float lowerY = Math.min(y1, y2) * METERS_PER_PIXEL;
+		float upperX = Math.max(x1, x2) * METERS_PER_PIXEL;
+		float upperY = Math.max(y1, y2) * METERS_PER_PIXEL;
+		query.aabb.lowerBound.set(lowerX, lowerY);
+		query.aabb.upperBound.set(upperX, upperY);
+		if (exact) {
+			query.box.setAsBox((upperX - lowerX) / 2, (upperY - lowerY) / 2);
+			query.transform.position.set((lowerX + upperX) / 2, (lowerY + upperY) / 2);
 		}
-		listeners.add(listener);
+		return query.run(exact ? QUERY_EXACT_BOX : QUERY_BOX, visitor, result);
 	}
 
 	/**
-	 * Remove a listener that listens for collisions on a particular body
+	 * Find the closest body on a line. Sensors aren't hit.
 	 * 
-	 * @see #addBodyListener(Body, WorldListener)
-	 * @param body
-	 * @param listener
+	 * @param x1
+	 *            The x coordinate of the start of the line
+	 * @param y1
+	 *            The y coordinate of the start of the line
+	 * @param x2
+	 *            The x coordinate of the end of the line
+	 * @param y2
+	 *            The y coordinate of the end of the line
+	 * @param hit
+	 *            The hit to fill in with the closest body, or null if only
+	 *            whether there's a body is needed
+	 * @return True if a body was hit
 	 */
-	public void removeBodyListener(Body<?> body, WorldListener listener) {
-		Set<WorldListener> listeners = bodyListeners.get(body);
-		if (listeners != null) {
-			listeners.remove(listener);
-			if (listeners.isEmpty()) {
-				bodyListeners.remove(body);
-			}
+	public boolean raycastClosest(float x1, float y1, float x2, float y2,
+			RaycastHit hit) {
+		setRay(x1, y1, x2, y2);
+		if (rayQuery.run(RAY_CLOSEST, null) == 0) {
+			return false;
 		}
+		rayQuery.fill(hit);
+		return true;
 	}
 
 	/**
-	 * Establish world boundaries centered at the origin and going in
-	 * half-widths and half-heights in horizontal and vertical directions
-	 * respectively.
+	 * Find any body on a line, stopping at the first one found. This is the
+	 * cheapest raycast, for line of sight checks where which body blocks the
+	 * line doesn't matter. Sensors aren't hit.
 	 * 
-	 * @param width
-	 *            total width of the world
-	 * @param height
-	 *            total height of the world
+	 * @param x1
+	 *            The x coordinate of the start of the line
+	 * @param y1
+	 *            The y coordinate of the start of the line
+	 * @param x2
+	 *            The x coordinate of the end of the line
+	 * @param y2
+	 *            The y coordinate of the end of the line
+	 * @param hit
+	 *            The hit to fill in with the body found, or null if only
+	 *            whether there's a body is needed
+	 * @return True if a body was hit
 	 */
-	public void setBounds(float width, float height) {
-		setBounds(-width / 2, -height / 2, width / 2, height / 2);
+	public boolean raycastAny(float x1, float y1, float x2, float y2,
+			RaycastHit hit) {
+		setRay(x1, y1, x2, y2);
+		if (rayQuery.run(RAY_ANY, null) == 0) {
+			return false;
+		}
+		rayQuery.fill(hit);
+		return true;
 	}
 
 	/**
-	 * Establish world boundaries at the given coordinates.
+	 * Find every shape on a line, closest first. A body made of several
+	 * shapes may be hit more than once, and sensors aren't hit. If there are
+	 * more hits than room in the array the closest are kept. Empty entries in the array are filled
+	 * with new hits, so passing the same array each time doesn't allocate.
 	 * 
 	 * @param x1
-	 *            x-coordinate of lower-left coordinate
+	 *            The x coordinate of the start of the line
 	 * @param y1
-	 *            y-coordinate of lower-left coordinate
+	 *            The y coordinate of the start of the line
 	 * @param x2
-	 *            x-coordinate of upper-right coordinate
+	 *            The x coordinate of the end of the line
 	 * @param y2
-	 *            y-coordinate of upper-right coordinate
+	 *            The y coordinate of the end of the line
+	 * @param hits
+	 *            The hits to fill in
+	 * @return The number of hits filled in
 	 */
-	public void setBounds(float x1, float y1, float x2, float y2) {
-		worldAABB = new AABB(new Vec2(x1 * METERS_PER_PIXEL, y1
-				* METERS_PER_PIXEL), new Vec2(x2 * METERS_PER_PIXEL, y2
-				* METERS_PER_PIXEL));
-		outOfBoundsRegions = new AABB[] {
-				// everything below-left and directly left of worldAABB
-				new AABB(new Vec2(Float.MIN_VALUE, Float.MIN_VALUE), new Vec2(
-						x1, y2)),
-				// everything above-left and directly above worldAABB
-				new AABB(new Vec2(Float.MIN_VALUE, y2), new Vec2(x2,
-						Float.MAX_VALUE)),
-				// everything above-right and directly right of worldAABB
-				new AABB(new Vec2(x2, y1), new Vec2(Float.MAX_VALUE,
-						Float.MAX_VALUE)),
-				// everything below-right and directly below worldAABB
-				new AABB(new Vec2(x1, Float.MIN_VALUE), new Vec2(
-						Float.MAX_VALUE, y1)) };
-	}
-
-	/**
-	 * Return a list of all the bodies at the given position.
+	public int raycastAll(float x1, float y1, float x2, float y2,
+			RaycastHit[] hits) {
+		if (hits.length == 0) {
+			return 0;
+		}
+		setRay(x1, y1, x2, y2);
+		int count = rayQuery.run(RAY_ALL, hits);
+		// JBox2D reports hits in tree order, so sort the few found by distance
+		for (int i = 1; i < count; i++) {
+			RaycastHit hit = hits[i];
+			int j = i - 1;
+			while ((j >= 0) && (hits[j].getFraction() > hit.getFraction())) {
+				hits[j + 1] = hits[j];
+				j--;
+			}
+			hits[j + 1] = hit;
+		}
+		return count;
+	}
+
+	/**
+	 * Cast a batch of rays, finding the closest body on each. Rays are given
+	 * as an origin and a direction whose length is the length of the ray,
+	 * both as interleaved x and y pairs in pixels. Sensors aren't hit.
 	 * 
-	 * @param x
-	 *            world x coordinate
-	 * @param y
-	 *            world y coordinate
-	 * @return list of bodies at provided coordinate
+	 * @param origins
+	 *            The start of each ray, x then y
+	 * @param directions
+	 *            The direction and length of each ray, x then y
+	 * @param count
+	 *            The number of rays to cast
+	 * @param bodyIds
+	 *            Filled with the id of the body each ray hit, or -1 if it
+	 *            hit nothing
+	 * @param points
+	 *            Filled with the point each ray hit as x then y, or null if
+	 *            not needed. Left untouched for rays that hit nothing.
+	 * @param normals
+	 *            Filled with the surface normal at the point each ray hit as
+	 *            x then y, or null if not needed. Left untouched for rays
+	 *            that hit nothing.
+	 * @return The number of rays that hit a body
 	 */
-	public List<Body<?>> bodiesAt(float x, float y) {
-		return bodiesAt(x, y, x + 1f, y + 1f);
+	public int raycastClosest(float[] origins, float[] directions, int count,
+			int[] bodyIds, float[] points, float[] normals) {
+		return raycastBatch(RAY_CLOSEST, origins, directions, count, bodyIds,
+				points, normals);
 	}
 
-	// public List<Body<?>> bodiesAt(float x, float y, float radius) {
-	// List<Body<?>> bodies = bodiesAt(x - radius, y - radius, x + radius, y
-	// + radius);
-	// Iterator<Body<?>> it = bodies.iterator();
-	// while (it.hasNext()) {
-	// Body<?> body = it.next();
-	// if (Math.hypot(x - body.getX(), y - body.getY()) > radius) {
-	// it.remove();
-	// }
-	// }
-	// return bodies;
-	// }
+	/**
+	 * Cast a batch of rays, finding whether each one hits any body. This is
+	 * the cheapest batch, for line of sight checks.
+	 * 
+	 * @see #raycastClosest(float[], float[], int, int[], float[], float[])
+	 * @param origins
+	 *            The start of each ray, x then y
+	 * @param directions
+	 *            The direction and length of each ray, x then y
+	 * @param count
+	 *            The number of rays to cast
+	 * @param bodyIds
+	 *            Filled with the id of a body each ray hit, or -1 if it hit
+	 *            nothing
+	 * @return The number of rays that hit a body
+	 */
+	public int raycastAny(float[] origins, float[] directions, int count,
+			int[] bodyIds) {
+		return raycastBatch(RAY_ANY, origins, directions, count, bodyIds,
+				null, null);
+	}
 
 	/**
-	 * Return a list of all bodies in or near the given box.
+	 * Cast a batch of rays
+	 * 
+	 * @param mode
+	 *            The kind of raycast to run for each ray
+	 * @param origins
+	 *            The start of each ray, x then y
+	 * @param directions
+	 *            The direction and length of each ray, x then y
+	 * @param count
+	 *            The number of rays to cast
+	 * @param bodyIds
+	 *            Filled with the id of the body each ray hit, or -1
+	 * @param points
+	 *            Filled with the point each ray hit, or null
+	 * @param normals
+	 *            Filled with the normal at the point each ray hit, or null
+	 * @return The number of rays that hit a body
 	 */
-	public List<Body<?>> bodiesAt(float x1, float y1, float x2, float y2) {
-		float lowerX, upperX, lowerY, upperY;
-		if (x1 < x2) {
-			lowerX = x1 * METERS_PER_PIXEL;
-			upperX = x2 * METERS_PER_PIXEL;
-		} else {
-			lowerX = x2 * METERS_PER_PIXEL;
-			upperX = x1 * METERS_PER_PIXEL;
+	private int raycastBatch(int mode, float[] origins, float[] directions,
+			int count, int[] bodyIds, float[] points, float[] normals) {
+		if ((origins.length < count * 2) || (directions.length < count * 2)
+				|| (bodyIds.length < count)
+				|| ((points != null) && (points.length < count * 2))
+				|| ((normals != null) && (normals.length < count * 2))) {
+			throw new IllegalArgumentException("Arrays too small for " + count + " rays");
 		}
-		if (y1 < y2) {
-			lowerY = y1 * METERS_PER_PIXEL;
-			upperY = y2 * METERS_PER_PIXEL;
-		} else {
-			lowerY = y2 * METERS_PER_PIXEL;
-			upperY = y1 * METERS_PER_PIXEL;
+		int hit = 0;
+		for (int i = 0; i < count; i++) {
+			float x = origins[i * 2];
+			float y = origins[(i * 2) + 1];
+			setRay(x, y, x + directions[i * 2], y + directions[(i * 2) + 1]);
+			if (rayQuery.run(mode, null) == 0) {
+				bodyIds[i] = -1;
+				continue;
+			}
+			hit++;
+			bodyIds[i] = rayQuery.body.getId();
+			if (points != null) {
+				points[i * 2] = rayQuery.x * PIXELS_PER_METER;
+				points[(i * 2) + 1] = rayQuery.y * PIXELS_PER_METER;
+			}
+			if (normals != null) {
+				normals[i * 2] = rayQuery.normalX;
+				normals[(i * 2) + 1] = rayQuery.normalY;
+			}
 		}
+		return hit;
+	}
 
-		AABB aabb = new AABB(new Vec2(lowerX, lowerY), new Vec2(upperX, upperY));
-		final List<Body<?>> bodies = new LinkedList<Body<?>>();
-		jboxWorld.queryAABB(new BodyQueryCallbackHelper(bodies), aabb);
-		return bodies;
+	/**
+	 * Set the ray to be cast next
+	 * 
+	 * @param x1
+	 *            The x coordinate of the start of the ray in pixels
+	 * @param y1
+	 *            The y coordinate of the start of the ray in pixels
+	 * @param x2
+	 *            The x coordinate of the end of the ray in pixels
+	 * @param y2
+	 *            The y coordinate of the end of the ray in pixels
+	 */
+	private void setRay(float x1, float y1, float x2, float y2) {
+		rayQuery.start.set(x1 * METERS_PER_PIXEL, y1 * METERS_PER_PIXEL);
+		rayQuery.end.set(x2 * METERS_PER_PIXEL, y2 * METERS_PER_PIXEL);
 	}
 
 	/**
@@ -392,7 +2489,9 @@ public class World {
 	 * also configures a callback to run before the OutOfBoundsBehavior is
 	 * enforced. The callback can modify its argument to change which bodies
 	 * have the behavior applied, i.e. so that certain bodies aren't
-	 * deactivated, destroyed, etc.
+	 * deactivated, destroyed, etc. The callback is only run on steps where
+	 * some body has gone out of bounds, and each body is reported at most once
+	 * per step.
 	 * 
 	 * @param behavior
 	 * @param callback
@@ -403,10 +2502,29 @@ public class World {
 		outOfBoundsCallback = callback;
 	}
 
+	/**
+	 * Get the "what happens" behavior when a body exits the world boundaries.
+	 * 
+	 * @return The current behavior
+	 */
+	public OutOfBoundsBehavior getOutOfBoundsBehavior() {
+		return outOfBoundsBehavior;
+	}
+
+	/**
+	 * Get the bounds of the world
+	 * 
+	 * @return The bounds of the world in meters, or null if there are none
+	 */
+	AABB getWorldAABB() {
+		return worldAABB;
+	}
+
 	public interface OutOfBoundsCallback {
 		/**
 		 * Bodies that are about to be processed -- you can modify this
-		 * collection.
+		 * collection. It's reused by the world, so don't hold on to it after
+		 * returning.
 		 * 
 		 * @param bodies
 		 * @return false to abort regular OutOfBounds behavior
@@ -419,29 +2537,111 @@ public class World {
 	}
 
 	/**
-	 * Fire a notification to all listeners that a collision has occured
+	 * Set the number of iterations used by the velocity and position
+	 * constraint solvers separately
+	 * 
+	 * @param velocityIterations
+	 *            The number of iterations of the velocity solver
+	 * @param positionIterations
+	 *            The number of iterations of the position solver
+	 */
+	public void setIterations(int velocityIterations, int positionIterations) {
+		this.velocityIterations = velocityIterations;
+		this.positionIterations = positionIterations;
+	}
+
+	/**
+	 * Get the number of iterations used by the velocity constraint solver
+	 * 
+	 * @return The number of iterations of the velocity solver
+	 */
+	public int getVelocityIterations() {
+		return velocityIterations;
+	}
+
+	/**
+	 * Get the number of iterations used by the position constraint solver
+	 * 
+	 * @return The number of iterations of the position solver
+	 */
+	public int getPositionIterations() {
+		return positionIterations;
+	}
+
+	/**
+	 * Indicate whether collision events should be dispatched from a pool. When
+	 * pooled, the {@link CollisionEvent} and {@link FizzyContact} passed to
+	 * listeners are reused for every event, so they're only valid for the
+	 * duration of the callback and must not be kept. Use
+	 * {@link FizzyContact#getContactX(int)} and
+	 * {@link FizzyContact#getContactY(int)} to read contact points without
+	 * allocating. Defaults to false.
+	 * 
+	 * @param pooled
+	 *            True if events should be reused between callbacks
+	 */
+	public void setPooledEvents(boolean pooled) {
+		pooledEvents = pooled;
+	}
+
+	/**
+	 * Check whether collision events are dispatched from a pool
+	 * 
+	 * @see #setPooledEvents(boolean)
+	 * @return True if events are reused between callbacks
+	 */
+	public boolean isPooledEvents() {
+		return pooledEvents;
+	}
+
+	/**
+	 * Get an event describing a collision, either newly created or from the
+	 * pool depending on the dispatch mode
 	 * 
 	 * @param bodyA
 	 *            The first body in the collision
 	 * @param bodyB
 	 *            The second body in the collision
+	 * @param contact
+	 *            The JBox2D contact between the bodies, or null if there is
+	 *            none
+	 * @return The event to dispatch
+	 */
+	private CollisionEvent createEvent(Body<?> bodyA, Body<?> bodyB,
+			Contact contact) {
+		if (pooledEvents) {
+			FizzyContact fizzyContact = null;
+			if (contact != null) {
+				pooledContact.set(contact);
+				fizzyContact = pooledContact;
+			}
+			pooledEvent.set(bodyA, bodyB, fizzyContact);
+			return pooledEvent;
+		}
+		return new CollisionEvent(bodyA, bodyB,
+				contact == null ? null : new FizzyContact(contact));
+	}
+
+	/**
+	 * Fire a notification to all listeners that a collision has occured
+	 * 
+	 * @param event
+	 *            The event describing the collision
 	 */
-	private void fireCollision(Body<?> bodyA, Body<?> bodyB,
-			FizzyContact contact) {
-		CollisionEvent event = new CollisionEvent(bodyA, bodyB, contact);
-		for (WorldListener listener : listeners) {
-			listener.collided(event);
+	private void fireCollision(CollisionEvent event) {
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).collided(event);
 		}
-		Collection<WorldListener> moreListeners = bodyListeners.get(bodyA);
+		List<WorldListener> moreListeners = bodyListeners.get(event.getBodyA());
 		if (moreListeners != null) {
-			for (WorldListener listener : moreListeners) {
-				listener.collided(event);
+			for (int i = 0; i < moreListeners.size(); i++) {
+				moreListeners.get(i).collided(event);
 			}
 		}
-		moreListeners = bodyListeners.get(bodyB);
+		moreListeners = bodyListeners.get(event.getBodyB());
 		if (moreListeners != null) {
-			for (WorldListener listener : moreListeners) {
-				listener.collided(event);
+			for (int i = 0; i < moreListeners.size(); i++) {
+				moreListeners.get(i).collided(event);
 			}
 		}
 	}
@@ -449,28 +2649,176 @@ public class World {
 	/**
 	 * Fire a notification to all listeners that a separation has occured
 	 * 
+	 * @param event
+	 *            The event describing the separation
+	 */
+	private void fireSeparated(CollisionEvent event) {
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).separated(event);
+		}
+		List<WorldListener> moreListeners = bodyListeners.get(event.getBodyA());
+		if (moreListeners != null) {
+			for (int i = 0; i < moreListeners.size(); i++) {
+				moreListeners.get(i).separated(event);
+			}
+		}
+		moreListeners = bodyListeners.get(event.getBodyB());
+		if (moreListeners != null) {
+			for (int i = 0; i < moreListeners.size(); i++) {
+				moreListeners.get(i).separated(event);
+			}
+		}
+	}
+
+	/**
+	 * Notify the listeners of a collision or separation found outside the
+	 * world's own contacts, e.g. across the seam between two worlds
+	 * 
 	 * @param bodyA
-	 *            The first body in the separation
+	 *            The first body in the collision
 	 * @param bodyB
-	 *            The second body in the separation
+	 *            The second body in the collision
+	 * @param collided
+	 *            True if the bodies collided, false if they separated
+	 * @param notifyWorldListeners
+	 *            True if the listeners for every collision in the world
+	 *            should be told as well as those for the bodies
 	 */
-	private void fireSeparated(Body<?> bodyA, Body<?> bodyB,
-			FizzyContact contact) {
-		CollisionEvent event = new CollisionEvent(bodyA, bodyB, contact);
-		for (WorldListener listener : listeners) {
-			listener.separated(event);
+	void fireContact(Body<?> bodyA, Body<?> bodyB, boolean collided, boolean notifyWorldListeners) {
+		CollisionEvent event = createEvent(bodyA, bodyB, null);
+		if (notifyWorldListeners) {
+			if (collided) {
+				fireCollision(event);
+			} else {
+				fireSeparated(event);
+			}
+			return;
+		}
+		for (int b = 0; b < 2; b++) {
+			List<WorldListener> moreListeners = bodyListeners.get(b == 0 ? bodyA : bodyB);
+			if (moreListeners == null) {
+				continue;
+			}
+			for (int i = 0; i < moreListeners.size(); i++) {
+				if (collided) {
+					moreListeners.get(i).collided(event);
+				} else {
+					moreListeners.get(i).separated(event);
+				}
+			}
 		}
+	}
 
-		Collection<WorldListener> moreListeners = bodyListeners.get(bodyA);
-		if (moreListeners != null) {
-			for (WorldListener listener : moreListeners) {
-				listener.separated(event);
+	/**
+	 * Set the listener told of contacts involving JBox2D bodies that Fizzy
+	 * doesn't own, such as the ghosts a {@link ShardedWorld} mirrors its
+	 * bodies with. It's called from the thread stepping the world, and for
+	 * pre-solve on every contact.
+	 * 
+	 * @param listener
+	 *            The listener to notify, or null to ignore those contacts
+	 */
+	void setSeamListener(ContactListener listener) {
+		seamListener = listener;
+	}
+
+	/**
+	 * Record a change in the overlap between a sensor and another body,
+	 * reporting it if it's the first fixture of the other body to enter the
+	 * sensor or the last to leave
+	 * 
+	 * @param sensor
+	 *            The body owning the sensor
+	 * @param other
+	 *            The body overlapping it
+	 * @param entered
+	 *            True if the overlap began, false if it ended
+	 */
+	void sensorOverlap(Body<?> sensor, Body<?> other, boolean entered) {
+		if (entered) {
+			if (sensor.overlap(other) != 1) {
+				return;
 			}
+		} else if (!sensor.isOverlapping(other) || (sensor.unoverlap(other) != 0)) {
+			return;
 		}
-		moreListeners = bodyListeners.get(bodyB);
-		if (moreListeners != null) {
-			for (WorldListener listener : moreListeners) {
-				listener.separated(event);
+		if (sensorListeners.isEmpty()) {
+			return;
+		}
+		queueOverlap(sensor, other, entered);
+	}
+
+	/**
+	 * Report an overlap event, or queue it until the step is complete if the
+	 * world is stepping
+	 * 
+	 * @param source
+	 *            The sensor body or region overlapped
+	 * @param other
+	 *            The body overlapping it
+	 * @param entered
+	 *            True if the overlap began, false if it ended
+	 */
+	void queueOverlap(Object source, Body<?> other, boolean entered) {
+		if (!stepping) {
+			fireSensorEvent(source, other, entered);
+			return;
+		}
+		if (sensorEventCount == sensorEntries.length) {
+			Object[] grownEvents = new Object[sensorEvents.length * 2];
+			System.arraycopy(sensorEvents, 0, grownEvents, 0, sensorEvents.length);
+			sensorEvents = grownEvents;
+			boolean[] grownEntries = new boolean[sensorEntries.length * 2];
+			System.arraycopy(sensorEntries, 0, grownEntries, 0, sensorEntries.length);
+			sensorEntries = grownEntries;
+		}
+		sensorEvents[sensorEventCount * 2] = source;
+		sensorEvents[(sensorEventCount * 2) + 1] = other;
+		sensorEntries[sensorEventCount++] = entered;
+	}
+
+	/**
+	 * Report the sensor and region events found during the step
+	 */
+	private void fireSensorEvents() {
+		for (int i = 0; i < sensorEventCount; i++) {
+			fireSensorEvent(sensorEvents[i * 2], (Body<?>) sensorEvents[(i * 2) + 1], sensorEntries[i]);
+		}
+		Arrays.fill(sensorEvents, 0, sensorEventCount * 2, null);
+		sensorEventCount = 0;
+	}
+
+	/**
+	 * Notify the listeners of a body entering or leaving a sensor or region
+	 * 
+	 * @param source
+	 *            The body owning the sensor or the region
+	 * @param other
+	 *            The body overlapping it
+	 * @param entered
+	 *            True if the body entered, false if it left
+	 */
+	private void fireSensorEvent(Object source, Body<?> other, boolean entered) {
+		if (source instanceof Region) {
+			Region region = (Region) source;
+			if (!region.isWatched() || (region.contains(other) != entered)) {
+				// the region or body has changed since the event was found
+				return;
+			}
+			if (entered) {
+				region.getListener().entered(region, other);
+			} else {
+				region.getListener().exited(region, other);
+			}
+			return;
+		}
+
+		Body<?> sensor = (Body<?>) source;
+		for (int i = 0; i < sensorListeners.size(); i++) {
+			if (entered) {
+				sensorListeners.get(i).entered(sensor, other);
+			} else {
+				sensorListeners.get(i).exited(sensor, other);
 			}
 		}
 	}
@@ -485,35 +2833,67 @@ public class World {
 
 		@Override
 		public void beginContact(Contact contact) {
-			Body<?> bodyA = shapeMap.get(contact.getFixtureA().getShape());
-			Body<?> bodyB = shapeMap.get(contact.getFixtureB().getShape());
+			Body<?> bodyA = getBody(contact.m_fixtureA);
+			Body<?> bodyB = getBody(contact.m_fixtureB);
 
 			if ((bodyA != null) && (bodyB != null)) {
-				bodyA.touch(bodyB);
+				if (contact.m_fixtureA.m_isSensor || contact.m_fixtureB.m_isSensor) {
+					// sensors have no contact points, so no collision event is made
+					if (contact.m_fixtureA.m_isSensor) {
+						sensorOverlap(bodyA, bodyB, true);
+					}
+					if (contact.m_fixtureB.m_isSensor) {
+						sensorOverlap(bodyB, bodyA, true);
+					}
+					return;
+				}
 				bodyB.touch(bodyA);
-				if (bodyA.touchCount(bodyB) == 1) {
-					fireCollision(bodyA, bodyB, new FizzyContact(contact));
+				if (bodyA.touch(bodyB) == 1) {
+					if (deferredEvents) {
+						eventQueue.addCollision(bodyA, bodyB,
+								contact.getManifold().pointCount);
+					} else {
+						fireCollision(createEvent(bodyA, bodyB, contact));
+					}
 				}
+			} else if (seamListener != null) {
+				seamListener.beginContact(contact);
 			}
 		}
 
 		@Override
 		public void endContact(Contact contact) {
-			Body<?> bodyA = shapeMap.get(contact.getFixtureA().getShape());
-			Body<?> bodyB = shapeMap.get(contact.getFixtureB().getShape());
+			Body<?> bodyA = getBody(contact.m_fixtureA);
+			Body<?> bodyB = getBody(contact.m_fixtureB);
 
 			if ((bodyA != null) && (bodyB != null)) {
-				bodyA.untouch(bodyB);
+				if (contact.m_fixtureA.m_isSensor || contact.m_fixtureB.m_isSensor) {
+					if (contact.m_fixtureA.m_isSensor) {
+						sensorOverlap(bodyA, bodyB, false);
+					}
+					if (contact.m_fixtureB.m_isSensor) {
+						sensorOverlap(bodyB, bodyA, false);
+					}
+					return;
+				}
 				bodyB.untouch(bodyA);
-
-				if (bodyA.touchCount(bodyB) == 0) {
-					fireSeparated(bodyA, bodyB, new FizzyContact(contact));
+				if (bodyA.untouch(bodyB) == 0) {
+					if (deferredEvents) {
+						eventQueue.addSeparation(bodyA, bodyB);
+					} else {
+						fireSeparated(createEvent(bodyA, bodyB, contact));
+					}
 				}
+			} else if (seamListener != null) {
+				seamListener.endContact(contact);
 			}
 		}
 
 		@Override
 		public void preSolve(Contact contact, Manifold oldManifold) {
+			if (seamListener != null) {
+				seamListener.preSolve(contact, oldManifold);
+			}
 		}
 
 		@Override
@@ -522,6 +2902,100 @@ public class World {
 
 	}
 
+	/**
+	 * Set whether two collision layers collide with each other. A layer is
+	 * one of the 32 collision categories, given by the index of its bit, see
+	 * {@link Shape#setCollisionCategories(int)}. Every layer collides with
+	 * every other to start with. The matrix applies on top of each shape's own
+	 * mask and group, so pairs need to pass both, and pairs that fail are
+	 * rejected before JBox2D creates a contact for them.
+	 * 
+	 * Contacts already made between the layers are filtered again at the next
+	 * step. JBox2D only looks for new pairs when bodies move, so letting two
+	 * layers collide again doesn't pick up pairs that overlap and are resting
+	 * until one of them moves.
+	 * 
+	 * @param layerA
+	 *            The index of the first layer, 0 to 31
+	 * @param layerB
+	 *            The index of the second layer, 0 to 31
+	 * @param collide
+	 *            True if the layers should collide
+	 */
+	public void setLayersCollide(int layerA, int layerB, boolean collide) {
+		if ((layerA < 0) || (layerA > 31) || (layerB < 0) || (layerB > 31)) {
+			throw new IllegalArgumentException("Layers are 0 to 31: " + layerA + ", " + layerB);
+		}
+		if (layerMatrix == null) {
+			layerMatrix = new int[32];
+			Arrays.fill(layerMatrix, -1);
+			contactFilter = new LayerContactFilter();
+			jboxWorld.setContactFilter(contactFilter);
+		}
+		if (collide) {
+			layerMatrix[layerA] |= 1 << layerB;
+			layerMatrix[layerB] |= 1 << layerA;
+		} else {
+			layerMatrix[layerA] &= ~(1 << layerB);
+			layerMatrix[layerB] &= ~(1 << layerA);
+		}
+
+		int changed = (1 << layerA) | (1 << layerB);
+		for (Contact contact = jboxWorld.getContactList(); contact != null; contact = contact.getNext()) {
+			if (((contact.m_fixtureA.m_filter.categoryBits & changed) != 0)
+					&& ((contact.m_fixtureB.m_filter.categoryBits & changed) != 0)) {
+				contact.flagForFiltering();
+			}
+		}
+	}
+
+	/**
+	 * Check whether two collision layers collide with each other
+	 * 
+	 * @param layerA
+	 *            The index of the first layer, 0 to 31
+	 * @param layerB
+	 *            The index of the second layer, 0 to 31
+	 * @return True if the layers collide
+	 */
+	public boolean getLayersCollide(int layerA, int layerB) {
+		if (layerMatrix == null) {
+			return true;
+		}
+		return (layerMatrix[layerA] & (1 << layerB)) != 0;
+	}
+
+	/**
+	 * Get the collision layer matrix
+	 * 
+	 * @return The layers each layer collides with as a bit mask, indexed by
+	 *         layer, or null if every layer collides with every other
+	 */
+	int[] getLayerMatrix() {
+		return layerMatrix;
+	}
+
+	/**
+	 * The contact filter applying the layer matrix as well as JBox2D's usual
+	 * category, mask and group filtering
+	 */
+	private class LayerContactFilter extends ContactFilter {
+		@Override
+		public boolean shouldCollide(Fixture fixtureA, Fixture fixtureB) {
+			if (!super.shouldCollide(fixtureA, fixtureB)) {
+				return false;
+			}
+			int categoriesA = fixtureA.m_filter.categoryBits;
+			int collides = 0;
+			while (categoriesA != 0) {
+				int layer = Integer.numberOfTrailingZeros(categoriesA);
+				collides |= layerMatrix[layer];
+				categoriesA &= categoriesA - 1;
+			}
+			return (collides & fixtureB.m_filter.categoryBits) != 0;
+		}
+	}
+
 	/**
 	 * Sets the world gravity.
 	 * 
@@ -548,6 +3022,40 @@ public class World {
 		jboxWorld.setGravity(new Vec2(xGravity, yGravity));
 	}
 
+	/**
+	 * Write a snapshot of the world to a channel. The snapshot holds the
+	 * world's settings and every body's shape, material, transform, velocity
+	 * and flags, in a compact versioned binary format. Listeners, callbacks
+	 * and user data aren't included.
+	 * 
+	 * @see #readSnapshot(ReadableByteChannel)
+	 * @param channel
+	 *            The channel to write the snapshot to
+	 * @throws IOException
+	 *             Indicates a failure to write to the channel
+	 */
+	public void writeSnapshot(WritableByteChannel channel) throws IOException {
+		new WorldSnapshot().write(this, channel);
+	}
+
+	/**
+	 * Create a new world from a snapshot written by
+	 * {@link #writeSnapshot(WritableByteChannel)}. Bodies are restored in the
+	 * same order, so {@link #getBody(int)} returns the same bodies as it did
+	 * in the original world.
+	 * 
+	 * @param channel
+	 *            The channel to read the snapshot from
+	 * @return The restored world
+	 * @throws IOException
+	 *             Indicates a failure to read from the channel or a snapshot
+	 *             that isn't valid
+	 */
+	public static World readSnapshot(ReadableByteChannel channel)
+			throws IOException {
+		return new WorldSnapshot().read(channel);
+	}
+
 	/** returns the scaling between meters and pixels */
 	public static float getPixelsPerMeter() {
 		return PIXELS_PER_METER;
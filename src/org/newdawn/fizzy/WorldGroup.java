@@ -0,0 +1,323 @@
+package org.newdawn.fizzy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A set of independent worlds that are stepped together, in parallel, on a
+ * pool of threads. Each call to {@link #update(float)} or
+ * {@link #advance(float)} is one tick: every world is stepped exactly once,
+ * as its own task, and the call doesn't return until all of them are done.
+ *
+ * A world is only ever stepped by one thread at a time, so listeners are
+ * notified on the thread stepping their world and don't need to be thread
+ * safe unless they're shared between worlds. Worlds must not be modified from
+ * other threads while a tick is in progress.
+ *
+ * Tasks are taken from a shared queue by whichever thread is free, so a heavy
+ * world only ever occupies one thread while the others work through the rest.
+ * Each tick the worlds are queued heaviest first, based on how long they took
+ * last tick, so the slowest world can't be started last and hold up the whole
+ * tick.
+ *
+ * If worlds fail during a tick, the tick still waits for every world and
+ * then throws the first failure. The failures of any other worlds that
+ * tick are logged, as they can't be attached to it before Java 7.
+ */
+public class WorldGroup {
+	/** The log the failures that can't be thrown are written to */
+	private static final Logger LOG = Logger.getLogger(WorldGroup.class.getName());
+
+	/** The worlds in this group */
+	private final List<World> worlds = new ArrayList<World>();
+	/** The task stepping each world, in the same order as the worlds */
+	private final List<StepTask> tasks = new ArrayList<StepTask>();
+	/** The tasks sorted heaviest first, rebuilt each tick */
+	private StepTask[] schedule = new StepTask[0];
+	/** The executor running the tasks */
+	private final ExecutorService executor;
+	/** True if the executor was created by this group and should be shut down with it */
+	private final boolean ownsExecutor;
+	/** The latch the tasks count down as each world finishes */
+	private volatile CountDownLatch latch;
+	/** The time taken by the last tick in nanoseconds */
+	private long lastTickNanos;
+
+	/**
+	 * Create a new group stepping its worlds on one thread per available
+	 * processor
+	 */
+	public WorldGroup() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new group stepping its worlds on a fixed number of threads
+	 *
+	 * @param threads The number of threads to step worlds on
+	 */
+	public WorldGroup(int threads) {
+		this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "fizzy-world-group-"+count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+	/**
+	 * Create a new group stepping its worlds on the given executor. The
+	 * executor isn't shut down by {@link #shutdown()}.
+	 *
+	 * @param executor The executor to step worlds on
+	 */
+	public WorldGroup(ExecutorService executor) {
+		this(executor, false);
+	}
+
+	/**
+	 * Create a new group
+	 *
+	 * @param executor The executor to step worlds on
+	 * @param ownsExecutor True if the executor should be shut down with the group
+	 */
+	private WorldGroup(ExecutorService executor, boolean ownsExecutor) {
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Add a world to the group. It will be stepped from the next tick.
+	 *
+	 * @param world The world to add
+	 */
+	public void add(World world) {
+		if (worlds.contains(world)) {
+			return;
+		}
+		worlds.add(world);
+		tasks.add(new StepTask(world));
+	}
+
+	/**
+	 * Remove a world from the group
+	 *
+	 * @param world The world to remove
+	 */
+	public void remove(World world) {
+		int index = worlds.indexOf(world);
+		if (index >= 0) {
+			worlds.remove(index);
+			tasks.remove(index);
+		}
+	}
+
+	/**
+	 * Get the number of worlds in the group
+	 *
+	 * @return The number of worlds in the group
+	 */
+	public int getWorldCount() {
+		return worlds.size();
+	}
+
+	/**
+	 * Get a world in the group
+	 *
+	 * @param index The index of the world to retrieve
+	 * @return The world at the given index
+	 */
+	public World getWorld(int index) {
+		return worlds.get(index);
+	}
+
+	/**
+	 * Step every world in the group by the given amount of time, waiting for
+	 * them all to finish
+	 *
+	 * @see World#update(float)
+	 * @param timeStep The amount of time to simulate
+	 */
+	public void update(float timeStep) {
+		tick(timeStep, false);
+	}
+
+	/**
+	 * Advance every world in the group by the given amount of real time using
+	 * their fixed steps, waiting for them all to finish
+	 *
+	 * @see World#advance(float)
+	 * @param realDelta The amount of real time that has passed in seconds
+	 */
+	public void advance(float realDelta) {
+		tick(realDelta, true);
+	}
+
+	/**
+	 * Run one tick, stepping every world once
+	 *
+	 * @param delta The time to pass to each world
+	 * @param advance True if the worlds should be advanced rather than updated
+	 */
+	private void tick(float delta, boolean advance) {
+		long start = System.nanoTime();
+		int count = tasks.size();
+		if (schedule.length != count) {
+			schedule = new StepTask[count];
+		}
+		for (int i=0;i<count;i++) {
+			StepTask task = tasks.get(i);
+			task.prepare(delta, advance);
+			schedule[i] = task;
+		}
+		// longest first, so the heaviest worlds don't start at the end of the tick
+		Arrays.sort(schedule);
+
+		CountDownLatch done = new CountDownLatch(count);
+		latch = done;
+		for (int i=0;i<count;i++) {
+			executor.execute(schedule[i]);
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		lastTickNanos = System.nanoTime() - start;
+
+		Throwable first = null;
+		for (int i=0;i<count;i++) {
+			Throwable failure = schedule[i].failure;
+			if (failure == null) {
+				continue;
+			}
+			schedule[i].failure = null;
+			if (first == null) {
+				first = failure;
+			} else {
+				LOG.log(Level.SEVERE, "Another world failed in the same tick", failure);
+			}
+		}
+		if (first instanceof RuntimeException) {
+			throw (RuntimeException) first;
+		}
+		if (first instanceof Error) {
+			throw (Error) first;
+		}
+		if (first != null) {
+			throw new RuntimeException(first);
+		}
+	}
+
+	/**
+	 * Get the time the given world took to step during the last tick
+	 *
+	 * @param world The world to check
+	 * @return The time taken in nanoseconds, or 0 if the world isn't in the group
+	 */
+	public long getLastStepNanos(World world) {
+		int index = worlds.indexOf(world);
+		return index < 0 ? 0 : tasks.get(index).lastStepNanos;
+	}
+
+	/**
+	 * Get the time taken by the whole of the last tick, including waiting for
+	 * the slowest world
+	 *
+	 * @return The time taken in nanoseconds
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * Shut down the threads stepping the worlds, if they were created by this
+	 * group. The group can't be ticked afterwards.
+	 */
+	public void shutdown() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The task stepping a single world, reused every tick
+	 */
+	private class StepTask implements Runnable, Comparable<StepTask> {
+		/** The world to step */
+		private final World world;
+		/** The time to pass to the world */
+		private float delta;
+		/** True if the world should be advanced rather than updated */
+		private boolean advance;
+		/** The time taken by the world's last step in nanoseconds */
+		private volatile long lastStepNanos;
+		/** The failure thrown by the world's last step, if any */
+		private volatile Throwable failure;
+
+		/**
+		 * Create a new task
+		 *
+		 * @param world The world to step
+		 */
+		StepTask(World world) {
+			this.world = world;
+		}
+
+		/**
+		 * Set up the task for the coming tick
+		 *
+		 * @param delta The time to pass to the world
+		 * @param advance True if the world should be advanced rather than updated
+		 */
+		void prepare(float delta, boolean advance) {
+			this.delta = delta;
+			this.advance = advance;
+		}
+
+		@Override
+		public void run() {
+			CountDownLatch done = latch;
+			failure = null;
+			long start = System.nanoTime();
+			try {
+				if (advance) {
+					world.advance(delta);
+				} else {
+					world.update(delta);
+				}
+			} catch (Throwable e) {
+				// errors are caught too, as the pool thread would swallow them
+				failure = e;
+			} finally {
+				lastStepNanos = System.nanoTime() - start;
+				done.countDown();
+			}
+		}
+
+		@Override
+		public int compareTo(StepTask other) {
+			return lastStepNanos > other.lastStepNanos ? -1 : (lastStepNanos < other.lastStepNanos ? 1 : 0);
+		}
+	}
+}
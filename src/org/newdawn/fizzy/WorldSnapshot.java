@@ -0,0 +1,493 @@
+package org.newdawn.fizzy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Filter;
+
+import org.newdawn.fizzy.World.OutOfBoundsBehavior;
+
+/**
+ * The binary format used to save and restore a world. A snapshot is a header
+ * (magic number and version), the world's settings and then each body in
+ * index order: its type, transform, velocity, damping, flags and shape tree.
+ * Positions and velocities are stored in meters exactly as JBox2D holds them
+ * so a restored world steps on from the same state. Version 2 added each
+ * shape's collision filter and the world's collision layer matrix, and
+ * version 3 whether each shape is a sensor. Older snapshots can still be read.
+ *
+ * Everything is written through a single fixed size buffer that's flushed to
+ * the channel as it fills, so the size of the world doesn't change the memory
+ * used to save or load it.
+ *
+ * @see World#writeSnapshot(WritableByteChannel)
+ * @see World#readSnapshot(ReadableByteChannel)
+ */
+class WorldSnapshot {
+	/** The magic number at the start of every snapshot, "FZSN" */
+	private static final int MAGIC = 0x465A534E;
+	/** The version of the format written */
+	private static final int VERSION = 3;
+	/** The first version that records each shape's collision filter */
+	private static final int FILTER_VERSION = 2;
+	/** The first version that records whether each shape is a sensor */
+	private static final int SENSOR_VERSION = 3;
+	/** The size of the buffer used to stage data to and from the channel */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The body type recorded for static bodies */
+	private static final byte STATIC = 0;
+	/** The body type recorded for dynamic bodies */
+	private static final byte DYNAMIC = 1;
+	/** The body type recorded for kinematic bodies */
+	private static final byte KINEMATIC = 2;
+
+	/** The shape type recorded for circles */
+	private static final byte CIRCLE = 0;
+	/** The shape type recorded for rectangles */
+	private static final byte RECTANGLE = 1;
+	/** The shape type recorded for polygons */
+	private static final byte POLYGON = 2;
+	/** The shape type recorded for compounds */
+	private static final byte COMPOUND = 3;
+
+	/** The body flag recorded for awake bodies */
+	private static final int AWAKE = 1;
+	/** The body flag recorded for active bodies */
+	private static final int ACTIVE = 2;
+	/** The body flag recorded for bullets */
+	private static final int BULLET = 4;
+	/** The body flag recorded for bodies with fixed rotation */
+	private static final int FIXED_ROTATION = 8;
+
+	/** The world flag recorded when pooled events are enabled */
+	private static final int POOLED_EVENTS = 1;
+	/** The world flag recorded when deferred events are enabled */
+	private static final int DEFERRED_EVENTS = 2;
+	/** The world flag recorded when the world has bounds */
+	private static final int BOUNDED = 4;
+	/** The world flag recorded when the world has a collision layer matrix */
+	private static final int LAYERED = 8;
+
+	/** The buffer staging data to or from the channel */
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/** The channel being written to */
+	private WritableByteChannel out;
+	/** The channel being read from */
+	private ReadableByteChannel in;
+	/** The version of the snapshot being read */
+	private int version;
+
+	/**
+	 * Write a world to a channel
+	 *
+	 * @param world The world to write
+	 * @param channel The channel to write to
+	 * @throws IOException Indicates a failure to write to the channel
+	 */
+	void write(World world, WritableByteChannel channel) throws IOException {
+		out = channel;
+		buffer.clear();
+
+		reserve(8);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+
+		AABB bounds = world.getWorldAABB();
+		int flags = 0;
+		if (world.isPooledEvents()) {
+			flags |= POOLED_EVENTS;
+		}
+		if (world.isDeferredEvents()) {
+			flags |= DEFERRED_EVENTS;
+		}
+		if (bounds != null) {
+			flags |= BOUNDED;
+		}
+		int[] layers = world.getLayerMatrix();
+		if (layers != null) {
+			flags |= LAYERED;
+		}
+		Vec2 gravity = world.getJBoxWorld().getGravity();
+		reserve(48);
+		buffer.putInt(flags);
+		buffer.putFloat(gravity.x);
+		buffer.putFloat(gravity.y);
+		buffer.putInt(world.getVelocityIterations());
+		buffer.putInt(world.getPositionIterations());
+		buffer.putFloat(world.getFixedTimeStep());
+		buffer.putInt(world.getMaxFixedSteps());
+		buffer.putInt(world.getOutOfBoundsBehavior().ordinal());
+		if (bounds != null) {
+			buffer.putFloat(bounds.lowerBound.x);
+			buffer.putFloat(bounds.lowerBound.y);
+			buffer.putFloat(bounds.upperBound.x);
+			buffer.putFloat(bounds.upperBound.y);
+		}
+		if (layers != null) {
+			reserve(layers.length * 4);
+			for (int i=0;i<layers.length;i++) {
+				buffer.putInt(layers[i]);
+			}
+		}
+
+		int count = world.getBodyCount();
+		reserve(4);
+		buffer.putInt(count);
+		for (int i=0;i<count;i++) {
+			writeBody(world.getBody(i));
+		}
+
+		flush();
+		out = null;
+	}
+
+	/**
+	 * Write a single body
+	 *
+	 * @param body The body to write
+	 * @throws IOException Indicates a failure to write to the channel
+	 */
+	private void writeBody(Body<?> body) throws IOException {
+		org.jbox2d.dynamics.Body jbox = body.jboxBody;
+		BodyType type = jbox.getType();
+		Vec2 position = jbox.getPosition();
+		Vec2 velocity = jbox.getLinearVelocity();
+
+		int flags = 0;
+		if (jbox.isAwake()) {
+			flags |= AWAKE;
+		}
+		// bodies resting away from the observers are put to rest again by the observers of the restored world
+		if (jbox.isActive() || body.isDormant()) {
+			flags |= ACTIVE;
+		}
+		if (jbox.isBullet()) {
+			flags |= BULLET;
+		}
+		if (jbox.isFixedRotation()) {
+			flags |= FIXED_ROTATION;
+		}
+
+		reserve(34);
+		buffer.put(type == BodyType.STATIC ? STATIC : (type == BodyType.KINEMATIC ? KINEMATIC : DYNAMIC));
+		buffer.put((byte) flags);
+		buffer.putFloat(position.x);
+		buffer.putFloat(position.y);
+		buffer.putFloat(jbox.getAngle());
+		buffer.putFloat(velocity.x);
+		buffer.putFloat(velocity.y);
+		buffer.putFloat(jbox.getAngularVelocity());
+		buffer.putFloat(jbox.getLinearDamping());
+		buffer.putFloat(jbox.getAngularDamping());
+
+		writeShape(body.getShape());
+	}
+
+	/**
+	 * Write a shape, including all the children of a compound
+	 *
+	 * @param shape The shape to write
+	 * @throws IOException Indicates a failure to write to the channel
+	 */
+	private void writeShape(Shape shape) throws IOException {
+		if (shape instanceof CompoundShape) {
+			CompoundShape compound = (CompoundShape) shape;
+			reserve(5);
+			buffer.put(COMPOUND);
+			buffer.putInt(compound.getShapeCount());
+			for (int i=0;i<compound.getShapeCount();i++) {
+				writeShape(compound.getShape(i));
+			}
+			return;
+		}
+
+		if (shape instanceof Circle) {
+			reserve(5);
+			buffer.put(CIRCLE);
+			buffer.putFloat(((Circle) shape).getRadius());
+		} else if (shape instanceof Rectangle) {
+			Rectangle rect = (Rectangle) shape;
+			reserve(21);
+			buffer.put(RECTANGLE);
+			buffer.putFloat(rect.getWidth());
+			buffer.putFloat(rect.getHeight());
+			buffer.putFloat(rect.getXOffset());
+			buffer.putFloat(rect.getYOffset());
+			buffer.putFloat(rect.getAngleOffset());
+		} else if (shape instanceof Polygon) {
+			Polygon poly = (Polygon) shape;
+			int points = poly.getPointCount();
+			reserve(17);
+			buffer.put(POLYGON);
+			buffer.putFloat(poly.getXOffset());
+			buffer.putFloat(poly.getYOffset());
+			buffer.putFloat(poly.getAngleOffset());
+			buffer.putInt(points);
+			for (int i=0;i<points;i++) {
+				reserve(8);
+				buffer.putFloat(poly.getPointX(i));
+				buffer.putFloat(poly.getPointY(i));
+			}
+		} else {
+			throw new IOException("Shape can't be written to a snapshot: "+shape.getClass().getName());
+		}
+
+		PrimitiveShape primitive = (PrimitiveShape) shape;
+		Filter filter = primitive.getFilter();
+		reserve(25);
+		buffer.putFloat(primitive.getDensity());
+		buffer.putFloat(primitive.getFriction());
+		buffer.putFloat(primitive.getRestitution());
+		buffer.putInt(filter.categoryBits);
+		buffer.putInt(filter.maskBits);
+		buffer.putInt(filter.groupIndex);
+		buffer.put((byte) (primitive.isSensor() ? 1 : 0));
+	}
+
+	/**
+	 * Make sure there's room in the buffer for the given number of bytes,
+	 * flushing it to the channel if there isn't
+	 *
+	 * @param bytes The number of bytes about to be written
+	 * @throws IOException Indicates a failure to write to the channel
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write everything in the buffer to the channel
+	 *
+	 * @throws IOException Indicates a failure to write to the channel
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Read a world from a channel
+	 *
+	 * @param channel The channel to read from
+	 * @return The newly created world
+	 * @throws IOException Indicates a failure to read from the channel or an invalid snapshot
+	 */
+	World read(ReadableByteChannel channel) throws IOException {
+		in = channel;
+		buffer.clear();
+		buffer.flip();
+
+		require(8);
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a world snapshot");
+		}
+		version = buffer.getInt();
+		if ((version < 1) || (version > VERSION)) {
+			throw new IOException("Unsupported snapshot version: "+version);
+		}
+
+		require(32);
+		int flags = buffer.getInt();
+		World world = new World(new Vec2(buffer.getFloat(), buffer.getFloat()));
+		world.setIterations(buffer.getInt(), buffer.getInt());
+		float fixedTimeStep = buffer.getFloat();
+		world.setFixedTimeStep(fixedTimeStep, buffer.getInt());
+		int behavior = buffer.getInt();
+		OutOfBoundsBehavior[] behaviors = OutOfBoundsBehavior.values();
+		if ((behavior < 0) || (behavior >= behaviors.length)) {
+			throw new IOException("Unknown out of bounds behavior: "+behavior);
+		}
+		world.setOutOfBoundsBehavior(behaviors[behavior]);
+		if ((flags & BOUNDED) != 0) {
+			require(16);
+			float scale = World.PIXELS_PER_METER;
+			world.setBounds(buffer.getFloat() * scale, buffer.getFloat() * scale,
+					buffer.getFloat() * scale, buffer.getFloat() * scale);
+		}
+		if ((flags & LAYERED) != 0) {
+			require(32 * 4);
+			for (int i=0;i<32;i++) {
+				int layers = buffer.getInt();
+				for (int j=i;j<32;j++) {
+					world.setLayersCollide(i, j, (layers & (1 << j)) != 0);
+				}
+			}
+		}
+		world.setPooledEvents((flags & POOLED_EVENTS) != 0);
+		world.setDeferredEvents((flags & DEFERRED_EVENTS) != 0);
+
+		require(4);
+		int count = buffer.getInt();
+		if (count < 0) {
+			throw new IOException("Invalid body count: "+count);
+		}
+		List<Body<?>> bodies = new ArrayList<Body<?>>(Math.min(count, BUFFER_SIZE));
+		for (int i=0;i<count;i++) {
+			bodies.add(readBody());
+		}
+		world.addAll(bodies);
+
+		in = null;
+		return world;
+	}
+
+	/**
+	 * Read a single body
+	 *
+	 * @return The newly created body, not yet added to a world
+	 * @throws IOException Indicates a failure to read from the channel or an invalid snapshot
+	 */
+	private Body<?> readBody() throws IOException {
+		require(34);
+		byte type = buffer.get();
+		int flags = buffer.get();
+		float x = buffer.getFloat();
+		float y = buffer.getFloat();
+		float angle = buffer.getFloat();
+		float vx = buffer.getFloat();
+		float vy = buffer.getFloat();
+		float angularVelocity = buffer.getFloat();
+		float linearDamping = buffer.getFloat();
+		float angularDamping = buffer.getFloat();
+
+		Shape shape = readShape();
+		Body<?> body;
+		switch (type) {
+		case STATIC:
+			body = new StaticBody<Object>(shape, 0, 0);
+			break;
+		case DYNAMIC:
+			body = new DynamicBody<Object>(shape, 0, 0);
+			break;
+		case KINEMATIC:
+			body = new KinematicBody<Object>(shape, 0, 0);
+			break;
+		default:
+			throw new IOException("Unknown body type: "+type);
+		}
+
+		BodyDef def = body.jboxBodyDef;
+		def.position.set(x, y);
+		def.angle = angle;
+		def.linearVelocity.set(vx, vy);
+		def.angularVelocity = angularVelocity;
+		def.linearDamping = linearDamping;
+		def.angularDamping = angularDamping;
+		def.awake = (flags & AWAKE) != 0;
+		def.active = (flags & ACTIVE) != 0;
+		body.setBullet((flags & BULLET) != 0);
+		body.setFixedRotation((flags & FIXED_ROTATION) != 0);
+
+		return body;
+	}
+
+	/**
+	 * Read a shape, including all the children of a compound
+	 *
+	 * @return The newly created shape
+	 * @throws IOException Indicates a failure to read from the channel or an invalid snapshot
+	 */
+	private Shape readShape() throws IOException {
+		require(1);
+		byte type = buffer.get();
+		if (type == COMPOUND) {
+			require(4);
+			int count = buffer.getInt();
+			if (count < 0) {
+				throw new IOException("Invalid compound shape count: "+count);
+			}
+			CompoundShape compound = new CompoundShape();
+			for (int i=0;i<count;i++) {
+				compound.add(readShape());
+			}
+			return compound;
+		}
+
+		PrimitiveShape shape;
+		switch (type) {
+		case CIRCLE:
+			require(4);
+			shape = new Circle(buffer.getFloat());
+			break;
+		case RECTANGLE:
+			require(20);
+			Rectangle rect = new Rectangle(buffer.getFloat(), buffer.getFloat());
+			rect.setOffset(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+			shape = rect;
+			break;
+		case POLYGON:
+			require(16);
+			float xoffset = buffer.getFloat();
+			float yoffset = buffer.getFloat();
+			float angleOffset = buffer.getFloat();
+			int count = buffer.getInt();
+			if (count < 0) {
+				throw new IOException("Invalid polygon point count: "+count);
+			}
+			Vec2[] points = new Vec2[count];
+			for (int i=0;i<count;i++) {
+				require(8);
+				points[i] = new Vec2(buffer.getFloat(), buffer.getFloat());
+			}
+			Polygon poly = new Polygon();
+			// the points were written with the offset already applied
+			poly.setPoints(points);
+			poly.restoreOffset(xoffset, yoffset, angleOffset);
+			shape = poly;
+			break;
+		default:
+			throw new IOException("Unknown shape type: "+type);
+		}
+
+		require(12);
+		shape.setDensity(buffer.getFloat());
+		shape.setFriction(buffer.getFloat());
+		shape.setRestitution(buffer.getFloat());
+		if (version >= FILTER_VERSION) {
+			require(12);
+			shape.setCollisionCategories(buffer.getInt());
+			shape.setCollisionMask(buffer.getInt());
+			shape.setCollisionGroup(buffer.getInt());
+		}
+		if (version >= SENSOR_VERSION) {
+			require(1);
+			shape.setSensor(buffer.get() != 0);
+		}
+		return shape;
+	}
+
+	/**
+	 * Make sure the buffer holds at least the given number of unread bytes,
+	 * reading more from the channel if it doesn't
+	 *
+	 * @param bytes The number of bytes about to be read
+	 * @throws IOException Indicates a failure to read from the channel or the snapshot ending early
+	 */
+	private void require(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (in.read(buffer) < 0) {
+				throw new EOFException("Snapshot ended unexpectedly");
+			}
+		}
+		buffer.flip();
+	}
+}
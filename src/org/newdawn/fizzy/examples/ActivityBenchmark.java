@@ -0,0 +1,101 @@
+package org.newdawn.fizzy.examples;
+
+import java.util.Random;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Observer;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark of a large map where a single player only sees a screen of it
+ * at a time. The map is filled with bodies milling about and is stepped with
+ * every body simulated, with an observer following the player as it crosses
+ * the map so only the bodies near it are active, and with the observer
+ * driving a level of detail instead, so the bodies away from it keep moving
+ * at a quarter of the rate.
+ */
+public class ActivityBenchmark {
+	/** The number of bodies on the map */
+	private static final int BODIES = 5000;
+	/** The size of the map */
+	private static final float MAP_SIZE = 10000;
+	/** The number of steps measured */
+	private static final int STEPS = 300;
+	/** The distance the player moves each step */
+	private static final float PLAYER_SPEED = 10;
+	/** The number of ticks between steps of the far bodies in the level of detail mode */
+	private static final int FAR_INTERVAL = 4;
+
+	/** Every body simulated */
+	private static final int ALL = 0;
+	/** Bodies away from the observer deactivated */
+	private static final int OBSERVED = 1;
+	/** Bodies away from the observer simulated at a reduced rate */
+	private static final int LEVEL_OF_DETAIL = 2;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		String[] names = new String[] {"everything active", "observed", "level of detail"};
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			for (int mode=ALL;mode<=LEVEL_OF_DETAIL;mode++) {
+				run(mode, names[mode], pass == 1);
+			}
+		}
+	}
+
+	/**
+	 * Build the map and time stepping it
+	 *
+	 * @param mode The way bodies away from the player are treated
+	 * @param name The name of the mode reported
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int mode, String name, boolean report) {
+		World world = new World(0);
+		Random random = new Random(1234);
+		for (int i=0;i<BODIES;i++) {
+			float x = random.nextFloat() * MAP_SIZE;
+			float y = random.nextFloat() * MAP_SIZE;
+			Body<Object> body = (i % 2) == 0 ? new DynamicBody<Object>(new Circle(5), x, y)
+					: new DynamicBody<Object>(new Rectangle(10, 10), x, y);
+			world.add(body);
+			body.setVelocity((random.nextFloat() - 0.5f) * 4, (random.nextFloat() - 0.5f) * 4);
+		}
+
+		Observer observer = new Observer(0, MAP_SIZE / 2, 800, 600);
+		if (mode == LEVEL_OF_DETAIL) {
+			// keep everything moving, only slower away from the player
+			world.setActivityMargins(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+			world.setLevelOfDetail(100, 200, FAR_INTERVAL);
+		}
+		if (mode != ALL) {
+			world.addObserver(observer);
+		}
+
+		long start = System.nanoTime();
+		long near = 0;
+		long far = 0;
+		long dormant = 0;
+		for (int step=0;step<STEPS;step++) {
+			observer.setPosition(step * PLAYER_SPEED, MAP_SIZE / 2);
+			world.update(1/60f);
+			near += world.getNearBodyCount();
+			far += world.getFarBodyCount();
+			dormant += world.getDormantBodyCount();
+		}
+		long time = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(name+": "+((time / STEPS) / 1000)+"us per step, bodies on average "
+					+(near / STEPS)+" near, "+(far / STEPS)+" far, "+(dormant / STEPS)+" dormant");
+		}
+	}
+}
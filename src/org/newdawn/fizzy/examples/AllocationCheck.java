@@ -0,0 +1,114 @@
+package org.newdawn.fizzy.examples;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A check that a steady state control loop, pushing and moving every body in
+ * a world each tick through the {@link Body} mutators and the bulk versions
+ * on {@link World}, doesn't allocate. The bytes allocated by the thread are
+ * read before and after the control code of each tick, leaving out the step
+ * itself, which allocates inside JBox2D. This needs a JVM that can count the
+ * bytes allocated by a thread, such as HotSpot. Run it with
+ * -XX:-DoEscapeAnalysis too, since the JIT can remove short lived allocations
+ * that would come back in code it doesn't compile as well.
+ *
+ * The program exits with status 1 if the control loop allocated.
+ */
+public class AllocationCheck {
+	/** The number of bodies controlled */
+	private static final int BODIES = 500;
+	/** The number of ticks run before measuring, to reach a steady state and warm up the JIT */
+	private static final int WARMUP_TICKS = 2000;
+	/** The number of ticks measured */
+	private static final int TICKS = 1000;
+
+	/** The bodies being controlled */
+	private static Body<?>[] bodies = new Body<?>[BODIES];
+	/** The x component of each body's force, velocity or position */
+	private static float[] xs = new float[BODIES];
+	/** The y component of each body's force, velocity or position */
+	private static float[] ys = new float[BODIES];
+	/** The rotation of each body */
+	private static float[] angles = new float[BODIES];
+
+	/**
+	 * Run the check
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("This JVM can't count allocated bytes");
+			return;
+		}
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		long thread = Thread.currentThread().getId();
+
+		World world = new World(0);
+		for (int i=0;i<BODIES;i++) {
+			// spread out so that no new contacts are made, which JBox2D allocates
+			bodies[i] = new DynamicBody<Object>(new Circle(2), (i % 25) * 100, (i / 25) * 100);
+			world.add(bodies[i]);
+		}
+
+		long allocated = 0;
+		for (int tick=0;tick<WARMUP_TICKS+TICKS;tick++) {
+			long overhead = counter.getThreadAllocatedBytes(thread);
+			long before = counter.getThreadAllocatedBytes(thread);
+			control(world, tick);
+			long after = counter.getThreadAllocatedBytes(thread);
+			if (tick >= WARMUP_TICKS) {
+				// the reading itself may allocate, so take off the cost of one
+				allocated += Math.max(0, (after - before) - (before - overhead));
+			}
+			world.update(1/60f);
+		}
+
+		System.out.println("allocated "+allocated+" bytes over "+TICKS+" ticks of controlling "+BODIES+" bodies");
+		if (allocated > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run one tick of the control code, using every mutator
+	 *
+	 * @param world The world holding the bodies
+	 * @param tick The number of the tick
+	 */
+	private static void control(World world, int tick) {
+		float wobble = (tick % 20) - 10;
+		for (int i=0;i<BODIES;i++) {
+			Body<?> body = bodies[i];
+			body.applyForce(wobble, 0);
+			body.applyForce(0, wobble, 1, 0, true);
+			body.applyImpulse(0, wobble * 0.01f);
+			body.applyImpulse(wobble * 0.01f, 0, body.getX(), body.getY(), false);
+			body.setVelocity(0, 0);
+			body.translate(0.1f, 0);
+			body.setRotation(wobble * 0.01f);
+		}
+
+		for (int i=0;i<BODIES;i++) {
+			xs[i] = (i % 25) * 100;
+			ys[i] = (i / 25) * 100;
+			angles[i] = 0;
+		}
+		world.setTransforms(bodies, xs, ys, angles, BODIES);
+		world.setPositions(bodies, xs, ys, BODIES);
+		for (int i=0;i<BODIES;i++) {
+			xs[i] = wobble;
+			ys[i] = -wobble;
+		}
+		world.applyForces(bodies, xs, ys, BODIES);
+		world.applyImpulses(bodies, xs, ys, BODIES);
+		world.setVelocities(bodies, xs, ys, BODIES);
+	}
+}
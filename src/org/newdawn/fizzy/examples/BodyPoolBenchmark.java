@@ -0,0 +1,112 @@
+package org.newdawn.fizzy.examples;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.BodyPool;
+import org.newdawn.fizzy.BodyTemplate;
+import org.newdawn.fizzy.CompoundShape;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark comparing short lived bullets spawned from a
+ * {@link BodyTemplate} and removed with the same bullets acquired from and
+ * released to a {@link BodyPool}. A volley of bullets is fired every step and
+ * each bullet lives for a fixed number of steps. Only the time taken to fire
+ * and retire the bullets is measured, not the steps, along with the number of
+ * garbage collections over the whole run.
+ */
+public class BodyPoolBenchmark {
+	/** The number of steps simulated for each measurement */
+	private static final int STEPS = 600;
+	/** The number of bullets fired each step */
+	private static final int VOLLEY = 20;
+	/** The number of steps each bullet lives for */
+	private static final int LIFETIME = 30;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		CompoundShape shape = new CompoundShape();
+		shape.add(new Rectangle(8, 2));
+		shape.add(new Rectangle(2, 4).setOffset(6, -1, 0));
+		Body<Object> prototype = new DynamicBody<Object>(shape, 0, 0);
+		prototype.setBullet(true);
+		BodyTemplate<Object> template = new BodyTemplate<Object>(prototype);
+
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			World world = new World(0);
+			List<Body<Object>> live = new ArrayList<Body<Object>>();
+			long spawned = 0;
+			long collections = getCollectionCount();
+			for (int step=0;step<STEPS;step++) {
+				long start = System.nanoTime();
+				if (step >= LIFETIME) {
+					for (int i=0;i<VOLLEY;i++) {
+						world.remove(live.get(i));
+					}
+					live.subList(0, VOLLEY).clear();
+				}
+				for (int i=0;i<VOLLEY;i++) {
+					live.add(template.spawn(world, i * 20, step % 100, 0, 50));
+				}
+				spawned += System.nanoTime() - start;
+				world.update(1/60f);
+			}
+
+			long spawnedCollections = getCollectionCount() - collections;
+
+			world = new World(0);
+			BodyPool<Object> pool = new BodyPool<Object>(world, template, VOLLEY * LIFETIME);
+			live.clear();
+			long pooled = 0;
+			collections = getCollectionCount();
+			for (int step=0;step<STEPS;step++) {
+				long start = System.nanoTime();
+				if (step >= LIFETIME) {
+					for (int i=0;i<VOLLEY;i++) {
+						pool.release(live.get(i));
+					}
+					live.subList(0, VOLLEY).clear();
+				}
+				for (int i=0;i<VOLLEY;i++) {
+					live.add(pool.acquire(i * 20, step % 100, 0, 50));
+				}
+				pooled += System.nanoTime() - start;
+				world.update(1/60f);
+			}
+
+			long pooledCollections = getCollectionCount() - collections;
+
+			if (pass == 1) {
+				long fired = (long) STEPS * VOLLEY;
+				System.out.println("fire and retire: "+(spawned / fired)+"ns spawned, "+(pooled / fired)+"ns pooled");
+				System.out.println("garbage collections: "+spawnedCollections+" spawned, "+pooledCollections+" pooled");
+				System.out.println("pool: "+pool.getHits()+" hits, "+pool.getMisses()+" misses, "
+						+pool.getDiscards()+" discards, "+pool.getParkedCount()+" parked");
+			}
+		}
+	}
+
+	/**
+	 * Get the number of garbage collections run so far by every collector
+	 *
+	 * @return The total number of collections
+	 */
+	private static long getCollectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+}
@@ -0,0 +1,90 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.BoundingBox;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.CompoundShape;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark of the cost of finding the bounding boxes of every body in a
+ * world each frame, as culling for rendering would. The bodies are built of
+ * nested compound shapes, the worst case for collecting their JBox2D shapes,
+ * and half of them are moving. The world is stepped between frames but only
+ * the time taken to find the bounding boxes is measured. The two ways of
+ * getting the boxes are timed on alternate frames, so each one finds the
+ * moving bodies' boxes out of date rather than cached by the other.
+ */
+public class BoundingBoxBenchmark {
+	/** The number of bodies in the world */
+	private static final int BODIES = 2000;
+	/** The number of frames measured for each way of getting the boxes */
+	private static final int FRAMES = 500;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		World world = new World(0);
+		for (int i=0;i<BODIES;i++) {
+			DynamicBody<Object> body = new DynamicBody<Object>(createShape(), (i % 50) * 40, (i / 50) * 40);
+			world.add(body);
+			if ((i % 2) == 0) {
+				body.setAngularVelocity(1);
+			}
+		}
+		float[] bounds = new float[BODIES * 4];
+
+		float sum = 0;
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			long boxes = 0;
+			long packed = 0;
+			for (int frame=0;frame<FRAMES*2;frame++) {
+				world.update(1/60f);
+
+				long start = System.nanoTime();
+				if ((frame % 2) == 0) {
+					for (int i=0;i<world.getBodyCount();i++) {
+						BoundingBox box = world.getBody(i).getBoundingBox();
+						sum += box.upperRight.x - box.lowerLeft.x;
+					}
+					boxes += System.nanoTime() - start;
+				} else {
+					for (int i=0;i<world.getBodyCount();i++) {
+						world.getBody(i).getBoundingBox(bounds, i * 4);
+					}
+					sum += bounds[2] - bounds[0];
+					packed += System.nanoTime() - start;
+				}
+			}
+
+			if (pass == 1) {
+				long count = (long) FRAMES * BODIES;
+				System.out.println("getBoundingBox(): "+(boxes / count)+"ns per body");
+				System.out.println("getBoundingBox(float[], int): "+(packed / count)+"ns per body");
+			}
+		}
+		// stop the JIT throwing the work away
+		System.out.println("(checksum "+sum+")");
+	}
+
+	/**
+	 * Create a shape of two levels of nested compounds
+	 *
+	 * @return The newly created shape
+	 */
+	private static CompoundShape createShape() {
+		CompoundShape arm = new CompoundShape();
+		arm.add(new Rectangle(10, 2));
+		arm.add(new Circle(2));
+		CompoundShape body = new CompoundShape();
+		body.add(new Rectangle(6, 6));
+		body.add(arm);
+		body.add(new Circle(3));
+		return body;
+	}
+}
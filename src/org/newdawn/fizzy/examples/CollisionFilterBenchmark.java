@@ -0,0 +1,104 @@
+package org.newdawn.fizzy.examples;
+
+import java.util.Random;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.CollisionEvent;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.KinematicBody;
+import org.newdawn.fizzy.World;
+import org.newdawn.fizzy.WorldListener;
+
+/**
+ * A benchmark of a bullet hell scene, where dense clouds of bullets pass
+ * through each other and only matter when they hit the players. The scene is
+ * stepped with no filtering, with the bullets' masks excluding other bullets
+ * and with the same rule set through the world's layer matrix.
+ */
+public class CollisionFilterBenchmark {
+	/** The layer the players are on */
+	private static final int PLAYER_LAYER = 0;
+	/** The layer the bullets are on */
+	private static final int BULLET_LAYER = 1;
+	/** The number of bullets in the scene */
+	private static final int BULLETS = 1500;
+	/** The number of players in the scene */
+	private static final int PLAYERS = 4;
+	/** The number of steps measured */
+	private static final int STEPS = 200;
+
+	/** No filtering */
+	private static final int NONE = 0;
+	/** Filtering by the bullets' masks */
+	private static final int MASKS = 1;
+	/** Filtering by the world's layer matrix */
+	private static final int LAYERS = 2;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		String[] names = new String[] {"no filtering", "masks", "layer matrix"};
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			for (int mode=NONE;mode<=LAYERS;mode++) {
+				run(mode, names[mode], pass == 1);
+			}
+		}
+	}
+
+	/**
+	 * Build the scene and time stepping it
+	 *
+	 * @param mode The kind of filtering to use
+	 * @param name The name of the filtering reported
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int mode, String name, boolean report) {
+		World world = new World(0);
+		if (mode == LAYERS) {
+			world.setLayersCollide(BULLET_LAYER, BULLET_LAYER, false);
+		}
+		for (int i=0;i<PLAYERS;i++) {
+			Body<Object> player = new KinematicBody<Object>(new Circle(10), (i * 150) - 225, 0);
+			player.setCollisionCategories(1 << PLAYER_LAYER);
+			world.add(player);
+		}
+		Random random = new Random(1234);
+		for (int i=0;i<BULLETS;i++) {
+			// a dense cloud, each bullet overlapping its neighbours, drifting over the players
+			Body<Object> bullet = new DynamicBody<Object>(new Circle(3), ((i % 50) * 5) - 125, ((i / 50) * 5) + 50);
+			bullet.setCollisionCategories(1 << BULLET_LAYER);
+			if (mode == MASKS) {
+				bullet.setCollisionMask(~(1 << BULLET_LAYER));
+			}
+			world.add(bullet);
+			bullet.setVelocity(random.nextFloat() - 0.5f, -2 - random.nextFloat());
+		}
+
+		final int[] events = new int[1];
+		world.addListener(new WorldListener() {
+			@Override
+			public void collided(CollisionEvent event) {
+				events[0]++;
+			}
+
+			@Override
+			public void separated(CollisionEvent event) {
+			}
+		});
+
+		long start = System.nanoTime();
+		for (int i=0;i<STEPS;i++) {
+			world.update(1/60f);
+		}
+		long time = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(name+": "+((time / STEPS) / 1000)+"us per step, "+events[0]+" collisions");
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.CollisionEvent;
+import org.newdawn.fizzy.CompoundShape;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+import org.newdawn.fizzy.WorldListener;
+
+/**
+ * A benchmark that piles increasing numbers of compound bodies into a box and
+ * reports how the cost of a step, and of the contact events it fires, scales
+ * with the density of contacts.
+ */
+public class ContactDensityBenchmark {
+	/** The number of steps measured for each pile, covering it falling and settling */
+	private static final int MEASURED_STEPS = 300;
+
+	/**
+	 * Run the benchmark for a range of pile sizes
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] sizes = new int[] {50, 100, 200, 400, 800};
+		// the first pass only warms up the JIT
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], false);
+		}
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], true);
+		}
+	}
+
+	/**
+	 * Create a pile of the given size and time stepping it
+	 *
+	 * @param count The number of compound bodies in the pile
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int count, boolean report) {
+		World world = createPile(count);
+		final int[] events = new int[1];
+		world.addListener(new WorldListener() {
+			@Override
+			public void collided(CollisionEvent event) {
+				events[0]++;
+			}
+
+			@Override
+			public void separated(CollisionEvent event) {
+				events[0]++;
+			}
+		});
+
+		long start = System.nanoTime();
+		for (int i=0;i<MEASURED_STEPS;i++) {
+			world.update(1/60f);
+		}
+		long time = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(count+" bodies: "+((time / MEASURED_STEPS) / 1000)+"us per step, "
+					+(events[0] / MEASURED_STEPS)+" events per step");
+		}
+	}
+
+	/**
+	 * Create a world containing a walled box filled with compound bodies
+	 *
+	 * @param count The number of compound bodies to create
+	 * @return The newly created world
+	 */
+	static World createPile(int count) {
+		World world = new World();
+
+		world.add(new StaticBody<Object>(new Rectangle(400.0f, 10.0f), -200.0f, -10.0f));
+		world.add(new StaticBody<Object>(new Rectangle(10.0f, 2000.0f), -210.0f, 0));
+		world.add(new StaticBody<Object>(new Rectangle(10.0f, 2000.0f), 200.0f, 0));
+
+		int columns = 20;
+		for (int i=0;i<count;i++) {
+			CompoundShape shape = new CompoundShape();
+			shape.add(new Rectangle(8,4));
+			shape.add(new Rectangle(4,8).setOffset(2, 0, 0));
+
+			Body<?> body = new DynamicBody<Object>(shape, -190 + ((i % columns) * 19), 10 + ((i / columns) * 12));
+			body.setRestitution(0.1f);
+			world.add(body);
+		}
+
+		return world;
+	}
+}
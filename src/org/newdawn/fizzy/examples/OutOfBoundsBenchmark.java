@@ -0,0 +1,96 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+import org.newdawn.fizzy.World.OutOfBoundsBehavior;
+
+/**
+ * A benchmark measuring what out of bounds handling adds to a step in a large
+ * world where most bodies are static and only a few are moving.
+ */
+public class OutOfBoundsBenchmark {
+	/** The number of steps measured for each world */
+	private static final int MEASURED_STEPS = 500;
+
+	/**
+	 * Run the benchmark for a range of world sizes
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] sizes = new int[] {1000, 4000, 16000};
+		// the first pass only warms up the JIT
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], false);
+		}
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], true);
+		}
+	}
+
+	/**
+	 * Time stepping the same world with and without bounds
+	 *
+	 * @param staticCount The number of static bodies in the world
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int staticCount, boolean report) {
+		long unbounded = time(createWorld(staticCount, false));
+		long bounded = time(createWorld(staticCount, true));
+
+		if (report) {
+			System.out.println(staticCount+" static bodies: "+(unbounded / 1000)+"us per step unbounded, "
+					+(bounded / 1000)+"us per step bounded");
+		}
+	}
+
+	/**
+	 * Time stepping a world
+	 *
+	 * @param world The world to step
+	 * @return The average time of a step in nanoseconds
+	 */
+	private static long time(World world) {
+		long start = System.nanoTime();
+		for (int i=0;i<MEASURED_STEPS;i++) {
+			world.update(1/60f);
+		}
+		return (System.nanoTime() - start) / MEASURED_STEPS;
+	}
+
+	/**
+	 * Create a world with a grid of static bodies and a set of drifting
+	 * circles that stay in bounds, so the bounds are checked every step but
+	 * never change the world
+	 *
+	 * @param staticCount The number of static bodies to create
+	 * @param bounded True if the world should have bounds
+	 * @return The newly created world
+	 */
+	private static World createWorld(int staticCount, boolean bounded) {
+		World world = new World(0);
+		int columns = (int) Math.sqrt(staticCount);
+		float extent = columns * 50;
+		if (bounded) {
+			world.setBounds(-extent, -extent, extent, extent);
+			world.setOutOfBoundsBehavior(OutOfBoundsBehavior.DESTROY);
+		}
+
+		for (int i=0;i<staticCount;i++) {
+			float x = ((i % columns) * 100) - extent;
+			float y = ((i / columns) * 100) - extent;
+			world.add(new StaticBody<Object>(new Rectangle(20, 5), x, y));
+		}
+		for (int i=0;i<100;i++) {
+			Body<?> body = new DynamicBody<Object>(new Circle(5), ((i * 37) % extent) - (extent / 2), 25 + (i * 3) - (extent / 2));
+			world.add(body);
+			body.setVelocity(1, 0);
+		}
+
+		return world;
+	}
+}
@@ -0,0 +1,114 @@
+package org.newdawn.fizzy.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.BodyVisitor;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark comparing the cost of many small queries made through the
+ * list returning bodiesAt() with the visitor and fill-in queries, and how
+ * many false positives the bounding box query returns.
+ */
+public class QueryBenchmark {
+	/** The number of queries made for each measurement */
+	private static final int QUERIES = 200000;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		World world = createWorld(5000);
+		// the first pass only warms up the JIT
+		run(world, false);
+		run(world, true);
+	}
+
+	/**
+	 * Time point and radius queries spread over the world
+	 *
+	 * @param world The world to query
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(World world, boolean report) {
+		final int[] visited = new int[1];
+		BodyVisitor counter = new BodyVisitor() {
+			@Override
+			public boolean visit(Body<?> body) {
+				visited[0]++;
+				return true;
+			}
+		};
+		List<Body<?>> result = new ArrayList<Body<?>>();
+
+		int listed = 0;
+		long start = System.nanoTime();
+		for (int i=0;i<QUERIES;i++) {
+			listed += world.bodiesAt(x(i), y(i)).size();
+		}
+		long list = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i=0;i<QUERIES;i++) {
+			world.visitBodiesAt(x(i), y(i), counter);
+		}
+		long visit = System.nanoTime() - start;
+
+		int filled = 0;
+		start = System.nanoTime();
+		for (int i=0;i<QUERIES;i++) {
+			result.clear();
+			filled += world.bodiesAt(x(i), y(i), 30, result);
+		}
+		long radius = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(QUERIES+" point queries: "+(list / QUERIES)+"ns each returning lists ("+listed
+					+" bodies), "+(visit / QUERIES)+"ns each exact with a visitor ("+visited[0]+" bodies)");
+			System.out.println(QUERIES+" radius queries: "+(radius / QUERIES)+"ns each filling a list ("
+					+filled+" bodies)");
+		}
+	}
+
+	/**
+	 * Get the x coordinate of a query
+	 *
+	 * @param i The index of the query
+	 * @return The x coordinate to query
+	 */
+	private static float x(int i) {
+		return (i * 37) % 3500;
+	}
+
+	/**
+	 * Get the y coordinate of a query
+	 *
+	 * @param i The index of the query
+	 * @return The y coordinate to query
+	 */
+	private static float y(int i) {
+		return (i * 53) % 3500;
+	}
+
+	/**
+	 * Create a world with a grid of circles
+	 *
+	 * @param count The number of circles to create
+	 * @return The newly created world
+	 */
+	private static World createWorld(int count) {
+		World world = new World(0);
+		int columns = (int) Math.sqrt(count);
+		for (int i=0;i<count;i++) {
+			world.add(new StaticBody<Object>(new Circle(20), (i % columns) * 50, (i / columns) * 50));
+		}
+		world.update(1/60f);
+		return world;
+	}
+}
@@ -0,0 +1,81 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark casting batches of visibility rays, as a set of agents would
+ * each tick, through a world of obstacles.
+ */
+public class RaycastBenchmark {
+	/** The number of agents casting rays */
+	private static final int AGENTS = 100;
+	/** The number of rays cast by each agent */
+	private static final int RAYS_PER_AGENT = 200;
+	/** The length of each ray */
+	private static final float RAY_LENGTH = 300;
+	/** The number of ticks measured */
+	private static final int TICKS = 50;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		World world = createWorld(5000);
+		int rays = AGENTS * RAYS_PER_AGENT;
+		float[] origins = new float[rays * 2];
+		float[] directions = new float[rays * 2];
+		for (int i=0;i<rays;i++) {
+			int agent = i / RAYS_PER_AGENT;
+			double angle = ((i % RAYS_PER_AGENT) * Math.PI * 2) / RAYS_PER_AGENT;
+			origins[i * 2] = ((agent * 317) % 3400) + 25;
+			origins[(i * 2) + 1] = ((agent * 211) % 3400) + 25;
+			directions[i * 2] = (float) (Math.cos(angle) * RAY_LENGTH);
+			directions[(i * 2) + 1] = (float) (Math.sin(angle) * RAY_LENGTH);
+		}
+		int[] bodyIds = new int[rays];
+		float[] points = new float[rays * 2];
+		float[] normals = new float[rays * 2];
+
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			int blocked = 0;
+			long start = System.nanoTime();
+			for (int t=0;t<TICKS;t++) {
+				blocked = world.raycastAny(origins, directions, rays, bodyIds);
+			}
+			long any = (System.nanoTime() - start) / TICKS;
+
+			int hit = 0;
+			start = System.nanoTime();
+			for (int t=0;t<TICKS;t++) {
+				hit = world.raycastClosest(origins, directions, rays, bodyIds, points, normals);
+			}
+			long closest = (System.nanoTime() - start) / TICKS;
+
+			if (pass == 1) {
+				System.out.println(rays+" rays per tick: "+(any / 1000)+"us for any hit ("+blocked+" blocked), "
+						+(closest / 1000)+"us for closest hit ("+hit+" hit)");
+			}
+		}
+	}
+
+	/**
+	 * Create a world with a grid of circles
+	 *
+	 * @param count The number of circles to create
+	 * @return The newly created world
+	 */
+	private static World createWorld(int count) {
+		World world = new World(0);
+		int columns = (int) Math.sqrt(count);
+		for (int i=0;i<count;i++) {
+			world.add(new StaticBody<Object>(new Circle(10), (i % columns) * 50, (i / columns) * 50));
+		}
+		world.update(1/60f);
+		return world;
+	}
+}
@@ -0,0 +1,127 @@
+package org.newdawn.fizzy.examples;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.BoundingBox;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Region;
+import org.newdawn.fizzy.RegionListener;
+import org.newdawn.fizzy.Vector;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark of tracking bodies entering and leaving fixed regions of a
+ * world full of wandering bodies. The regions are tracked by querying each
+ * one every frame and diffing the result against the last frame's, and by
+ * watching them with {@link World#watchRegion(BoundingBox, RegionListener)}.
+ * The counts of entries differ slightly, since polling tests the shapes and
+ * watching tests the bodies' bounding boxes. The time reported covers the
+ * step and the tracking together.
+ */
+public class RegionBenchmark {
+	/** The number of bodies wandering the world */
+	private static final int BODIES = 1000;
+	/** The number of steps measured */
+	private static final int STEPS = 300;
+	/** The size of each region */
+	private static final float REGION_SIZE = 60;
+	/** The size of the area the bodies wander */
+	private static final float AREA_SIZE = 1000;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] regionCounts = new int[] {50, 1000};
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			run(0, false, pass == 1);
+			for (int i=0;i<regionCounts.length;i++) {
+				run(regionCounts[i], false, pass == 1);
+				run(regionCounts[i], true, pass == 1);
+			}
+		}
+	}
+
+	/**
+	 * Build the world and time stepping it while tracking the regions
+	 *
+	 * @param regions The number of regions to track
+	 * @param watched True if the regions should be watched, false to poll them
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int regions, boolean watched, boolean report) {
+		World world = new World(0);
+		Random random = new Random(1234);
+		for (int i=0;i<BODIES;i++) {
+			Body<Object> body = new DynamicBody<Object>(new Circle(3),
+					random.nextFloat() * AREA_SIZE, random.nextFloat() * AREA_SIZE);
+			world.add(body);
+			body.setVelocity((random.nextFloat() - 0.5f) * 10, (random.nextFloat() - 0.5f) * 10);
+		}
+
+		final int[] entries = new int[1];
+		float[] xs = new float[regions];
+		float[] ys = new float[regions];
+		List<Map<Body<?>, Body<?>>> inside = new ArrayList<Map<Body<?>, Body<?>>>();
+		List<Body<?>> found = new ArrayList<Body<?>>();
+		RegionListener listener = new RegionListener() {
+			@Override
+			public void entered(Region region, Body<?> body) {
+				entries[0]++;
+			}
+
+			@Override
+			public void exited(Region region, Body<?> body) {
+			}
+		};
+		for (int i=0;i<regions;i++) {
+			xs[i] = random.nextFloat() * (AREA_SIZE - REGION_SIZE);
+			ys[i] = random.nextFloat() * (AREA_SIZE - REGION_SIZE);
+			if (watched) {
+				world.watchRegion(new BoundingBox(new Vector(xs[i], ys[i]),
+						new Vector(xs[i] + REGION_SIZE, ys[i] + REGION_SIZE)), listener);
+			} else {
+				inside.add(new IdentityHashMap<Body<?>, Body<?>>());
+			}
+		}
+
+		long start = System.nanoTime();
+		for (int step=0;step<STEPS;step++) {
+			world.update(1/60f);
+			if (watched) {
+				continue;
+			}
+			// what gameplay code has to do without region events
+			for (int i=0;i<regions;i++) {
+				Map<Body<?>, Body<?>> last = inside.get(i);
+				found.clear();
+				world.bodiesAt(xs[i], ys[i], xs[i] + REGION_SIZE, ys[i] + REGION_SIZE, true, found);
+				for (int j=0;j<found.size();j++) {
+					if (last.remove(found.get(j)) == null) {
+						entries[0]++;
+					}
+				}
+				// anything left wasn't found this time, so has exited
+				last.clear();
+				for (int j=0;j<found.size();j++) {
+					last.put(found.get(j), found.get(j));
+				}
+			}
+		}
+		long time = System.nanoTime() - start;
+
+		if (report) {
+			String name = (regions == 0) ? "no regions" : (watched ? "watched " : "polled ")+regions+" regions";
+			System.out.println(name+": "+((time / STEPS) / 1000)+"us per step ("+entries[0]+" entries)");
+		}
+	}
+}
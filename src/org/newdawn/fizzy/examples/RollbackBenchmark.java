@@ -0,0 +1,87 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark measuring what keeping a rollback history adds to a step, and
+ * how long it takes to rewind a pile of bodies and re-simulate the rewound
+ * steps, as a rollback network game would every time a late input arrives.
+ * Rewinding and re-simulating are timed separately, and the total is
+ * compared against the 16ms a frame has at 60 frames per second.
+ */
+public class RollbackBenchmark {
+	/** The number of steps kept for rewinding */
+	private static final int ROLLBACK_TICKS = 10;
+	/** The number of steps measured for each pile */
+	private static final int MEASURED_STEPS = 300;
+	/** The time a frame has at 60 frames per second in nanoseconds */
+	private static final long FRAME_NANOS = 16000000;
+
+	/**
+	 * Run the benchmark for a range of pile sizes
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] sizes = new int[] {100, 200, 400};
+		// the first pass only warms up the JIT
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], false);
+		}
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], true);
+		}
+	}
+
+	/**
+	 * Time stepping a pile with and without history, then time rewinding and
+	 * re-simulating it
+	 *
+	 * @param count The number of bodies in the pile
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int count, boolean report) {
+		long plain = time(ContactDensityBenchmark.createPile(count));
+
+		World world = ContactDensityBenchmark.createPile(count);
+		world.setRollbackTicks(ROLLBACK_TICKS);
+		long recorded = time(world);
+
+		long rewind = 0;
+		long resimulate = 0;
+		for (int i=0;i<MEASURED_STEPS;i++) {
+			long start = System.nanoTime();
+			world.rewind(ROLLBACK_TICKS);
+			long rewound = System.nanoTime();
+			for (int j=0;j<ROLLBACK_TICKS;j++) {
+				world.update(1/60f);
+			}
+			rewind += rewound - start;
+			resimulate += System.nanoTime() - rewound;
+		}
+		rewind /= MEASURED_STEPS;
+		resimulate /= MEASURED_STEPS;
+
+		if (report) {
+			long total = rewind + resimulate;
+			System.out.println(count+" bodies: "+(plain / 1000)+"us per step, "+(recorded / 1000)
+					+"us per step with history, "+(rewind / 1000)+"us to rewind and "+(resimulate / 1000)
+					+"us to re-simulate "+ROLLBACK_TICKS+" steps, "
+					+(total <= FRAME_NANOS ? "within" : "over")+" a 16ms frame");
+		}
+	}
+
+	/**
+	 * Time stepping a world
+	 *
+	 * @param world The world to step
+	 * @return The average time of a step in nanoseconds
+	 */
+	private static long time(World world) {
+		long start = System.nanoTime();
+		for (int i=0;i<MEASURED_STEPS;i++) {
+			world.update(1/60f);
+		}
+		return (System.nanoTime() - start) / MEASURED_STEPS;
+	}
+}
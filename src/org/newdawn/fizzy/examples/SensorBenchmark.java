@@ -0,0 +1,126 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.SensorListener;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark of the cost of thousands of trigger volumes, most of which
+ * nothing is near, in a world of falling bodies. The triggers are measured as
+ * static sensors reporting to a {@link SensorListener} and as areas polled
+ * with a box query every frame, against the same world with no triggers and
+ * with the triggers as ordinary solid static bodies. JBox2D has a cost per
+ * static body each step whatever it's doing, which the solid bodies pay and
+ * the static sensors, kept out of the step, shouldn't.
+ */
+public class SensorBenchmark {
+	/** The number of trigger volumes */
+	private static final int TRIGGERS = 5000;
+	/** The number of falling bodies */
+	private static final int BODIES = 200;
+	/** The number of steps measured */
+	private static final int STEPS = 300;
+	/** The size of each trigger volume */
+	private static final float TRIGGER_SIZE = 20;
+
+	/** No triggers */
+	private static final int NONE = 0;
+	/** Triggers as solid static bodies */
+	private static final int SOLID = 1;
+	/** Triggers as static sensors */
+	private static final int SENSORS = 2;
+	/** Triggers polled with queries */
+	private static final int POLLED = 3;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		String[] names = new String[] {"no triggers", "solid static bodies", "static sensors", "polled areas"};
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			for (int mode=NONE;mode<=POLLED;mode++) {
+				run(mode, names[mode], pass == 1);
+			}
+		}
+	}
+
+	/**
+	 * Build the world and time stepping it
+	 *
+	 * @param mode The kind of triggers to use
+	 * @param name The name of the triggers reported
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int mode, String name, boolean report) {
+		World world = new World();
+		world.add(new StaticBody<Object>(new Rectangle(2000, 10), -1000, -10));
+		for (int i=0;i<BODIES;i++) {
+			world.add(new DynamicBody<Object>(new Circle(4), ((i % 20) * 20) - 200, ((i / 20) * 20) + 50));
+		}
+
+		final int[] entries = new int[1];
+		if ((mode == SOLID) || (mode == SENSORS)) {
+			for (int i=0;i<TRIGGERS;i++) {
+				Body<Object> trigger = new StaticBody<Object>(new Rectangle(TRIGGER_SIZE, TRIGGER_SIZE),
+						triggerX(i), triggerY(i));
+				trigger.setSensor(mode == SENSORS);
+				world.add(trigger);
+			}
+			world.addSensorListener(new SensorListener() {
+				@Override
+				public void entered(Body<?> sensor, Body<?> other) {
+					entries[0]++;
+				}
+
+				@Override
+				public void exited(Body<?> sensor, Body<?> other) {
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for (int step=0;step<STEPS;step++) {
+			world.update(1/60f);
+			if (mode == POLLED) {
+				for (int i=0;i<TRIGGERS;i++) {
+					float x = triggerX(i);
+					float y = triggerY(i);
+					entries[0] += world.bodiesAt(x, y, x + TRIGGER_SIZE, y + TRIGGER_SIZE).size();
+				}
+			}
+		}
+		long time = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(name+": "+((time / STEPS) / 1000)+"us per step ("+entries[0]+" hits)");
+		}
+	}
+
+	/**
+	 * Get the x coordinate of a trigger. The triggers form a grid, with only
+	 * the first row in the path of the falling bodies.
+	 *
+	 * @param i The index of the trigger
+	 * @return The x coordinate of the trigger's corner
+	 */
+	private static float triggerX(int i) {
+		return ((i % 100) * 40) - 200;
+	}
+
+	/**
+	 * Get the y coordinate of a trigger
+	 *
+	 * @param i The index of the trigger
+	 * @return The y coordinate of the trigger's corner
+	 */
+	private static float triggerY(int i) {
+		return (i < 100) ? 20 : 500 + ((i / 100) * 40);
+	}
+}
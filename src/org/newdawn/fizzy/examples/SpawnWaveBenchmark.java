@@ -0,0 +1,75 @@
+package org.newdawn.fizzy.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark that spawns and despawns waves of bullets in a world that
+ * already holds a large number of bodies, reporting the cost of adding and
+ * removing a wave.
+ */
+public class SpawnWaveBenchmark {
+	/** The number of waves spawned for each wave size */
+	private static final int WAVES = 20;
+
+	/**
+	 * Run the benchmark for a range of wave sizes
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] sizes = new int[] {500, 2000, 8000};
+		// the first pass only warms up the JIT
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], false);
+		}
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], true);
+		}
+	}
+
+	/**
+	 * Spawn and despawn waves of the given size
+	 *
+	 * @param waveSize The number of bullets in each wave
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int waveSize, boolean report) {
+		World world = new World(0);
+		for (int i=0;i<5000;i++) {
+			world.add(new StaticBody<Object>(new Rectangle(10, 10), (i % 100) * 20, -200 - ((i / 100) * 20)));
+		}
+
+		long addTime = 0;
+		long removeTime = 0;
+		List<Body<?>> wave = new ArrayList<Body<?>>(waveSize);
+		for (int w=0;w<WAVES;w++) {
+			wave.clear();
+			for (int i=0;i<waveSize;i++) {
+				wave.add(new DynamicBody<Object>(new Circle(1), (i % 200) * 10, (i / 200) * 10));
+			}
+
+			long start = System.nanoTime();
+			world.addAll(wave);
+			addTime += System.nanoTime() - start;
+
+			world.update(1/60f);
+
+			start = System.nanoTime();
+			world.removeAll(wave);
+			removeTime += System.nanoTime() - start;
+		}
+
+		if (report) {
+			System.out.println(waveSize+" bullets per wave: "+((addTime / WAVES) / 1000)+"us to spawn, "
+					+((removeTime / WAVES) / 1000)+"us to despawn");
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.BodyTemplate;
+import org.newdawn.fizzy.CompoundShape;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark comparing the cost of spawning compound projectiles by building
+ * their shapes and bodies from scratch with stamping them out of a
+ * {@link BodyTemplate}. Each projectile is removed again straight away so
+ * the size of the world, and JBox2D's cost of adding to it, stays the same.
+ * Only the time taken to spawn and remove is measured, not the steps.
+ */
+public class TemplateSpawnBenchmark {
+	/** The number of projectiles spawned for each measurement */
+	private static final int SPAWNS = 100000;
+	/**
+	 * The number of projectiles spawned between steps. JBox2D only clears the
+	 * record of moved proxies when the world is stepped, and it grows with
+	 * every body added, so the world is stepped between batches.
+	 */
+	private static final int BATCH = 100;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		BodyTemplate<Object> template = new BodyTemplate<Object>(createProjectile(0, 0));
+		// the first pass only warms up the JIT
+		for (int pass=0;pass<2;pass++) {
+			World world = new World(0);
+
+			long start = System.nanoTime();
+			for (int i=0;i<SPAWNS;i++) {
+				createProjectile(i % 100, 0);
+			}
+			long built = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i=0;i<SPAWNS;i++) {
+				template.create(i % 100, 0);
+			}
+			long stamped = System.nanoTime() - start;
+
+			long builtSpawn = 0;
+			for (int i=0;i<SPAWNS;i+=BATCH) {
+				start = System.nanoTime();
+				for (int j=0;j<BATCH;j++) {
+					Body<?> body = createProjectile(j, 0);
+					world.add(body);
+					body.setVelocity(10, 0);
+					world.remove(body);
+				}
+				builtSpawn += System.nanoTime() - start;
+				world.update(1/60f);
+			}
+
+			long stampedSpawn = 0;
+			for (int i=0;i<SPAWNS;i+=BATCH) {
+				start = System.nanoTime();
+				for (int j=0;j<BATCH;j++) {
+					world.remove(template.spawn(world, j, 0, 10, 0));
+				}
+				stampedSpawn += System.nanoTime() - start;
+				world.update(1/60f);
+			}
+
+			if (pass == 1) {
+				System.out.println("creating: "+(built / SPAWNS)+"ns built, "+(stamped / SPAWNS)+"ns from a template");
+				System.out.println("spawning into a world: "+(builtSpawn / SPAWNS)+"ns built, "
+						+(stampedSpawn / SPAWNS)+"ns from a template");
+			}
+		}
+	}
+
+	/**
+	 * Build a projectile from scratch, as it would be without a template
+	 *
+	 * @param x The x axis location of the projectile
+	 * @param y The y axis location of the projectile
+	 * @return The newly created projectile
+	 */
+	private static Body<Object> createProjectile(float x, float y) {
+		CompoundShape shape = new CompoundShape();
+		shape.add(new Rectangle(8, 2));
+		shape.add(new Rectangle(2, 4).setOffset(6, -1, 0));
+		Body<Object> body = new DynamicBody<Object>(shape, x, y);
+		body.setBullet(true);
+		return body;
+	}
+}
@@ -0,0 +1,101 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.Body;
+import org.newdawn.fizzy.Circle;
+import org.newdawn.fizzy.DynamicBody;
+import org.newdawn.fizzy.Rectangle;
+import org.newdawn.fizzy.StaticBody;
+import org.newdawn.fizzy.World;
+
+/**
+ * A benchmark comparing reading every body's transform one getter at a time
+ * with exporting them all into arrays in one call.
+ */
+public class TransformExportBenchmark {
+	/** The number of times the transforms are read for each measurement */
+	private static final int READS = 2000;
+
+	/**
+	 * Run the benchmark for a range of world sizes
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		int[] sizes = new int[] {1000, 5000, 20000};
+		// the first pass only warms up the JIT
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], false);
+		}
+		for (int i=0;i<sizes.length;i++) {
+			run(sizes[i], true);
+		}
+	}
+
+	/**
+	 * Time reading the transforms of a world of the given size
+	 *
+	 * @param count The number of bodies in the world
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(int count, boolean report) {
+		World world = createWorld(count);
+		float[] xs = new float[count];
+		float[] ys = new float[count];
+		float[] angles = new float[count];
+		int[] indices = new int[count];
+
+		long start = System.nanoTime();
+		for (int r=0;r<READS;r++) {
+			for (int i=0;i<world.getBodyCount();i++) {
+				Body<?> body = world.getBody(i);
+				xs[i] = body.getX();
+				ys[i] = body.getY();
+				angles[i] = body.getRotation();
+			}
+		}
+		long getters = (System.nanoTime() - start) / READS;
+
+		start = System.nanoTime();
+		for (int r=0;r<READS;r++) {
+			world.exportTransforms(xs, ys, angles);
+		}
+		long export = (System.nanoTime() - start) / READS;
+
+		int moving = 0;
+		start = System.nanoTime();
+		for (int r=0;r<READS;r++) {
+			moving = world.exportMovingTransforms(indices, xs, ys, angles);
+		}
+		long exportMoving = (System.nanoTime() - start) / READS;
+
+		if (report) {
+			System.out.println(count+" bodies: "+(getters / 1000)+"us with getters, "+(export / 1000)
+					+"us exported, "+(exportMoving / 1000)+"us exporting the "+moving+" moving");
+		}
+	}
+
+	/**
+	 * Create a world where a quarter of the bodies are moving and the rest
+	 * are static
+	 *
+	 * @param count The number of bodies to create
+	 * @return The newly created world
+	 */
+	private static World createWorld(int count) {
+		World world = new World(0);
+		int columns = (int) Math.sqrt(count);
+		for (int i=0;i<count;i++) {
+			float x = (i % columns) * 50;
+			float y = (i / columns) * 50;
+			if (i % 4 == 0) {
+				Body<?> body = new DynamicBody<Object>(new Circle(5), x, y);
+				world.add(body);
+				body.setVelocity(1, 0);
+			} else {
+				world.add(new StaticBody<Object>(new Rectangle(10, 10), x, y));
+			}
+		}
+		world.update(1/60f);
+		return world;
+	}
+}
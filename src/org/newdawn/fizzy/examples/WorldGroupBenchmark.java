@@ -0,0 +1,74 @@
+package org.newdawn.fizzy.examples;
+
+import org.newdawn.fizzy.World;
+import org.newdawn.fizzy.WorldGroup;
+
+/**
+ * A benchmark comparing stepping many small worlds one after another on a
+ * single thread with stepping them in parallel through a {@link WorldGroup}.
+ */
+public class WorldGroupBenchmark {
+	/** The number of worlds simulated */
+	private static final int WORLDS = 64;
+	/** The number of ticks measured */
+	private static final int TICKS = 200;
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param argv The arguments passed to the program
+	 */
+	public static void main(String[] argv) {
+		// the first pass only warms up the JIT
+		run(false);
+		run(true);
+	}
+
+	/**
+	 * Time the worlds stepped both ways
+	 *
+	 * @param report True if the timing should be reported
+	 */
+	private static void run(boolean report) {
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		World[] worlds = createWorlds();
+		long start = System.nanoTime();
+		for (int t=0;t<TICKS;t++) {
+			for (int i=0;i<worlds.length;i++) {
+				worlds[i].update(1/60f);
+			}
+		}
+		long sequential = System.nanoTime() - start;
+
+		WorldGroup group = new WorldGroup(threads);
+		worlds = createWorlds();
+		for (int i=0;i<worlds.length;i++) {
+			group.add(worlds[i]);
+		}
+		start = System.nanoTime();
+		for (int t=0;t<TICKS;t++) {
+			group.update(1/60f);
+		}
+		long parallel = System.nanoTime() - start;
+		group.shutdown();
+
+		if (report) {
+			System.out.println(WORLDS+" worlds, "+TICKS+" ticks: "+(sequential / 1000000)+"ms sequential, "
+					+(parallel / 1000000)+"ms on "+threads+" threads");
+		}
+	}
+
+	/**
+	 * Create the set of worlds to simulate
+	 *
+	 * @return The newly created worlds
+	 */
+	private static World[] createWorlds() {
+		World[] worlds = new World[WORLDS];
+		for (int i=0;i<worlds.length;i++) {
+			worlds[i] = ContactDensityBenchmark.createPile(50 + ((i % 4) * 50));
+		}
+		return worlds;
+	}
+}
@@ -48,9 +48,13 @@ public class WorldCanvas extends Canvas {
 	 */
 	private void runLoop() {
 		BufferStrategy buffer = getBufferStrategy();
+		long lastTime = System.nanoTime();
 		
 		while (running) {
-			world.update(0.003f);
+			long time = System.nanoTime();
+			world.advance((time - lastTime) / 1000000000f);
+			lastTime = time;
+			float alpha = world.getInterpolationAlpha();
 			
 			Graphics2D g = (Graphics2D) buffer.getDrawGraphics();
 			
@@ -58,7 +62,7 @@ public class WorldCanvas extends Canvas {
 			g.translate(getWidth()/2,getHeight()/2);
 			g.scale(1,-1);
 			for (int i=0;i<world.getBodyCount();i++) {
-				drawBody(g, world.getBody(i));
+				drawBody(g, world.getBody(i), alpha);
 			}
 			
 			g.dispose();
@@ -87,14 +91,18 @@ public class WorldCanvas extends Canvas {
 	 * 
 	 * @param g The graphics context on which to draw
 	 * @param body The body to be rendered
+	 * @param alpha How far between the world's last two steps to draw the body
 	 */
-	private void drawBody(Graphics2D g, Body body) {
+	private void drawBody(Graphics2D g, Body body, float alpha) {
 		Shape shape = body.getShape();
+		g = (Graphics2D) g.create();
+		g.translate(body.getInterpolatedX(alpha), body.getInterpolatedY(alpha));
+		g.rotate(body.getInterpolatedRotation(alpha));
 		drawShape(g,body,shape);
 	}
 
 	/**
-	 * Draw a shape 
+	 * Draw a shape, relative to its body's position
 	 * 
 	 * @param g The graphics context to render to
 	 * @param body The body to be rendered
@@ -138,8 +146,6 @@ public class WorldCanvas extends Canvas {
 	 */
 	private void drawCircle(Graphics2D g, Body body, Circle shape) {
 		g = (Graphics2D) g.create();
-		g.translate(body.getX(), body.getY());
-		g.rotate(body.getRotation());
 		
 		float radius = shape.getRadius();
 		
@@ -157,8 +163,6 @@ public class WorldCanvas extends Canvas {
 	 */
 	private void drawRectangle(Graphics2D g, Body body, Rectangle shape) {
 		g = (Graphics2D) g.create();
-		g.translate(body.getX(), body.getY());
-		g.rotate(body.getRotation());
 		g.translate(shape.getXOffset(), shape.getYOffset());
 		g.rotate(shape.getAngleOffset());
 		
@@ -178,8 +182,6 @@ public class WorldCanvas extends Canvas {
 	 */
 	private void drawPolygon(Graphics2D g, Body body, Polygon shape) {
 		g = (Graphics2D) g.create();
-		g.translate(body.getX(), body.getY());
-		g.rotate(body.getRotation());
 		g.translate(shape.getXOffset(), shape.getYOffset());
 		g.rotate(shape.getAngleOffset());
 